@@ -2,19 +2,11 @@ package com.ltsoft.jms;
 
 import com.ltsoft.jms.exception.JMSExceptionSupport;
 import com.ltsoft.jms.message.JmsMessage;
-import org.redisson.api.BatchOptions;
-import org.redisson.api.RBatch;
-import org.redisson.api.RSet;
-import org.redisson.api.RedissonClient;
-import org.redisson.client.codec.StringCodec;
 
 import javax.jms.JMSException;
-import javax.jms.Topic;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
-import static com.ltsoft.jms.util.KeyHelper.*;
-
 /**
  * 消息消费回调
  */
@@ -24,43 +16,24 @@ public class JmsAcknowledgeCallback implements Consumer<JmsMessage> {
 
     private final JmsConsumerImpl consumer;
     private final JmsContextImpl context;
+    private final Object receipt;
 
-    public JmsAcknowledgeCallback(JmsConsumerImpl consumer) {
+    /**
+     * @param consumer 消息消费者
+     * @param receipt  读取消息时由存储引擎生成的回执，可为 null
+     */
+    public JmsAcknowledgeCallback(JmsConsumerImpl consumer, Object receipt) {
         this.consumer = consumer;
         this.context = consumer.context();
+        this.receipt = receipt;
     }
 
     @Override
     public void accept(JmsMessage message) {
-        RedissonClient client = context.client();
-
         try {
             String messageId = message.getJMSMessageID();
-            String propsKey = getDestinationPropsKey(message.getJMSDestination(), messageId);
-            String bodyKey = getDestinationBodyKey(message.getJMSDestination(), messageId);
-
-            RBatch batch = client.createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.REDIS_WRITE_ATOMIC));
-            if (message.getJMSDestination() instanceof Topic) {
-                String itemConsumersKey = getTopicItemConsumersKey(message.getJMSDestination(), messageId);
-                RSet<String> consumerSets = client.getSet(itemConsumersKey, StringCodec.INSTANCE);
-
-                consumerSets.remove(context.getClientID());
-                long len = consumerSets.size();
-                if (len > 0) {
-                    consumer.consume(message);
-
-                    LOGGER.finest(() -> String.format(
-                            "Message '%s' of client '%s' in '%s' is consumed",
-                            messageId, context.getClientID(), consumer.getDestination()
-                    ));
-                    return;
-                }
-
-                batch.getKeys().deleteAsync(itemConsumersKey);
-            }
 
-            batch.getKeys().deleteAsync(propsKey, bodyKey);
-            batch.execute();
+            context.engine(message.getJMSDestination()).acknowledge(consumer, message, receipt);
 
             //从消息消费列表中移除
             consumer.consume(message);
@@ -1,5 +1,9 @@
 package com.ltsoft.jms;
 
+import com.ltsoft.jms.engine.EngineType;
+import com.ltsoft.jms.util.DeflateCompressor;
+import com.ltsoft.jms.util.Serializer;
+
 import java.time.Duration;
 
 /**
@@ -13,6 +17,8 @@ public class JmsConfig {
 
     private int scheduledThread = Math.max(2, Runtime.getRuntime().availableProcessors());
 
+    private int callbackThread = 1;
+
     private Duration backDuration = Duration.ofMinutes(10);
 
     private Duration consumingTimeout = Duration.ofMinutes(10);
@@ -21,6 +27,44 @@ public class JmsConfig {
 
     private Duration listenerKeepLive = Duration.ofMinutes(5);
 
+    private Duration subscriptionRetention = Duration.ofDays(7);
+
+    private int inlineThreshold = 0;
+
+    private int compressThreshold = 0;
+
+    private String compression = DeflateCompressor.NAME;
+
+    private Serializer serializer;
+
+    private int chunkSize = 0;
+
+    private int envelopeSize = 0;
+
+    private int envelopeBytes = 64 * 1024;
+
+    private Duration batchLinger = Duration.ZERO;
+
+    private int batchSize = 100;
+
+    private int batchBytes = 1024 * 1024;
+
+    private int maxInFlight = 0;
+
+    private boolean blockWhenFull = true;
+
+    private Duration delayInterval = Duration.ofSeconds(1);
+
+    private Duration expireInterval = Duration.ofMinutes(1);
+
+    private boolean queuePriority = false;
+
+    private Duration priorityAging = Duration.ZERO;
+
+    private EngineType queueEngine = EngineType.LIST;
+
+    private EngineType topicEngine = EngineType.LIST;
+
     public int getDupsCount() {
         return dupsCount;
     }
@@ -45,6 +89,19 @@ public class JmsConfig {
         this.scheduledThread = Math.max(2, scheduledThread);
     }
 
+    public int getCallbackThread() {
+        return callbackThread;
+    }
+
+    /**
+     * 异步发送结果回调线程数，为 1 时回调按提交顺序执行
+     *
+     * @param callbackThread 回调线程数
+     */
+    public void setCallbackThread(int callbackThread) {
+        this.callbackThread = Math.max(1, callbackThread);
+    }
+
     public Duration getBackDuration() {
         return backDuration;
     }
@@ -69,6 +126,20 @@ public class JmsConfig {
         this.consumerExpire = consumerExpire;
     }
 
+    public Duration getSubscriptionRetention() {
+        return subscriptionRetention;
+    }
+
+    /**
+     * 持久订阅者超过该时长未更新心跳时，删除其在 Topic 消息日志中的游标，未确认的消息不再保留。
+     * 心跳短暂超时的订阅者仍保留游标，恢复后继续消费
+     *
+     * @param subscriptionRetention 订阅者游标的保留时长
+     */
+    public void setSubscriptionRetention(Duration subscriptionRetention) {
+        this.subscriptionRetention = subscriptionRetention;
+    }
+
     public Duration getListenerKeepLive() {
         return listenerKeepLive;
     }
@@ -76,4 +147,230 @@ public class JmsConfig {
     public void setListenerKeepLive(Duration listenerKeepLive) {
         this.listenerKeepLive = listenerKeepLive;
     }
+
+    public int getInlineThreshold() {
+        return inlineThreshold;
+    }
+
+    /**
+     * 编码后不超过该字节数的消息将直接写入消息列表，0 表示不启用。设置了存活时间的消息不内联
+     *
+     * @param inlineThreshold 内联消息的最大字节数
+     */
+    public void setInlineThreshold(int inlineThreshold) {
+        this.inlineThreshold = Math.max(0, inlineThreshold);
+    }
+
+    public int getCompressThreshold() {
+        return compressThreshold;
+    }
+
+    /**
+     * 不小于该字节数的消息内容将压缩后写入，0 表示不启用。未压缩的消息仍可正常读取
+     *
+     * @param compressThreshold 压缩消息内容的最小字节数
+     */
+    public void setCompressThreshold(int compressThreshold) {
+        this.compressThreshold = Math.max(0, compressThreshold);
+    }
+
+    public String getCompression() {
+        return compression;
+    }
+
+    /**
+     * 消息内容的压缩算法，默认为 deflate，可通过 ServiceLoader 扩展 {@link com.ltsoft.jms.util.Compressor}
+     *
+     * @param compression 压缩算法名称
+     */
+    public void setCompression(String compression) {
+        this.compression = compression;
+    }
+
+    public Serializer getSerializer() {
+        return serializer;
+    }
+
+    /**
+     * ObjectMessage 消息内容的序列化工具，为 null 时使用 ServiceLoader 加载的 {@link Serializer}，未加载时使用 Java 序列化。
+     * 可使用 {@link com.ltsoft.jms.util.CompactSerializer}，收发双方需使用相同的序列化工具
+     *
+     * @param serializer 序列化工具
+     */
+    public void setSerializer(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    /**
+     * BytesMessage 与 StreamMessage 的消息内容超过该字节数，或通过流设置时，按该大小分块写入多个 Key，0 表示不启用。
+     * 仅默认的 LIST 引擎支持分块保存
+     *
+     * @param chunkSize 消息内容分块字节数
+     */
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = Math.max(0, chunkSize);
+    }
+
+    public int getEnvelopeSize() {
+        return envelopeSize;
+    }
+
+    /**
+     * 批量发送时，每个信封最多打包的消息数，0 或 1 表示不启用。仅 {@link JmsProducerImpl#sendBatch} 发送且未设置存活时间的消息参与打包
+     *
+     * @param envelopeSize 信封最大消息数
+     */
+    public void setEnvelopeSize(int envelopeSize) {
+        this.envelopeSize = Math.max(0, envelopeSize);
+    }
+
+    public int getEnvelopeBytes() {
+        return envelopeBytes;
+    }
+
+    /**
+     * 每个信封的字节数上限，编码后超过该字节数的消息不参与打包
+     *
+     * @param envelopeBytes 信封最大字节数
+     */
+    public void setEnvelopeBytes(int envelopeBytes) {
+        this.envelopeBytes = Math.max(0, envelopeBytes);
+    }
+
+    public Duration getBatchLinger() {
+        return batchLinger;
+    }
+
+    /**
+     * 发送消息时最多等待的时间，期间并发发送至同一目标的消息合并为一次 Redis 管道请求，0 表示不启用
+     *
+     * @param batchLinger 合并发送的等待时间
+     */
+    public void setBatchLinger(Duration batchLinger) {
+        this.batchLinger = batchLinger.isNegative() ? Duration.ZERO : batchLinger;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * 合并发送的消息数达到该值时立即提交
+     *
+     * @param batchSize 合并发送的最大消息数
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    public int getBatchBytes() {
+        return batchBytes;
+    }
+
+    /**
+     * 合并发送的消息内容字节数达到该值时立即提交
+     *
+     * @param batchBytes 合并发送的最大字节数
+     */
+    public void setBatchBytes(int batchBytes) {
+        this.batchBytes = Math.max(0, batchBytes);
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    /**
+     * 异步发送时尚未完成的最大消息数，0 表示不限制
+     *
+     * @param maxInFlight 未完成的最大消息数
+     */
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = Math.max(0, maxInFlight);
+    }
+
+    public boolean isBlockWhenFull() {
+        return blockWhenFull;
+    }
+
+    /**
+     * 未完成的消息数达到上限时，发送线程是否等待。为 false 时立即抛出 {@link javax.jms.ResourceAllocationRuntimeException}
+     *
+     * @param blockWhenFull 是否等待
+     */
+    public void setBlockWhenFull(boolean blockWhenFull) {
+        this.blockWhenFull = blockWhenFull;
+    }
+
+    public Duration getDelayInterval() {
+        return delayInterval;
+    }
+
+    /**
+     * 消费者检查到期延迟消息的时间间隔，延迟消息的实际投递时间最多晚于 DeliveryTime 一个间隔
+     *
+     * @param delayInterval 检查间隔
+     */
+    public void setDelayInterval(Duration delayInterval) {
+        this.delayInterval = delayInterval;
+    }
+
+    public Duration getExpireInterval() {
+        return expireInterval;
+    }
+
+    /**
+     * 消费者清除消息列表中已过期消息的时间间隔，为 0 时不清除。已过期的消息在读取时也会被跳过
+     *
+     * @param expireInterval 清除间隔
+     */
+    public void setExpireInterval(Duration expireInterval) {
+        this.expireInterval = expireInterval;
+    }
+
+    public boolean isQueuePriority() {
+        return queuePriority;
+    }
+
+    /**
+     * 启用后，Queue 的消息按 JMSPriority 写入不同的消息列表，读取时优先读取高优先级的消息。仅适用于 {@link EngineType#LIST}
+     *
+     * @param queuePriority 是否启用优先级队列
+     */
+    public void setQueuePriority(boolean queuePriority) {
+        this.queuePriority = queuePriority;
+    }
+
+    public Duration getPriorityAging() {
+        return priorityAging;
+    }
+
+    /**
+     * 低优先级的消息等待超过该时间后优先出列，避免持续写入的高优先级消息导致低优先级消息无法消费，0 表示不启用
+     *
+     * @param priorityAging 老化时间
+     */
+    public void setPriorityAging(Duration priorityAging) {
+        this.priorityAging = priorityAging.isNegative() ? Duration.ZERO : priorityAging;
+    }
+
+    public EngineType getQueueEngine() {
+        return queueEngine;
+    }
+
+    public void setQueueEngine(EngineType queueEngine) {
+        this.queueEngine = queueEngine;
+    }
+
+    public EngineType getTopicEngine() {
+        return topicEngine;
+    }
+
+    public void setTopicEngine(EngineType topicEngine) {
+        this.topicEngine = topicEngine;
+    }
 }
@@ -1,14 +1,11 @@
 package com.ltsoft.jms;
 
+import com.ltsoft.jms.engine.DestinationEngine;
 import com.ltsoft.jms.exception.JMSExceptionSupport;
 import com.ltsoft.jms.listener.Listener;
 import com.ltsoft.jms.listener.NoPersistentListener;
 import com.ltsoft.jms.listener.PersistentListener;
 import com.ltsoft.jms.message.JmsMessage;
-import org.redisson.api.*;
-import org.redisson.client.RedisTimeoutException;
-import org.redisson.client.codec.ByteArrayCodec;
-import org.redisson.client.codec.StringCodec;
 
 import javax.jms.*;
 import java.time.Instant;
@@ -20,9 +17,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.logging.Logger;
 
-import static com.ltsoft.jms.message.JmsMessageHelper.fromMap;
-import static com.ltsoft.jms.message.JmsMessageHelper.toStringKey;
-import static com.ltsoft.jms.util.KeyHelper.*;
+import static com.ltsoft.jms.message.JmsMessageHelper.useSerializer;
 
 /**
  * 消费者实现
@@ -108,6 +103,35 @@ public class JmsConsumerImpl implements JMSConsumer {
         }
     }
 
+    /**
+     * 消息是否正在消费中，消费超时的消息将被移除
+     *
+     * @param messageId 消息 ID
+     * @return 消息在消费超时前尚未确认时为 true
+     */
+    public boolean isConsuming(String messageId) {
+        ConsumingMessage consumingMessage = consumingMessages.get(messageId);
+        if (consumingMessage == null) {
+            return false;
+        }
+
+        if (Instant.now().isAfter(consumingMessage.getTimeoutAt())) {
+            consumingMessages.remove(messageId);
+            return false;
+        }
+
+        return true;
+    }
+
+    /**
+     * 是否存在正在消费中的消息，消费超时的消息将被移除
+     *
+     * @return 存在消费超时前尚未确认的消息时为 true
+     */
+    public boolean hasConsuming() {
+        return consumingMessages.keySet().stream().anyMatch(this::isConsuming);
+    }
+
     void consumeAll() {
         consumingMessages.values().forEach(message -> {
             try {
@@ -143,56 +167,30 @@ public class JmsConsumerImpl implements JMSConsumer {
         }
     }
 
-    private String getMessageListKey() {
-        String key = null;
-        if (destination instanceof Queue) {
-            key = getDestinationKey(destination);
-        } else if (destination instanceof Topic) {
-            key = getTopicConsumerListKey(destination, context.getClientID());
-        }
-        return key;
+    private DestinationEngine engine() {
+        return context.engine(destination);
     }
 
     /**
-     * 按消息 ID 读取消息体
+     * 处理读取到的消息
      *
-     * @param messageId 消息 ID
+     * @param message JMS 消息
      * @return JMS 消息
      */
-    private Message readMessage(String messageId) {
-        if (Objects.isNull(messageId)) {
+    private Message readMessage(JmsMessage message) {
+        if (Objects.isNull(message)) {
             return null;
         }
 
-        RedissonClient client = context.client();
-        String propsKey = getDestinationPropsKey(destination, messageId);
-
         try {
-            Map<String, byte[]> props = toStringKey(client.<byte[], byte[]>getMap(propsKey, ByteArrayCodec.INSTANCE).readAllMap());
-            if (props.size() == 0) {
-                //消息有可能已过期
-                return null;
-            }
-
-            JmsMessage message = fromMap(props);
-            message.setJMSMessageID(messageId);
-
-            if (durable) {
-                message.setAcknowledgeCallback(new JmsAcknowledgeCallback(this));
-            }
-
             if (noLocal && Objects.equals(message.getJMSXMessageFrom(), context.getClientID())) {
                 //仅处理非本机消息
                 message.acknowledge();
                 return null;
             }
 
-            byte[] body = client.<byte[]>getBucket(getDestinationBodyKey(destination, messageId), ByteArrayCodec.INSTANCE).get();
-            if (body != null) {
-                message.setBody(body);
-            }
-
             message.setReadOnly(true);
+            useSerializer(message, context.config().getSerializer());
             consuming(message);
 
             LOGGER.finest(() -> String.format(
@@ -224,17 +222,10 @@ public class JmsConsumerImpl implements JMSConsumer {
             throw new JMSRuntimeException(DESTINATION_IS_NO_PERSISTENT);
         }
 
-        String key = getMessageListKey();
-        String backupKey = getDestinationBackupKey(destination, context.getClientID());
-
         try {
-            RBlockingDeque<String> blockingDeque = context.client().getBlockingDeque(key, StringCodec.INSTANCE);
-            return readMessage(blockingDeque.pollLastAndOfferFirstTo(backupKey, timeout, TimeUnit.MILLISECONDS));
-        } catch (RedisTimeoutException e) {
-            //BLOCK 操作超时会触发该异常
-            return null;
-        } catch (InterruptedException e) {
-            throw JMSExceptionSupport.wrap(JMSExceptionSupport.create(String.format("Read message from '%s' fail case thread interrupted", key), e));
+            return readMessage(engine().receive(this, timeout));
+        } catch (JMSException e) {
+            throw JMSExceptionSupport.wrap(e);
         }
     }
 
@@ -244,64 +235,11 @@ public class JmsConsumerImpl implements JMSConsumer {
             throw new JMSRuntimeException(DESTINATION_IS_NO_PERSISTENT);
         }
 
-        String key = getMessageListKey();
-        String backupKey = getDestinationBackupKey(destination, context.getClientID());
-
-        RDeque<String> deque = context.client().getDeque(key, StringCodec.INSTANCE);
-        return readMessage(deque.pollLastAndOfferFirstTo(backupKey));
-    }
-
-    /**
-     * 更新 Redis 中的消费者过期时间
-     */
-    private void ping() {
-        RScoredSortedSet<String> scoredSortedSet = context.client().getScoredSortedSet(getTopicConsumersKey(destination), StringCodec.INSTANCE);
-        scoredSortedSet.add(Instant.now().getEpochSecond(), context.getClientID());
-    }
-
-    /**
-     * 清理 Redis 中的已消费消息备份队列
-     */
-    private void cleanBackup() {
-        RedissonClient client = context.client();
-        String backupKey = getDestinationBackupKey(destination, context.getClientID());
-        Instant now = Instant.now();
-        do {
-            @SuppressWarnings("ConstantConditions")
-            String messageId = client.<String>getList(backupKey, StringCodec.INSTANCE).get(-1);
-            if (messageId != null) {
-                ConsumingMessage consumingMessage = consumingMessages.get(messageId);
-                if (Objects.isNull(consumingMessage) || now.isAfter(consumingMessage.getTimeoutAt())) {
-
-                    boolean remoteExist = false;
-                    RSet<Object> consumerKeys = client.getSet(getTopicItemConsumersKey(destination, messageId), StringCodec.INSTANCE);
-
-                    if (destination instanceof Topic) {
-                        remoteExist = consumerKeys.contains(context.getClientID());
-                    } else if (destination instanceof Queue) {
-                        remoteExist = client.getKeys().countExists(getDestinationPropsKey(destination, messageId)) > 0;
-                    }
-
-                    RDeque<Object> backupDeque = client.getDeque(backupKey, StringCodec.INSTANCE);
-                    if (remoteExist) {
-                        //消息未正常消费，重新入列
-                        backupDeque.pollLastAndOfferFirstTo(getMessageListKey());
-                    } else {
-                        backupDeque.pollLast();
-                    }
-
-                    if (Objects.nonNull(consumingMessage)) {
-                        consumingMessages.remove(messageId);
-                    }
-                } else {
-                    //备份队列队尾元素正在消费中，可以认为备份队列中无历史记录。
-                    break;
-                }
-            } else {
-                //备份队列为空，结束处理
-                break;
-            }
-        } while (true);
+        try {
+            return readMessage(engine().receiveNoWait(this));
+        } catch (JMSException e) {
+            throw JMSExceptionSupport.wrap(e);
+        }
     }
 
     /**
@@ -310,12 +248,23 @@ public class JmsConsumerImpl implements JMSConsumer {
     private void register() {
         if (durable) {
             JmsConfig config = context.config();
+            DestinationEngine engine = engine();
+
+            engine.register(this);
+
+            //注册返回前完成首次心跳，之后发送的消息均会分发给该订阅者
+            engine.ping(this);
+
+            //上次运行遗留的消息在读取前重新投递，避免与首次读取并发
+            engine.recover(this);
 
+            long expire = config.getConsumerExpire().getSeconds();
             this.pingThread = context.scheduledPool().scheduleWithFixedDelay(
-                    this::ping, 0, config.getConsumerExpire().getSeconds(), TimeUnit.SECONDS);
+                    () -> engine.ping(this), expire, expire, TimeUnit.SECONDS);
 
+            long backDuration = config.getBackDuration().getSeconds();
             this.cleanThread = context.scheduledPool().scheduleWithFixedDelay(
-                    this::cleanBackup, 0, config.getBackDuration().getSeconds(), TimeUnit.SECONDS);
+                    () -> engine.recover(this), backDuration, backDuration, TimeUnit.SECONDS);
         }
     }
 
@@ -323,9 +272,8 @@ public class JmsConsumerImpl implements JMSConsumer {
      * 从 Redis 中注销消费者
      */
     private void unregistered() {
-        RedissonClient client = context.client();
         if (pingThread != null) {
-            client.getScoredSortedSet(getTopicConsumersKey(destination), StringCodec.INSTANCE).remove(context.getClientID());
+            engine().unregister(this);
             pingThread.cancel(false);
             cleanThread.cancel(false);
         }
@@ -352,6 +300,16 @@ public class JmsConsumerImpl implements JMSConsumer {
         }
     }
 
+    /**
+     * 关闭消费者并取消持久订阅
+     */
+    void unsubscribe() {
+        close();
+        if (durable) {
+            engine().unsubscribe(this);
+        }
+    }
+
     private <T> T receiveBody(Class<T> c, Message message) {
         try {
             if (message != null) {
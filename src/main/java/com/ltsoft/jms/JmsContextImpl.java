@@ -4,6 +4,12 @@ import com.ltsoft.jms.destination.JmsQueue;
 import com.ltsoft.jms.destination.JmsTemporaryQueue;
 import com.ltsoft.jms.destination.JmsTemporaryTopic;
 import com.ltsoft.jms.destination.JmsTopic;
+import com.ltsoft.jms.engine.DestinationEngine;
+import com.ltsoft.jms.engine.EngineType;
+import com.ltsoft.jms.engine.ListEngine;
+import com.ltsoft.jms.engine.StreamEngine;
+import com.ltsoft.jms.engine.TopicLogEngine;
+import com.ltsoft.jms.message.JmsMessageCodec;
 import com.ltsoft.jms.message.JmsMessageFactory;
 import com.ltsoft.jms.util.ThreadPool;
 import org.redisson.api.RedissonClient;
@@ -15,6 +21,7 @@ import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
@@ -35,8 +42,20 @@ public class JmsContextImpl implements JMSContext {
 
     private final JmsMessageFactory messageFactory;
 
+    private final JmsMessageCodec codec;
+
     private final ThreadPool threadPool;
 
+    private final DestinationEngine listEngine;
+
+    private final DestinationEngine topicLogEngine;
+
+    private final DestinationEngine streamEngine;
+
+    private final JmsSendAccumulator accumulator;
+
+    private final Semaphore inFlight;
+
     private ExceptionListener exceptionListener;
 
     private boolean autoStart = true;
@@ -55,6 +74,12 @@ public class JmsContextImpl implements JMSContext {
         this.sessionMode = sessionMode;
         this.messageFactory = messageFactory;
         this.threadPool = threadPool;
+        this.codec = new JmsMessageCodec(jmsConfig.getCompression(), jmsConfig.getCompressThreshold());
+        this.listEngine = new ListEngine(this);
+        this.topicLogEngine = new TopicLogEngine(this);
+        this.streamEngine = new StreamEngine(this);
+        this.accumulator = new JmsSendAccumulator(this);
+        this.inFlight = jmsConfig.getMaxInFlight() > 0 ? new Semaphore(jmsConfig.getMaxInFlight()) : null;
     }
 
     /**
@@ -71,6 +96,13 @@ public class JmsContextImpl implements JMSContext {
         return jmsConfig;
     }
 
+    /**
+     * @return 按配置压缩消息内容的 JMS 消息编解码器
+     */
+    public JmsMessageCodec codec() {
+        return codec;
+    }
+
     /**
      * @return 执行线程池
      */
@@ -85,6 +117,43 @@ public class JmsContextImpl implements JMSContext {
         return threadPool.scheduledPool();
     }
 
+    /**
+     * @return 异步发送结果回调线程池
+     */
+    public ExecutorService callbackPool() {
+        return threadPool.callbackPool();
+    }
+
+    /**
+     * @param destination 消息目标
+     * @return 消息目标对应的存储引擎
+     */
+    public DestinationEngine engine(Destination destination) {
+        boolean isTopic = destination instanceof Topic;
+        EngineType type = isTopic ? jmsConfig.getTopicEngine() : jmsConfig.getQueueEngine();
+
+        if (EngineType.STREAM == type) {
+            return streamEngine;
+        } else if (EngineType.TOPIC_LOG == type && isTopic) {
+            return topicLogEngine;
+        }
+        return listEngine;
+    }
+
+    /**
+     * @return 异步发送窗口，未限制时为 null
+     */
+    Semaphore inFlight() {
+        return inFlight;
+    }
+
+    /**
+     * @return 消息发送累加器
+     */
+    JmsSendAccumulator accumulator() {
+        return accumulator;
+    }
+
     @Override
     public JMSContext createContext(int sessionMode) {
         return new JmsContextImpl(clientId, client, jmsConfig, threadPool, sessionMode, messageFactory);
@@ -142,6 +211,7 @@ public class JmsContextImpl implements JMSContext {
 
     @Override
     public void close() {
+        accumulator.flush();
         acknowledge();
         stop();
     }
@@ -324,7 +394,7 @@ public class JmsContextImpl implements JMSContext {
 
         consumers.stream()
                 .filter(consumer -> Objects.equals(name, consumer.getSubscriptionName()))
-                .peek(JmsConsumerImpl::close)
+                .peek(JmsConsumerImpl::unsubscribe)
                 .forEach(consumer -> consumers.remove(consumer));
     }
 
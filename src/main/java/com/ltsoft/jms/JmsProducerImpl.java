@@ -1,22 +1,31 @@
 package com.ltsoft.jms;
 
 import com.ltsoft.jms.exception.JMSExceptionSupport;
+import com.ltsoft.jms.message.ChunkedMessage;
+import com.ltsoft.jms.message.JmsBytesMessage;
 import com.ltsoft.jms.message.JmsMessage;
 import com.ltsoft.jms.util.MessageProperty;
 import org.redisson.api.BatchOptions;
 import org.redisson.api.RBatch;
 import org.redisson.api.RFuture;
 import org.redisson.api.RedissonClient;
-import org.redisson.client.codec.ByteArrayCodec;
-import org.redisson.client.codec.StringCodec;
 
 import javax.jms.*;
 import java.io.Serializable;
-import java.time.Instant;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import static com.ltsoft.jms.message.JmsMessageHelper.*;
@@ -34,11 +43,12 @@ public class JmsProducerImpl implements JMSProducer {
     private boolean disableMessageTimestamp = false;
     private int deliveryMode = DeliveryMode.PERSISTENT;
     private long deliveryDelay;
-    private int priority;
+    private int priority = Message.DEFAULT_PRIORITY;
     private long timeToLive;
     private CompletionListener completionListener;
     private String correlationID;
     private Destination replyTo;
+    private boolean fireAndForget = false;
 
     private MessageProperty property = new MessageProperty();
 
@@ -46,62 +56,40 @@ public class JmsProducerImpl implements JMSProducer {
         this.context = context;
     }
 
-    private RFuture<?> sendMessageAsync(Destination destination, JmsMessage message) throws JMSException {
-        RedissonClient client = context.client();
-
-        RFuture<?> future;
-
-        if (destination instanceof Topic) {
-            String propsKey = getDestinationPropsKey(destination, message.getJMSMessageID());
-            String bodyKey = getDestinationBodyKey(destination, message.getJMSMessageID());
-            byte[] body = message.getBody();
-            long now = Instant.now().getEpochSecond();
-            long expire = context.config().getConsumerExpire().getSeconds();
+    /**
+     * 将消息的写入指令追加到 batch 中
+     *
+     * @param batch       Redis 批处理
+     * @param destination 消息目标
+     * @param messages    JMS 消息
+     * @return 与消息一一对应的写入指令结果
+     * @throws JMSException 消息目标不支持或消息无法序列化
+     */
+    private List<RFuture<?>> writeMessages(RBatch batch, Destination destination, List<JmsMessage> messages) throws JMSException {
+        if (destination instanceof Topic && DeliveryMode.NON_PERSISTENT == deliveryMode) {
+            List<RFuture<?>> futures = new ArrayList<>(messages.size());
+            for (JmsMessage message : messages) {
+                futures.add(batch.getTopic(getDestinationKey(destination), context.codec()).publishAsync(message));
+            }
+            return futures;
+        }
 
-            if (DeliveryMode.PERSISTENT == deliveryMode) {
-                //获取频道相关的所有订阅者
-                Collection<String> consumers = client.<String>getScoredSortedSet(getTopicConsumersKey(destination), StringCodec.INSTANCE)
-                        .valueRange(now - expire, true, now + expire, true);
+        //存储引擎可将多条消息合并写入
+        return context.engine(destination).send(batch, destination, messages, timeToLive);
+    }
 
-                String consumersKey = getTopicItemConsumersKey(destination, message.getJMSMessageID());
+    private CompletionStage<?> sendMessageAsync(Destination destination, JmsMessage message) throws JMSException {
+        RedissonClient client = context.client();
 
-                RBatch batch = client.createBatch(BatchOptions.defaults().skipResult().executionMode(BatchOptions.ExecutionMode.REDIS_READ_ATOMIC));
-                batch.getMap(propsKey, ByteArrayCodec.INSTANCE).putAllAsync(toBytesKey(toMap(message)));
-                if (body != null) {
-                    batch.getBucket(bodyKey, ByteArrayCodec.INSTANCE).setAsync(body);
-                }
-                batch.getSet(consumersKey, StringCodec.INSTANCE).addAllAsync(consumers);
-                for (String consumerId : consumers) {
-                    batch.getDeque(getTopicConsumerListKey(destination, consumerId), StringCodec.INSTANCE).addFirstAsync(message.getJMSMessageID());
-                }
-                if (timeToLive > 0) {
-                    batch.getMap(propsKey).expireAsync(timeToLive, TimeUnit.MILLISECONDS);
-                    batch.getBucket(bodyKey).expireAsync(timeToLive, TimeUnit.MILLISECONDS);
-                    batch.getSet(consumersKey).expireAsync(timeToLive, TimeUnit.MILLISECONDS);
-                }
-                future = batch.executeAsync();
-            } else {
-                future = client.getTopic(getDestinationKey(destination), ByteArrayCodec.INSTANCE).publishAsync(toBytes(message));
-            }
-        } else if (destination instanceof Queue) {
-            String propsKey = getDestinationPropsKey(destination, message.getJMSMessageID());
-            String bodyKey = getDestinationBodyKey(destination, message.getJMSMessageID());
-            byte[] body = message.getBody();
-
-            RBatch batch = client.createBatch(BatchOptions.defaults().skipResult().executionMode(BatchOptions.ExecutionMode.REDIS_READ_ATOMIC));
-            batch.getMap(propsKey, ByteArrayCodec.INSTANCE).putAllAsync(toBytesKey(toMap(message)));
-            if (body != null) {
-                batch.getBucket(bodyKey, ByteArrayCodec.INSTANCE).setAsync(body);
-            }
-            batch.getDeque(getDestinationKey(destination), StringCodec.INSTANCE).addFirstAsync(message.getJMSMessageID());
-            if (timeToLive > 0) {
-                batch.getMap(propsKey).expireAsync(timeToLive, TimeUnit.MILLISECONDS);
-                batch.getBucket(bodyKey).expireAsync(timeToLive, TimeUnit.MILLISECONDS);
-            }
+        CompletionStage<?> future;
 
-            future = batch.executeAsync();
+        if (destination instanceof Topic && DeliveryMode.NON_PERSISTENT == deliveryMode) {
+            future = client.getTopic(getDestinationKey(destination), context.codec()).publishAsync(message);
+        } else if (context.accumulator().isEnabled()) {
+            //与其他线程的消息合并提交
+            future = context.accumulator().append(destination, message, timeToLive);
         } else {
-            throw new JMSException("不支持的目的类型");
+            future = context.engine(destination).send(destination, message, timeToLive);
         }
 
         LOGGER.finest(() -> String.format(
@@ -114,41 +102,130 @@ public class JmsProducerImpl implements JMSProducer {
 
     private void sendMessage(Destination destination, JmsMessage message) throws JMSException {
         try {
-            sendMessageAsync(destination, message).sync();
+            sendMessageAsync(destination, message).toCompletableFuture().get();
         } catch (InterruptedException e) {
             throw JMSExceptionSupport.create(e);
+        } catch (ExecutionException e) {
+            throw JMSExceptionSupport.create(e.getCause());
         }
     }
 
-    @Override
-    public JMSProducer send(Destination destination, Message message) {
+    /**
+     * 按生产者的配置填充消息头及属性
+     *
+     * @param destination 消息目标
+     * @param message     JMS 消息
+     * @return JMS 消息
+     * @throws JMSException 消息头设置失败
+     */
+    private JmsMessage prepareMessage(Destination destination, Message message) throws JMSException {
+        long timestamp = System.currentTimeMillis();
+        if (!disableMessageTimestamp) {
+            message.setJMSTimestamp(timestamp);
+        }
+        message.setJMSMessageID(getMessageId());
+        message.setJMSDestination(destination);
+        message.setJMSDeliveryMode(deliveryMode);
+        if (timeToLive > 0) {
+            message.setJMSExpiration(timestamp + timeToLive);
+        }
+        message.setJMSPriority(priority);
+        message.setJMSReplyTo(replyTo);
+        message.setJMSCorrelationID(correlationID);
+        message.setJMSDeliveryTime(timestamp + deliveryDelay);
+
+        JmsMessage item = (JmsMessage) message;
+        item.setJMSXMessageFrom(context.getClientID());
+
+        item.mergeProperties(property);
+        useSerializer(item, context.config().getSerializer());
+
+        return item;
+    }
+
+    /**
+     * 异步发送消息。未完成的消息数受 {@link JmsConfig#getMaxInFlight()} 限制，发送结果在回调线程池中处理。
+     *
+     * @param destination 消息目标
+     * @param message     JMS 消息
+     * @param callback    发送结果回调，发送成功时参数为 null
+     * @throws JMSException 消息目标不支持或消息无法序列化
+     */
+    private void sendInFlight(Destination destination, JmsMessage message, Consumer<Throwable> callback) throws JMSException {
+        Semaphore window = context.inFlight();
+        if (window != null) {
+            acquire(window, 1);
+        }
+
+        CompletionStage<?> future;
         try {
-            long timestamp = System.currentTimeMillis();
-            if (!disableMessageTimestamp) {
-                message.setJMSTimestamp(timestamp);
+            future = sendMessageAsync(destination, message);
+        } catch (JMSException | RuntimeException e) {
+            if (window != null) {
+                window.release();
             }
-            message.setJMSMessageID(getMessageId());
-            message.setJMSDestination(destination);
-            message.setJMSDeliveryMode(deliveryMode);
-            if (timeToLive > 0) {
-                message.setJMSExpiration(timestamp + timeToLive);
+            throw e;
+        }
+
+        if (window != null) {
+            future.whenComplete((result, e) -> window.release());
+        }
+        future.whenCompleteAsync((result, e) -> callback.accept(e), context.callbackPool());
+    }
+
+    private void acquire(Semaphore window, int permits) throws JMSException {
+        int maxInFlight = context.config().getMaxInFlight();
+        if (permits > maxInFlight) {
+            //超过发送窗口的批量消息永远无法取得足够的许可
+            throw new ResourceAllocationRuntimeException(String.format(
+                    "Client '%s' can not send %s messages at once, max in-flight messages is %s", context.getClientID(), permits, maxInFlight));
+        }
+
+        if (!context.config().isBlockWhenFull()) {
+            if (!window.tryAcquire(permits)) {
+                throw new ResourceAllocationRuntimeException(String.format(
+                        "Client '%s' has reached max in-flight messages %s", context.getClientID(), maxInFlight));
             }
-            message.setJMSPriority(priority);
-            message.setJMSReplyTo(replyTo);
-            message.setJMSCorrelationID(correlationID);
-            message.setJMSDeliveryTime(deliveryDelay);
+            return;
+        }
+
+        try {
+            window.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw JMSExceptionSupport.create(e);
+        }
+    }
 
-            JmsMessage item = (JmsMessage) message;
-            item.setJMSXMessageFrom(context.getClientID());
+    private void notifyException(Throwable e) {
+        ExceptionListener listener = context.getExceptionListener();
+        if (listener != null) {
+            listener.onException(JMSExceptionSupport.create(e));
+        } else {
+            LOGGER.log(Level.WARNING, String.format("Client '%s' send message fail", context.getClientID()), e);
+        }
+    }
+
+    private void notifyCompletion(Message message, Throwable e) {
+        if (e != null) {
+            completionListener.onException(message, JMSExceptionSupport.create(e));
+        } else {
+            completionListener.onCompletion(message);
+        }
+    }
 
-            item.mergeProperties(property);
+    @Override
+    public JMSProducer send(Destination destination, Message message) {
+        try {
+            JmsMessage item = prepareMessage(destination, message);
 
             if (completionListener != null) {
-                sendMessageAsync(destination, item).whenCompleteAsync((result, e) -> {
+                sendInFlight(destination, item, e -> notifyCompletion(message, e));
+            } else if (fireAndForget) {
+                //不等待发送结果，发送失败时通知异常监听器
+                sendInFlight(destination, item, e -> {
                     if (e != null) {
-                        completionListener.onException(message, JMSExceptionSupport.create(e));
-                    } else {
-                        completionListener.onCompletion(message);
+                        notifyException(e);
                     }
                 });
             } else {
@@ -161,6 +238,135 @@ public class JmsProducerImpl implements JMSProducer {
         return this;
     }
 
+    /**
+     * 批量发送消息。所有消息的写入指令通过一次 Redis 管道请求提交，每条消息的发送结果独立判定。
+     *
+     * @param destination 消息目标
+     * @param messages    JMS 消息
+     * @return 发送失败的消息及失败原因，全部发送成功时为空
+     */
+    public Map<Message, JMSException> sendBatch(Destination destination, Collection<? extends Message> messages) {
+        try {
+            return sendBatchAsync(destination, messages).toCompletableFuture().get();
+        } catch (InterruptedException e) {
+            throw JMSExceptionSupport.wrap(JMSExceptionSupport.create(e));
+        } catch (ExecutionException e) {
+            throw JMSExceptionSupport.wrap(JMSExceptionSupport.create(e.getCause()));
+        }
+    }
+
+    /**
+     * 异步批量发送消息。若设置了 {@link CompletionListener}，每条消息的发送结果也会在回调线程池中逐条回调。
+     * <p>
+     * 批量消息整体占用 {@link JmsConfig#getMaxInFlight()} 限制的发送窗口，批处理执行完成后释放；消息数超过发送窗口时拒绝发送。
+     *
+     * @param destination 消息目标
+     * @param messages    JMS 消息
+     * @return 发送失败的消息及失败原因，全部发送成功时为空
+     */
+    public CompletionStage<Map<Message, JMSException>> sendBatchAsync(Destination destination, Collection<? extends Message> messages) {
+        if (messages.isEmpty()) {
+            return CompletableFuture.completedFuture(Collections.emptyMap());
+        }
+
+        List<Message> items = new ArrayList<>(messages);
+        List<JmsMessage> prepared = new ArrayList<>(items.size());
+        try {
+            for (Message message : items) {
+                prepared.add(prepareMessage(destination, message));
+            }
+        } catch (JMSException e) {
+            throw JMSExceptionSupport.wrap(e);
+        }
+
+        Semaphore window = context.inFlight();
+        if (window != null) {
+            try {
+                acquire(window, items.size());
+            } catch (JMSException e) {
+                throw JMSExceptionSupport.wrap(e);
+            }
+        }
+
+        CompletableFuture<Map<Message, JMSException>> result = new CompletableFuture<>();
+        if (window != null) {
+            result.whenComplete((failures, e) -> window.release(items.size()));
+        }
+
+        RBatch batch = context.client().createBatch(BatchOptions.defaults());
+        CompletableFuture<List<RFuture<?>>> written;
+        if (prepared.stream().anyMatch(JmsProducerImpl::isStreamBody)) {
+            //读取以流设置的消息内容可能阻塞，在线程池中写入批处理
+            written = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return writeMessages(batch, destination, prepared);
+                } catch (JMSException e) {
+                    throw JMSExceptionSupport.wrap(e);
+                }
+            }, context.cachedPool());
+        } else {
+            try {
+                written = CompletableFuture.completedFuture(writeMessages(batch, destination, prepared));
+            } catch (JMSException e) {
+                //释放批量消息占用的发送窗口
+                result.completeExceptionally(e);
+                throw JMSExceptionSupport.wrap(e);
+            }
+        }
+
+        written.whenComplete((commands, writeError) -> {
+            if (writeError != null) {
+                result.completeExceptionally(writeError);
+                return;
+            }
+
+            RFuture<?> executed = batch.executeAsync();
+            executed.whenComplete((batchResult, batchError) -> {
+                Map<Message, JMSException> failures = new LinkedHashMap<>();
+
+                for (int i = 0; i < items.size(); i++) {
+                    Throwable cause = causeOf(commands.get(i), batchError);
+                    if (cause != null) {
+                        failures.put(items.get(i), JMSExceptionSupport.create(cause));
+                    }
+                }
+
+                LOGGER.finest(() -> String.format(
+                        "Client '%s' send %s messages to '%s' in batch, %s failed",
+                        context.getClientID(), items.size(), destination, failures.size()
+                ));
+
+                result.complete(failures);
+            });
+
+            if (completionListener != null) {
+                //回调在线程池中执行，不阻塞 Redis 的 IO 线程
+                executed.whenCompleteAsync((batchResult, batchError) -> {
+                    for (int i = 0; i < items.size(); i++) {
+                        notifyCompletion(items.get(i), causeOf(commands.get(i), batchError));
+                    }
+                }, context.callbackPool());
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * 管道中某条指令失败不影响其他消息，仅以消息自身指令的执行结果判定成败
+     *
+     * @param command    消息的写入指令
+     * @param batchError 批处理的执行异常
+     * @return 发送失败的原因，发送成功时为 null
+     */
+    private static Throwable causeOf(RFuture<?> command, Throwable batchError) {
+        return command.isSuccess() ? null : Optional.ofNullable(command.cause()).orElse(batchError);
+    }
+
+    private static boolean isStreamBody(JmsMessage message) {
+        return message instanceof ChunkedMessage && ((ChunkedMessage) message).isStreamBody();
+    }
+
     @Override
     public JMSProducer send(Destination destination, String body) {
         return send(destination, context.createTextMessage(body));
@@ -181,9 +387,10 @@ public class JmsProducerImpl implements JMSProducer {
 
     @Override
     public JMSProducer send(Destination destination, byte[] body) {
-        StreamMessage message = context.createStreamMessage();
+        //直接以数组作为消息内容，不复制
+        JmsBytesMessage message = (JmsBytesMessage) context.createBytesMessage();
         try {
-            message.writeBytes(body);
+            message.setBody(body);
         } catch (JMSException e) {
             throw JMSExceptionSupport.wrap(e);
         }
@@ -229,6 +436,9 @@ public class JmsProducerImpl implements JMSProducer {
 
     @Override
     public JMSProducer setPriority(int priority) {
+        if (priority < 0 || priority > 9) {
+            throw new JMSRuntimeException(String.format("Invalid priority '%s', should be 0 to 9", priority));
+        }
         this.priority = priority;
         return this;
     }
@@ -271,39 +481,61 @@ public class JmsProducerImpl implements JMSProducer {
         return completionListener;
     }
 
+    /**
+     * 设置后，未设置 {@link CompletionListener} 的消息异步发送且不等待发送结果，发送失败时通知上下文的 {@link ExceptionListener}
+     *
+     * @param fireAndForget 是否不等待发送结果
+     * @return 消息提供者
+     */
+    public JmsProducerImpl setFireAndForget(boolean fireAndForget) {
+        this.fireAndForget = fireAndForget;
+        return this;
+    }
+
+    public boolean getFireAndForget() {
+        return fireAndForget;
+    }
+
     @Override
     public JMSProducer setProperty(String name, boolean value) {
-        return setProperty(name, Boolean.valueOf(value));
+        property.setBooleanProperty(name, value);
+        return this;
     }
 
     @Override
     public JMSProducer setProperty(String name, byte value) {
-        return setProperty(name, Byte.valueOf(value));
+        property.setByteProperty(name, value);
+        return this;
     }
 
     @Override
     public JMSProducer setProperty(String name, short value) {
-        return setProperty(name, Short.valueOf(value));
+        property.setShortProperty(name, value);
+        return this;
     }
 
     @Override
     public JMSProducer setProperty(String name, int value) {
-        return setProperty(name, Integer.valueOf(value));
+        property.setIntProperty(name, value);
+        return this;
     }
 
     @Override
     public JMSProducer setProperty(String name, long value) {
-        return setProperty(name, Long.valueOf(value));
+        property.setLongProperty(name, value);
+        return this;
     }
 
     @Override
     public JMSProducer setProperty(String name, float value) {
-        return setProperty(name, Float.valueOf(value));
+        property.setFloatProperty(name, value);
+        return this;
     }
 
     @Override
     public JMSProducer setProperty(String name, double value) {
-        return setProperty(name, Double.valueOf(value));
+        property.setDoubleProperty(name, value);
+        return this;
     }
 
     @Override
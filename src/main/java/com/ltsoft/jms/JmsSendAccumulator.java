@@ -0,0 +1,184 @@
+package com.ltsoft.jms;
+
+import com.ltsoft.jms.engine.DestinationEngine;
+import com.ltsoft.jms.exception.JMSExceptionSupport;
+import com.ltsoft.jms.message.ChunkedMessage;
+import com.ltsoft.jms.message.JmsMessage;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+/**
+ * 消息发送累加器，将多个线程并发发送至同一目标的消息合并为一次 Redis 管道请求。
+ * <p>
+ * 目标的首条消息到达后开始计时，等待时间达到 {@link JmsConfig#getBatchLinger()}，
+ * 或累积的消息数、消息内容字节数达到上限时提交，提交后逐条完成各消息的发送结果。
+ * <p>
+ * 消息在管道中逐条写入，不会打包至信封中：信封中的消息需一同确认及重新投递，不应包含互不相关的发送。
+ */
+class JmsSendAccumulator {
+
+    private static final Logger LOGGER = Logger.getLogger(JmsSendAccumulator.class.getName());
+
+    private final JmsContextImpl context;
+
+    private final Map<Destination, Batch> batches = new ConcurrentHashMap<>();
+
+    JmsSendAccumulator(JmsContextImpl context) {
+        this.context = context;
+    }
+
+    /**
+     * @return 是否启用合并发送
+     */
+    boolean isEnabled() {
+        return !context.config().getBatchLinger().isZero();
+    }
+
+    /**
+     * 追加待发送的消息
+     *
+     * @param destination 消息目标
+     * @param message     JMS 消息
+     * @param timeToLive  消息存活毫秒数
+     * @return 消息发送结果，所在批次提交后可用
+     * @throws JMSException 消息无法序列化
+     */
+    CompletionStage<?> append(Destination destination, JmsMessage message, long timeToLive) throws JMSException {
+        if (message instanceof ChunkedMessage && ((ChunkedMessage) message).isStreamBody()) {
+            //以流设置的消息内容不在提交线程中读取，单独发送
+            return context.engine(destination).send(destination, message, timeToLive);
+        }
+
+        JmsConfig config = context.config();
+        long bodySize = bodySize(message);
+        Entry entry = new Entry(message, timeToLive);
+
+        Batch full = null;
+        synchronized (batches) {
+            Batch batch = batches.computeIfAbsent(destination, key -> {
+                Batch created = new Batch();
+                context.scheduledPool().schedule(() -> flush(destination, created), config.getBatchLinger().toMillis(), TimeUnit.MILLISECONDS);
+                return created;
+            });
+
+            batch.entries.add(entry);
+            batch.bytes += bodySize;
+
+            if (batch.entries.size() >= config.getBatchSize() || batch.bytes >= config.getBatchBytes()) {
+                batches.remove(destination);
+                full = batch;
+            }
+        }
+
+        if (full != null) {
+            //达到上限的批次由发送线程直接提交
+            submit(destination, full);
+        }
+
+        return entry.future;
+    }
+
+    private static long bodySize(JmsMessage message) throws JMSException {
+        if (message instanceof ChunkedMessage) {
+            //避免读取以流设置的消息内容
+            return Math.max(0, ((ChunkedMessage) message).getBodySize());
+        }
+
+        byte[] body = message.getBody();
+        return body != null ? body.length : 0;
+    }
+
+    /**
+     * 立即提交所有累积的消息
+     */
+    void flush() {
+        new ArrayList<>(batches.keySet()).forEach(destination -> {
+            Batch batch = batches.get(destination);
+            if (batch != null) {
+                flush(destination, batch);
+            }
+        });
+    }
+
+    private void flush(Destination destination, Batch batch) {
+        synchronized (batches) {
+            //批次可能已因达到上限被提交
+            if (!batches.remove(destination, batch)) {
+                return;
+            }
+        }
+        submit(destination, batch);
+    }
+
+    private void submit(Destination destination, Batch batch) {
+        RBatch redisBatch = context.client().createBatch(BatchOptions.defaults());
+        List<RFuture<?>> commands = new ArrayList<>(batch.entries.size());
+        List<Entry> entries = new ArrayList<>(batch.entries.size());
+
+        //逐条写入，不同发送者的消息不会被打包至同一信封中
+        DestinationEngine engine = context.engine(destination);
+        for (Entry entry : batch.entries) {
+            try {
+                commands.add(engine.send(redisBatch, destination, entry.message, entry.timeToLive));
+                entries.add(entry);
+            } catch (JMSException e) {
+                //无法写入的消息单独失败，不影响同批次的其他消息
+                entry.future.completeExceptionally(e);
+            }
+        }
+        if (entries.isEmpty()) {
+            return;
+        }
+
+        redisBatch.executeAsync().whenComplete((result, batchError) -> {
+            for (int i = 0; i < entries.size(); i++) {
+                RFuture<?> future = commands.get(i);
+                Throwable cause = future.isSuccess() ? null : Optional.ofNullable(future.cause()).orElse(batchError);
+
+                if (cause != null) {
+                    entries.get(i).future.completeExceptionally(JMSExceptionSupport.create(cause));
+                } else {
+                    entries.get(i).future.complete(future.getNow());
+                }
+            }
+
+            LOGGER.finest(() -> String.format(
+                    "Client '%s' flush %s messages to '%s'", context.getClientID(), entries.size(), destination
+            ));
+        });
+    }
+
+    /**
+     * 同一目标累积的消息
+     */
+    private static class Batch {
+
+        private final List<Entry> entries = new ArrayList<>();
+        private long bytes;
+    }
+
+    private static class Entry {
+
+        private final JmsMessage message;
+        private final long timeToLive;
+        private final CompletableFuture<Object> future = new CompletableFuture<>();
+
+        Entry(JmsMessage message, long timeToLive) {
+            this.message = message;
+            this.timeToLive = timeToLive;
+        }
+    }
+}
@@ -0,0 +1,196 @@
+package com.ltsoft.jms.engine;
+
+import com.ltsoft.jms.JmsAcknowledgeCallback;
+import com.ltsoft.jms.JmsConfig;
+import com.ltsoft.jms.JmsConsumerImpl;
+import com.ltsoft.jms.JmsContextImpl;
+import com.ltsoft.jms.message.JmsMessage;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.client.codec.StringCodec;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Queue;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static com.ltsoft.jms.message.JmsMessageHelper.compressBody;
+import static com.ltsoft.jms.message.JmsMessageHelper.fromMap;
+import static com.ltsoft.jms.message.JmsMessageHelper.toBytes;
+import static com.ltsoft.jms.message.JmsMessageHelper.toMap;
+import static com.ltsoft.jms.util.KeyHelper.getTopicConsumersKey;
+
+/**
+ * 存储引擎的公共实现，维护消费者心跳并负责消息的编解码
+ */
+public abstract class AbstractEngine implements DestinationEngine {
+
+    private static final byte[] WITH_BODY = {'1'};
+    private static final byte[] WITHOUT_BODY = {'0'};
+
+    protected final JmsContextImpl context;
+
+    protected AbstractEngine(JmsContextImpl context) {
+        this.context = context;
+    }
+
+    /**
+     * 构建消息写入脚本的 ARGV，依次为：消息 ID、存活毫秒数、是否有消息内容、消息内容、额外参数、消息属性
+     *
+     * @param message    JMS 消息
+     * @param timeToLive 消息存活毫秒数
+     * @param extras     引擎自定义的额外参数
+     * @return 脚本 ARGV
+     * @throws JMSException 消息无法序列化
+     */
+    protected Object[] messageArgs(JmsMessage message, long timeToLive, byte[]... extras) throws JMSException {
+        Map<String, byte[]> props = toMap(message);
+        return messageArgs(message, props, encodeBody(message, props), timeToLive, extras);
+    }
+
+    /**
+     * 以编码后的消息属性及消息内容构建消息写入脚本的 ARGV
+     *
+     * @param message    JMS 消息
+     * @param props      消息属性
+     * @param body       写入 Redis 的消息内容，可为 null
+     * @param timeToLive 消息存活毫秒数
+     * @param extras     引擎自定义的额外参数
+     * @return 脚本 ARGV
+     * @throws JMSException 消息无法序列化
+     */
+    protected Object[] messageArgs(JmsMessage message, Map<String, byte[]> props, byte[] body, long timeToLive, byte[]... extras) throws JMSException {
+        List<Object> args = new ArrayList<>(4 + extras.length + props.size() * 2);
+        args.add(message.getJMSMessageID().getBytes());
+        args.add(String.valueOf(timeToLive).getBytes());
+        args.add(body != null ? WITH_BODY : WITHOUT_BODY);
+        args.add(body != null ? body : new byte[0]);
+
+        for (byte[] extra : extras) {
+            args.add(extra);
+        }
+
+        props.forEach((key, value) -> {
+            args.add(key.getBytes());
+            args.add(value);
+        });
+
+        return args.toArray();
+    }
+
+    /**
+     * 编码消息内容，达到压缩阈值时压缩，并在消息属性中记录压缩算法
+     *
+     * @param message JMS 消息
+     * @param props   消息属性
+     * @return 写入 Redis 的消息内容
+     * @throws JMSException 消息无法序列化
+     */
+    protected byte[] encodeBody(JmsMessage message, Map<String, byte[]> props) throws JMSException {
+        JmsConfig config = context.config();
+        return compressBody(message.getBody(), props, config.getCompression(), config.getCompressThreshold());
+    }
+
+    /**
+     * 将消息完整编码为字节数组，消息内容按配置压缩
+     *
+     * @param message JMS 消息
+     * @return 编码后的消息
+     * @throws JMSException 消息无法序列化
+     */
+    protected byte[] encode(JmsMessage message) throws JMSException {
+        JmsConfig config = context.config();
+        return toBytes(message, config.getCompression(), config.getCompressThreshold());
+    }
+
+    /**
+     * 不支持延迟投递的存储引擎拒绝尚未到投递时间的消息，避免消息被提前投递
+     *
+     * @param destination 消息目标
+     * @param message     JMS 消息
+     * @throws JMSException 消息设置了延迟投递
+     */
+    protected static void rejectDelayed(Destination destination, JmsMessage message) throws JMSException {
+        if (message.getJMSDeliveryTime() > System.currentTimeMillis()) {
+            throw new JMSException(String.format("Delivery delay is not supported by the engine of '%s'", destination));
+        }
+    }
+
+    /**
+     * 有效订阅者的心跳时间范围，供脚本在服务端筛选订阅者
+     *
+     * @return 最小、最大心跳时间
+     */
+    protected byte[][] heartbeatRange() {
+        long now = Instant.now().getEpochSecond();
+        long expire = context.config().getConsumerExpire().getSeconds();
+
+        return new byte[][]{String.valueOf(now - expire).getBytes(), String.valueOf(now + expire).getBytes()};
+    }
+
+    /**
+     * 还原消息
+     *
+     * @param messageId 消息 ID
+     * @param props     消息属性，消息内容保存在 JMSXBody 字段中
+     * @return JMS 消息
+     * @throws JMSException 消息无法反序列化
+     */
+    protected JmsMessage decode(String messageId, Map<String, byte[]> props) throws JMSException {
+        JmsMessage message = fromMap(props);
+        message.setJMSMessageID(messageId);
+
+        return message;
+    }
+
+    /**
+     * 还原消费者读取到的消息
+     *
+     * @param consumer  消息消费者
+     * @param messageId 消息 ID
+     * @param props     消息属性，消息内容保存在 JMSXBody 字段中
+     * @param receipt   消息回执，可为 null
+     * @return JMS 消息
+     * @throws JMSException 消息无法反序列化
+     */
+    protected JmsMessage createMessage(JmsConsumerImpl consumer, String messageId, Map<String, byte[]> props, Object receipt) throws JMSException {
+        JmsMessage message = decode(messageId, props);
+        message.setAcknowledgeCallback(new JmsAcknowledgeCallback(consumer, receipt));
+
+        return message;
+    }
+
+    @Override
+    public List<RFuture<?>> send(RBatch batch, Destination destination, List<JmsMessage> messages, long timeToLive) throws JMSException {
+        List<RFuture<?>> futures = new ArrayList<>(messages.size());
+        for (JmsMessage message : messages) {
+            futures.add(send(batch, destination, message, timeToLive));
+        }
+        return futures;
+    }
+
+    @Override
+    public void ping(JmsConsumerImpl consumer) {
+        context.client().getScoredSortedSet(getTopicConsumersKey(consumer.getDestination()), StringCodec.INSTANCE)
+                .add(Instant.now().getEpochSecond(), context.getClientID());
+    }
+
+    @Override
+    public void unregister(JmsConsumerImpl consumer) {
+        context.client().getScoredSortedSet(getTopicConsumersKey(consumer.getDestination()), StringCodec.INSTANCE)
+                .remove(context.getClientID());
+    }
+
+    @Override
+    public void unsubscribe(JmsConsumerImpl consumer) {
+        //默认不保留订阅者的消费进度
+    }
+
+    @Override
+    public List<JmsMessage> browse(Queue queue) throws JMSException {
+        throw new JMSException(String.format("%s does not support browsing '%s'", getClass().getSimpleName(), queue));
+    }
+}
@@ -0,0 +1,126 @@
+package com.ltsoft.jms.engine;
+
+import com.ltsoft.jms.JmsConsumerImpl;
+import com.ltsoft.jms.message.JmsMessage;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Queue;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * 持久化消息的存储引擎，负责消息在 Redis 中的写入、读取、确认及重新投递
+ */
+public interface DestinationEngine {
+
+    /**
+     * 将消息的写入指令追加到批处理中
+     *
+     * @param batch       Redis 批处理
+     * @param destination 消息目标
+     * @param message     JMS 消息
+     * @param timeToLive  消息存活毫秒数，0 表示不过期
+     * @return 消息写入指令的结果，批处理执行后可用
+     * @throws JMSException 消息目标不支持或消息无法序列化
+     */
+    RFuture<?> send(RBatch batch, Destination destination, JmsMessage message, long timeToLive) throws JMSException;
+
+    /**
+     * 将多条消息的写入指令追加到批处理中
+     *
+     * @param batch       Redis 批处理
+     * @param destination 消息目标
+     * @param messages    JMS 消息
+     * @param timeToLive  消息存活毫秒数，0 表示不过期
+     * @return 与消息一一对应的写入指令结果，批处理执行后可用
+     * @throws JMSException 消息目标不支持或消息无法序列化
+     */
+    List<RFuture<?>> send(RBatch batch, Destination destination, List<JmsMessage> messages, long timeToLive) throws JMSException;
+
+    /**
+     * 发送消息
+     *
+     * @param destination 消息目标
+     * @param message     JMS 消息
+     * @param timeToLive  消息存活毫秒数，0 表示不过期
+     * @return 消息写入结果
+     * @throws JMSException 消息目标不支持或消息无法序列化
+     */
+    CompletionStage<?> send(Destination destination, JmsMessage message, long timeToLive) throws JMSException;
+
+    /**
+     * 阻塞读取消息
+     *
+     * @param consumer 消息消费者
+     * @param timeout  超时毫秒数，0 表示一直等待
+     * @return JMS 消息，超时或消息已过期时为 null
+     * @throws JMSException 消息读取失败
+     */
+    JmsMessage receive(JmsConsumerImpl consumer, long timeout) throws JMSException;
+
+    /**
+     * 读取消息，无消息时立即返回
+     *
+     * @param consumer 消息消费者
+     * @return JMS 消息，无消息或消息已过期时为 null
+     * @throws JMSException 消息读取失败
+     */
+    JmsMessage receiveNoWait(JmsConsumerImpl consumer) throws JMSException;
+
+    /**
+     * 确认消息已被消费
+     *
+     * @param consumer 消息消费者
+     * @param message  JMS 消息
+     * @param receipt  读取消息时由引擎生成的回执，可为 null
+     * @throws JMSException 消息确认失败
+     */
+    void acknowledge(JmsConsumerImpl consumer, JmsMessage message, Object receipt) throws JMSException;
+
+    /**
+     * 注册消费者
+     *
+     * @param consumer 消息消费者
+     */
+    void register(JmsConsumerImpl consumer);
+
+    /**
+     * 更新消费者心跳，由消费者在注册时及之后定时调用
+     *
+     * @param consumer 消息消费者
+     */
+    void ping(JmsConsumerImpl consumer);
+
+    /**
+     * 注销消费者
+     *
+     * @param consumer 消息消费者
+     */
+    void unregister(JmsConsumerImpl consumer);
+
+    /**
+     * 取消持久订阅，删除引擎为订阅者保留的消费进度
+     *
+     * @param consumer 消息消费者
+     */
+    void unsubscribe(JmsConsumerImpl consumer);
+
+    /**
+     * 重新投递消费超时的消息，并清理已消费的消息。由消费者定时调用。
+     *
+     * @param consumer 消息消费者
+     */
+    void recover(JmsConsumerImpl consumer);
+
+    /**
+     * 浏览队列中尚未被消费的消息
+     *
+     * @param queue 消息队列
+     * @return 队列中的消息
+     * @throws JMSException 存储引擎不支持浏览或消息读取失败
+     */
+    List<JmsMessage> browse(Queue queue) throws JMSException;
+}
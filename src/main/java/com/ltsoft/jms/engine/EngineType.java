@@ -0,0 +1,22 @@
+package com.ltsoft.jms.engine;
+
+/**
+ * 持久化消息的存储方式
+ */
+public enum EngineType {
+
+    /**
+     * 每个订阅者独立的消息 ID 列表
+     */
+    LIST,
+
+    /**
+     * 所有订阅者共享的消息日志，各订阅者按游标消费，仅 Topic 可用，不支持延迟投递
+     */
+    TOPIC_LOG,
+
+    /**
+     * 基于 Redis Streams 的消息流，Queue 与 Topic 均可使用，不支持延迟投递
+     */
+    STREAM
+}
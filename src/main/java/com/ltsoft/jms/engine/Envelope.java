@@ -0,0 +1,159 @@
+package com.ltsoft.jms.engine;
+
+import com.ltsoft.jms.JmsConsumerImpl;
+import com.ltsoft.jms.message.JmsMessage;
+
+import javax.jms.JMSException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.ltsoft.jms.message.JmsMessageHelper.fromBytes;
+
+/**
+ * 消息信封，将多条编码后的消息打包为一个消息列表元素。
+ * <p>
+ * 信封格式为：首字节 {@link #MARKER}，随后依次为每条消息的 4 字节长度及编码内容。信封以首条消息的 ID 标识。
+ * <p>
+ * 信封被读取后拆分为多条消息逐条投递，所有消息均确认后信封才从备份队列中移除。
+ */
+final class Envelope {
+
+    //信封的首字节，与内联消息及消息 ID 均不冲突
+    static final byte MARKER = 1;
+
+    private final byte[] element;
+    private final String id;
+    private final Queue<JmsMessage> pending;
+    private final Set<String> unacked = ConcurrentHashMap.newKeySet();
+
+    Envelope(byte[] element, String id, Collection<JmsMessage> messages) throws JMSException {
+        this.element = element;
+        this.id = id;
+        this.pending = new ConcurrentLinkedQueue<>(messages);
+
+        for (JmsMessage message : messages) {
+            unacked.add(message.getJMSMessageID());
+        }
+    }
+
+    static boolean isEnvelope(byte[] element) {
+        return element.length > 0 && element[0] == MARKER;
+    }
+
+    /**
+     * 打包消息
+     *
+     * @param messages 编码后的消息
+     * @return 信封
+     */
+    static byte[] pack(List<byte[]> messages) {
+        int size = 1;
+        for (byte[] message : messages) {
+            size += Integer.BYTES + message.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(MARKER);
+        for (byte[] message : messages) {
+            buffer.putInt(message.length);
+            buffer.put(message);
+        }
+        return buffer.array();
+    }
+
+    /**
+     * 信封打包后的字节数
+     *
+     * @param messageSize 编码后的消息字节数
+     * @return 信封中该消息占用的字节数
+     */
+    static int packedSize(int messageSize) {
+        return Integer.BYTES + messageSize;
+    }
+
+    /**
+     * 拆分信封
+     *
+     * @param element 信封
+     * @return 信封中的消息
+     * @throws JMSException 消息无法反序列化
+     */
+    static List<JmsMessage> unpack(byte[] element) throws JMSException {
+        List<JmsMessage> messages = new ArrayList<>();
+
+        ByteBuffer buffer = ByteBuffer.wrap(element, 1, element.length - 1);
+        while (buffer.remaining() >= Integer.BYTES) {
+            int length = buffer.getInt();
+            int offset = buffer.position();
+            messages.add(fromBytes(element, offset, length));
+            buffer.position(offset + length);
+        }
+        return messages;
+    }
+
+    /**
+     * 读取信封 ID，仅解码首条消息
+     *
+     * @param element 信封
+     * @return 信封 ID
+     * @throws JMSException 消息无法反序列化
+     */
+    static String idOf(byte[] element) throws JMSException {
+        int length = ByteBuffer.wrap(element, 1, Integer.BYTES).getInt();
+        int offset = 1 + Integer.BYTES;
+        return fromBytes(element, offset, length).getJMSMessageID();
+    }
+
+    byte[] getElement() {
+        return element;
+    }
+
+    String getId() {
+        return id;
+    }
+
+    /**
+     * 取出下一条待投递的消息
+     *
+     * @return JMS 消息，已全部投递时为 null
+     */
+    JmsMessage next() {
+        return pending.poll();
+    }
+
+    /**
+     * 确认信封中的消息
+     *
+     * @param messageId 消息 ID
+     * @return 信封中的消息是否均已确认
+     */
+    boolean acknowledge(String messageId) {
+        unacked.remove(messageId);
+        return unacked.isEmpty();
+    }
+
+    /**
+     * 信封中的消息是否均已确认
+     *
+     * @return 是否均已确认
+     */
+    boolean isAcknowledged() {
+        return unacked.isEmpty();
+    }
+
+    /**
+     * 信封是否仍在消费中：尚有消息未投递，或已投递的消息仍在消费中
+     *
+     * @param consumer 消息消费者
+     * @return 是否在消费中
+     */
+    boolean isConsuming(JmsConsumerImpl consumer) {
+        return !pending.isEmpty() || unacked.stream().anyMatch(consumer::isConsuming);
+    }
+}
@@ -0,0 +1,1139 @@
+package com.ltsoft.jms.engine;
+
+import com.ltsoft.jms.JmsAcknowledgeCallback;
+import com.ltsoft.jms.JmsConfig;
+import com.ltsoft.jms.JmsConsumerImpl;
+import com.ltsoft.jms.JmsContextImpl;
+import com.ltsoft.jms.exception.JMSExceptionSupport;
+import com.ltsoft.jms.message.ChunkedMessage;
+import com.ltsoft.jms.message.JmsMessage;
+import com.ltsoft.jms.util.KeyHelper;
+import com.ltsoft.jms.util.LuaScript;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBlockingDeque;
+import org.redisson.api.RDeque;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
+import org.redisson.api.RSet;
+import org.redisson.api.RSetAsync;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.RedisTimeoutException;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.StringCodec;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Message;
+import javax.jms.Queue;
+import javax.jms.Topic;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import static com.ltsoft.jms.message.JmsMessageHelper.*;
+import static com.ltsoft.jms.util.KeyHelper.*;
+
+/**
+ * 基于消息 ID 列表的存储引擎。
+ * <p>
+ * Queue 的消息 ID 写入一个共享列表；Topic 的消息 ID 写入每个订阅者独立的列表，并由消息实体消费者集合记录尚未确认的订阅者。
+ * <p>
+ * 启用内联后，编码后足够小的消息直接写入消息列表，读取时无需再访问消息属性。
+ * <p>
+ * 启用信封后，批量发送的消息打包为 {@link Envelope} 写入消息列表，读取时拆分后逐条投递，已确认的消息 ID 记录在信封的确认集合中。
+ * <p>
+ * 启用优先级队列后，非默认优先级的 Queue 消息写入各优先级的消息列表，由脚本按优先级由高至低原子读取，写入后通过新消息通知唤醒等待中的消费者。
+ * <p>
+ * 设置了投递延迟的消息按投递时间写入延迟消息集合，由消费者所在节点定时将到期的消息移入消息列表。
+ * <p>
+ * 设置了存活时间的消息不会内联或打包为信封。由消费者所在节点定时删除各消息列表读取端固定窗口内已过期的消息 ID，窗口之外的过期消息 ID 在读取时由服务端跳过；
+ * 延迟消息另按过期时间写入过期索引，到期后从延迟消息集合中删除。
+ * <p>
+ * 较大的 BytesMessage 及 StreamMessage 的消息内容逐块写入多个 Key，每条 Redis 命令的数据量不超过分块大小，消费者读取时按需逐块加载。
+ */
+public class ListEngine extends AbstractEngine {
+
+    //内联消息的首字节，消息 ID 均为可打印字符，不会与之冲突
+    private static final byte INLINE = 0;
+
+    //未收到新消息通知时的最长等待时间，避免通知丢失导致读取停滞
+    private static final long SIGNAL_WAIT = Duration.ofSeconds(1).toMillis();
+
+    //单次最多移动的到期延迟消息数
+    private static final int MOVE_LIMIT = 100;
+
+    //单次最多清除的延迟消息过期索引数
+    private static final int SWEEP_LIMIT = 100;
+
+    //清除过期消息时，每个消息列表自读取端最多检查的元素数
+    private static final byte[] SWEEP_WINDOW = "100".getBytes();
+
+    //未设置存活时间的消息分块先以该时长写入，由入列脚本持久保存，入列失败或发送中断时分块自动过期
+    private static final long ORPHAN_CHUNK_TTL = Duration.ofDays(1).toMillis();
+
+    //读取消息时单次最多跳过的过期消息数
+    private static final byte[] SKIP_LIMIT = "1000".getBytes();
+
+    private static final Logger LOGGER = Logger.getLogger(ListEngine.class.getName());
+
+    //已拆分的信封，按信封 ID 索引
+    private final Map<String, Envelope> envelopes = new ConcurrentHashMap<>();
+
+    //各消费者尚有消息待投递的信封
+    private final Map<JmsConsumerImpl, ConcurrentLinkedQueue<Envelope>> unpacked = new ConcurrentHashMap<>();
+
+    private final Map<JmsConsumerImpl, Signal> signals = new ConcurrentHashMap<>();
+
+    //各消息目标的延迟消息移动及过期消息清除任务，同一目标的消费者共用
+    private final Map<Destination, Maintenance> maintenances = new ConcurrentHashMap<>();
+
+    public ListEngine(JmsContextImpl context) {
+        super(context);
+    }
+
+    private boolean isPriority(Destination destination) {
+        return destination instanceof Queue && context.config().isQueuePriority();
+    }
+
+    /**
+     * @return 指定优先级的消息是否写入 Queue 本身的消息列表
+     */
+    private boolean isDefaultList(Destination destination, int priority) {
+        return !isPriority(destination) || priority == Message.DEFAULT_PRIORITY;
+    }
+
+    /**
+     * Queue 中指定优先级的消息列表，未启用优先级队列或为默认优先级时为 Queue 本身
+     *
+     * @param destination 消息目标
+     * @param priority    消息优先级
+     * @return 消息列表 Key
+     */
+    private String getQueueListKey(Destination destination, int priority) {
+        if (!isDefaultList(destination, priority)) {
+            return getDestinationPriorityKey(destination, Math.max(0, Math.min(9, priority)));
+        }
+        return getDestinationKey(destination);
+    }
+
+    /**
+     * 按优先级由高至低排列的消息列表
+     */
+    private List<Object> getQueueListKeys(Destination destination) {
+        List<Object> keys = new ArrayList<>(10);
+        for (int priority = 9; priority >= 0; priority--) {
+            keys.add(getQueueListKey(destination, priority));
+        }
+        return keys;
+    }
+
+    /**
+     * 构建消息入列脚本的 KEYS
+     *
+     * @param destination 消息目标
+     * @param message     JMS 消息
+     * @return 脚本 KEYS
+     */
+    private List<Object> enqueueKeys(Destination destination, JmsMessage message) throws JMSException {
+        String messageId = message.getJMSMessageID();
+
+        List<Object> keys = new ArrayList<>(3);
+        keys.add(getDestinationPropsKey(destination, messageId));
+        keys.add(getTopicItemConsumersKey(destination, messageId));
+
+        if (destination instanceof Topic) {
+            keys.add(getTopicConsumersKey(destination));
+        } else if (destination instanceof Queue) {
+            keys.add(getQueueListKey(destination, message.getJMSPriority()));
+        } else {
+            throw new JMSException("不支持的目的类型");
+        }
+
+        return keys;
+    }
+
+    /**
+     * 构建消息入列脚本的 ARGV
+     *
+     * @param batch       写入消息分块的批处理，为 null 时在当前线程直接写入
+     * @param destination 消息目标
+     * @param message     JMS 消息
+     * @param timeToLive  消息存活毫秒数
+     * @return 脚本 ARGV
+     */
+    private Object[] enqueueArgs(RBatch batch, Destination destination, JmsMessage message, long timeToLive) throws JMSException {
+        Map<String, byte[]> props = toProps(destination, message);
+        byte[] body = encodeBody(batch, destination, message, timeToLive, props);
+        if (destination instanceof Topic) {
+            //订阅者由脚本按心跳时间在服务端解析
+            byte[][] range = heartbeatRange();
+            return messageArgs(message, props, body, timeToLive, getTopicConsumerListKey(destination, "").getBytes(), range[0], range[1]);
+        }
+
+        return messageArgs(message, props, body, timeToLive, new byte[0], new byte[0], new byte[0]);
+    }
+
+    /**
+     * 消息内容是否需要分块保存
+     *
+     * @param message JMS 消息
+     * @return 是否分块保存
+     */
+    private boolean isChunked(JmsMessage message) {
+        int chunkSize = context.config().getChunkSize();
+        if (chunkSize <= 0 || !(message instanceof ChunkedMessage)) {
+            return false;
+        }
+
+        ChunkedMessage chunked = (ChunkedMessage) message;
+        return chunked.isStreamBody() || chunked.getBodySize() > chunkSize;
+    }
+
+    /**
+     * 编码消息内容，需分块保存的消息内容在此逐块写入，不再随消息属性写入。
+     * <p>
+     * 分块先于入列脚本写入，未设置存活时间时以 {@link #ORPHAN_CHUNK_TTL} 写入，由入列脚本持久保存。
+     *
+     * @param batch       写入分块的批处理，与入列脚本在同一管道中提交；为 null 时在当前线程逐块写入，内存占用与消息内容大小无关
+     * @param destination 消息目标
+     * @param message     JMS 消息
+     * @param timeToLive  消息存活毫秒数
+     * @param props       消息属性，分块保存时记录分块数及消息内容字节数
+     * @return 随消息属性写入的消息内容，分块保存时为 null
+     */
+    private byte[] encodeBody(RBatch batch, Destination destination, JmsMessage message, long timeToLive, Map<String, byte[]> props) throws JMSException {
+        if (!isChunked(message)) {
+            return encodeBody(message, props);
+        }
+
+        String messageId = message.getJMSMessageID();
+        long chunkTtl = timeToLive > 0 ? timeToLive : ORPHAN_CHUNK_TTL;
+        byte[] buffer = new byte[context.config().getChunkSize()];
+        int count = 0;
+        long length = 0;
+
+        try (InputStream in = ((ChunkedMessage) message).getBodyStream()) {
+            int read;
+            while ((read = readChunk(in, buffer)) > 0) {
+                String chunkKey = getDestinationChunkKey(destination, messageId, count);
+                if (batch != null) {
+                    //批处理提交前分块不可复用
+                    batch.<byte[]>getBucket(chunkKey, ByteArrayCodec.INSTANCE).setAsync(Arrays.copyOf(buffer, read), chunkTtl, TimeUnit.MILLISECONDS);
+                } else {
+                    byte[] chunk = read == buffer.length ? buffer : Arrays.copyOf(buffer, read);
+                    context.client().<byte[]>getBucket(chunkKey, ByteArrayCodec.INSTANCE).set(chunk, chunkTtl, TimeUnit.MILLISECONDS);
+                }
+                count++;
+                length += read;
+            }
+        } catch (IOException e) {
+            throw JMSExceptionSupport.create(e);
+        }
+
+        props.put(JMSX_CHUNKS, String.valueOf(count).getBytes());
+        props.put(JMSX_BODY_LENGTH, String.valueOf(length).getBytes());
+        return null;
+    }
+
+    private static int readChunk(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        int read;
+        while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) != -1) {
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * 为分块保存的消息设置分块加载方式
+     */
+    private void loadChunks(Destination destination, JmsMessage message, Map<String, byte[]> props) throws JMSException {
+        byte[] chunks = props.get(JMSX_CHUNKS);
+        if (chunks == null || !(message instanceof ChunkedMessage)) {
+            return;
+        }
+
+        String messageId = message.getJMSMessageID();
+        RedissonClient client = context.client();
+        ((ChunkedMessage) message).setBodyChunks(Integer.parseInt(new String(chunks)), Long.parseLong(new String(props.get(JMSX_BODY_LENGTH))),
+                index -> client.<byte[]>getBucket(getDestinationChunkKey(destination, messageId, index), ByteArrayCodec.INSTANCE).get());
+    }
+
+    /**
+     * 将消息编码为内联消息
+     *
+     * @param message JMS 消息
+     * @return 内联消息，超过内联消息大小上限、设置了存活时间或未启用内联时为 null
+     */
+    private byte[] toInline(JmsMessage message) throws JMSException {
+        int threshold = context.config().getInlineThreshold();
+        //设置了存活时间的消息以消息 ID 写入，过期后可由定时任务在服务端清除
+        if (threshold <= 0 || isChunked(message) || message.getJMSExpiration() != 0) {
+            return null;
+        }
+
+        byte[] bytes = encode(message);
+        if (bytes.length > threshold) {
+            return null;
+        }
+
+        byte[] element = new byte[bytes.length + 1];
+        element[0] = INLINE;
+        System.arraycopy(bytes, 0, element, 1, bytes.length);
+        return element;
+    }
+
+    private static boolean isInline(byte[] element) {
+        return element.length > 0 && element[0] == INLINE;
+    }
+
+    private static JmsMessage fromInline(byte[] element) throws JMSException {
+        return fromBytes(element, 1, element.length - 1);
+    }
+
+    private List<Object> inlineKeys(Destination destination, int priority) throws JMSException {
+        if (destination instanceof Topic) {
+            return Collections.singletonList(getTopicConsumersKey(destination));
+        } else if (destination instanceof Queue) {
+            return Collections.singletonList(getQueueListKey(destination, priority));
+        }
+        throw new JMSException("不支持的目的类型");
+    }
+
+    private Object[] inlineArgs(Destination destination, byte[] element) {
+        if (destination instanceof Topic) {
+            byte[][] range = heartbeatRange();
+            return new Object[]{element, getTopicConsumerListKey(destination, "").getBytes(), range[0], range[1]};
+        }
+        return new Object[]{element, new byte[0], new byte[0], new byte[0]};
+    }
+
+    /**
+     * 优先级队列写入消息后发送新消息通知
+     */
+    private void notify(RBatch batch, Destination destination) {
+        if (isPriority(destination)) {
+            batch.getTopic(getDestinationNotifyKey(destination), StringCodec.INSTANCE).publishAsync("");
+        }
+    }
+
+    private static boolean isDelayed(JmsMessage message) throws JMSException {
+        return message.getJMSDeliveryTime() > System.currentTimeMillis();
+    }
+
+    /**
+     * 消息属性。优先级队列中非默认优先级的消息另以字符串保存优先级，供延迟消息到期及消息重新入列时写回原优先级的消息列表
+     */
+    private Map<String, byte[]> toProps(Destination destination, JmsMessage message) throws JMSException {
+        Map<String, byte[]> props = toMap(message);
+        if (!isDefaultList(destination, message.getJMSPriority())) {
+            props.put(JMS_PRIORITY, String.valueOf(message.getJMSPriority()).getBytes());
+        }
+        return props;
+    }
+
+    private static List<Object> delayKeys(Destination destination, JmsMessage message) throws JMSException {
+        return Arrays.asList(getDestinationPropsKey(destination, message.getJMSMessageID()),
+                getDestinationDelayedKey(destination), getDestinationExpiryKey(destination));
+    }
+
+    private Object[] delayArgs(RBatch batch, Destination destination, JmsMessage message, long timeToLive) throws JMSException {
+        Map<String, byte[]> props = toProps(destination, message);
+        byte[] body = encodeBody(batch, destination, message, timeToLive, props);
+        return messageArgs(message, props, body, timeToLive, String.valueOf(message.getJMSDeliveryTime()).getBytes(),
+                String.valueOf(message.getJMSExpiration()).getBytes());
+    }
+
+    @Override
+    public RFuture<?> send(RBatch batch, Destination destination, JmsMessage message, long timeToLive) throws JMSException {
+        RFuture<?> future;
+
+        byte[] element = toInline(message);
+        if (isDelayed(message)) {
+            //延迟消息到期后才写入消息列表
+            String delayedKey = getDestinationDelayedKey(destination);
+            //到期脚本按消息属性中的优先级移入消息列表，非默认优先级的消息不以内联方式写入
+            if (element != null && isDefaultList(destination, message.getJMSPriority())) {
+                return batch.getScoredSortedSet(delayedKey, ByteArrayCodec.INSTANCE).addAsync(message.getJMSDeliveryTime(), element);
+            }
+            return LuaScript.DELAY_ENQUEUE.evalAsync(batch, RScript.ReturnType.INTEGER,
+                    delayKeys(destination, message), delayArgs(batch, destination, message, timeToLive));
+        } else if (element != null) {
+            future = LuaScript.ENQUEUE_INLINE.evalAsync(batch, RScript.ReturnType.INTEGER,
+                    inlineKeys(destination, message.getJMSPriority()), inlineArgs(destination, element));
+        } else {
+            future = LuaScript.ENQUEUE.evalAsync(batch, RScript.ReturnType.INTEGER,
+                    enqueueKeys(destination, message), enqueueArgs(batch, destination, message, timeToLive));
+        }
+
+        notify(batch, destination);
+        return future;
+    }
+
+    @Override
+    public CompletionStage<?> send(Destination destination, JmsMessage message, long timeToLive) throws JMSException {
+        CompletionStage<?> future;
+
+        boolean delayed = isDelayed(message);
+        byte[] element = toInline(message);
+        if (isChunked(message)) {
+            future = sendChunked(destination, message, timeToLive, delayed);
+            if (delayed) {
+                return future;
+            }
+        } else if (delayed) {
+            //延迟消息到期后才写入消息列表
+            String delayedKey = getDestinationDelayedKey(destination);
+            //到期脚本按消息属性中的优先级移入消息列表，非默认优先级的消息不以内联方式写入
+            if (element != null && isDefaultList(destination, message.getJMSPriority())) {
+                return context.client().getScoredSortedSet(delayedKey, ByteArrayCodec.INSTANCE).addAsync(message.getJMSDeliveryTime(), element);
+            }
+            return LuaScript.DELAY_ENQUEUE.evalAsync(context.client(), RScript.ReturnType.INTEGER,
+                    delayKeys(destination, message), delayArgs(null, destination, message, timeToLive));
+        } else if (element != null) {
+            //小消息整体写入消息列表，无需额外的属性 Key
+            future = LuaScript.ENQUEUE_INLINE.evalAsync(context.client(), RScript.ReturnType.INTEGER,
+                    inlineKeys(destination, message.getJMSPriority()), inlineArgs(destination, element));
+        } else {
+            //属性、内容、消息 ID 入列（Topic 为分发至各订阅者）及过期时间在同一个脚本中原子写入
+            future = LuaScript.ENQUEUE.evalAsync(context.client(), RScript.ReturnType.INTEGER,
+                    enqueueKeys(destination, message), enqueueArgs(null, destination, message, timeToLive));
+        }
+
+        if (isPriority(destination)) {
+            RTopic notify = context.client().getTopic(getDestinationNotifyKey(destination), StringCodec.INSTANCE);
+            return future.thenCompose(result -> notify.publishAsync(""));
+        }
+        return future;
+    }
+
+    /**
+     * 在线程池中读取消息内容并逐块写入，完成后执行入列脚本，发送线程不会因读取流或写入分块而阻塞
+     */
+    private CompletionStage<?> sendChunked(Destination destination, JmsMessage message, long timeToLive, boolean delayed) throws JMSException {
+        List<Object> keys = delayed ? delayKeys(destination, message) : enqueueKeys(destination, message);
+
+        CompletableFuture<Object[]> args = new CompletableFuture<>();
+        context.cachedPool().execute(() -> {
+            try {
+                args.complete(delayed ? delayArgs(null, destination, message, timeToLive) : enqueueArgs(null, destination, message, timeToLive));
+            } catch (JMSException | RuntimeException e) {
+                args.completeExceptionally(e);
+            }
+        });
+
+        LuaScript script = delayed ? LuaScript.DELAY_ENQUEUE : LuaScript.ENQUEUE;
+        return args.thenCompose(argv -> script.evalAsync(context.client(), RScript.ReturnType.INTEGER, keys, argv));
+    }
+
+    /**
+     * 启用信封后，消息按信封的消息数及字节数上限依次打包，每个信封作为一个内联元素写入消息列表
+     */
+    @Override
+    public List<RFuture<?>> send(RBatch batch, Destination destination, List<JmsMessage> messages, long timeToLive) throws JMSException {
+        JmsConfig config = context.config();
+        int maxSize = config.getEnvelopeSize();
+        if (maxSize <= 1 || messages.size() <= 1) {
+            return super.send(batch, destination, messages, timeToLive);
+        }
+
+        int maxBytes = config.getEnvelopeBytes();
+        RFuture<?>[] futures = new RFuture<?>[messages.size()];
+        List<Integer> packedIndexes = new ArrayList<>(maxSize);
+        List<byte[]> packing = new ArrayList<>(maxSize);
+        int packingBytes = 1;
+        int packingPriority = Message.DEFAULT_PRIORITY;
+
+        for (int i = 0; i < messages.size(); i++) {
+            JmsMessage message = messages.get(i);
+            if (isDelayed(message) || isChunked(message) || message.getJMSExpiration() != 0) {
+                //延迟消息、分块保存的消息及设置了存活时间的消息单独写入
+                futures[i] = send(batch, destination, message, timeToLive);
+                continue;
+            }
+
+            byte[] bytes = encode(message);
+            int packedSize = Envelope.packedSize(bytes.length);
+
+            if (packedSize + 1 > maxBytes) {
+                //超过信封大小上限的消息单独写入
+                futures[i] = send(batch, destination, message, timeToLive);
+                continue;
+            }
+
+            //信封按首条消息的优先级写入，优先级不同的消息不打包在一起
+            boolean priorityChanged = isPriority(destination) && message.getJMSPriority() != packingPriority;
+            if (!packing.isEmpty() && (packing.size() == maxSize || packingBytes + packedSize > maxBytes || priorityChanged)) {
+                sendEnvelope(batch, destination, packingPriority, packing, packedIndexes, futures);
+                packingBytes = 1;
+            }
+
+            if (packing.isEmpty()) {
+                packingPriority = message.getJMSPriority();
+            }
+
+            packing.add(bytes);
+            packedIndexes.add(i);
+            packingBytes += packedSize;
+        }
+
+        if (!packing.isEmpty()) {
+            sendEnvelope(batch, destination, packingPriority, packing, packedIndexes, futures);
+        }
+
+        return Arrays.asList(futures);
+    }
+
+    private void sendEnvelope(RBatch batch, Destination destination, int priority, List<byte[]> packing, List<Integer> packedIndexes, RFuture<?>[] futures) throws JMSException {
+        RFuture<?> future = LuaScript.ENQUEUE_INLINE.evalAsync(batch, RScript.ReturnType.INTEGER,
+                inlineKeys(destination, priority), inlineArgs(destination, Envelope.pack(packing)));
+        notify(batch, destination);
+
+        //信封中的消息共享同一个写入结果
+        for (int index : packedIndexes) {
+            futures[index] = future;
+        }
+
+        packing.clear();
+        packedIndexes.clear();
+    }
+
+    private String getEnvelopeAckedKey(Destination destination, String envelopeId) {
+        //Topic 的信封分发至各订阅者，确认集合也按订阅者区分
+        return KeyHelper.getEnvelopeAckedKey(destination, envelopeId, destination instanceof Topic ? context.getClientID() : null);
+    }
+
+    /**
+     * 拆分信封，跳过已确认及已过期的消息
+     *
+     * @param destination 消息目标
+     * @param envelopeId  信封 ID
+     * @param messages    信封中的消息
+     * @return 尚未确认的消息
+     */
+    private List<JmsMessage> unpack(Destination destination, String envelopeId, List<JmsMessage> messages) throws JMSException {
+        Set<String> acked = context.client().<String>getSet(getEnvelopeAckedKey(destination, envelopeId), StringCodec.INSTANCE).readAll();
+        long now = System.currentTimeMillis();
+
+        List<JmsMessage> remaining = new ArrayList<>(messages.size());
+        for (JmsMessage message : messages) {
+            long expiration = message.getJMSExpiration();
+            if (!acked.contains(message.getJMSMessageID()) && (expiration <= 0 || expiration >= now)) {
+                remaining.add(message);
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * 拆分消费者读取到的信封，返回其中的首条消息
+     *
+     * @param consumer 消息消费者
+     * @param element  信封
+     * @return JMS 消息，信封中的消息均已确认或已过期时为 null
+     */
+    private JmsMessage openEnvelope(JmsConsumerImpl consumer, byte[] element) throws JMSException {
+        List<JmsMessage> messages = Envelope.unpack(element);
+        String envelopeId = messages.get(0).getJMSMessageID();
+
+        Envelope envelope = new Envelope(element, envelopeId, unpack(consumer.getDestination(), envelopeId, messages));
+        if (envelope.isAcknowledged()) {
+            release(consumer, envelope);
+            return null;
+        }
+
+        envelopes.put(envelopeId, envelope);
+        unpacked.computeIfAbsent(consumer, key -> new ConcurrentLinkedQueue<>()).add(envelope);
+
+        return nextUnpacked(consumer);
+    }
+
+    /**
+     * 取出消费者已拆分信封中的下一条消息
+     *
+     * @param consumer 消息消费者
+     * @return JMS 消息，无已拆分的消息时为 null
+     */
+    private JmsMessage nextUnpacked(JmsConsumerImpl consumer) {
+        ConcurrentLinkedQueue<Envelope> queue = unpacked.get(consumer);
+        if (queue == null) {
+            return null;
+        }
+
+        Envelope envelope;
+        while ((envelope = queue.peek()) != null) {
+            JmsMessage message = envelope.next();
+            if (message != null) {
+                message.setAcknowledgeCallback(new JmsAcknowledgeCallback(consumer, envelope));
+                return message;
+            }
+            queue.remove(envelope);
+        }
+        return null;
+    }
+
+    /**
+     * 信封中的消息均已确认，从备份队列中移除信封并删除确认集合
+     */
+    private void release(JmsConsumerImpl consumer, Envelope envelope) {
+        Destination destination = consumer.getDestination();
+
+        RBatch batch = context.client().createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.REDIS_WRITE_ATOMIC));
+        batch.getList(getDestinationBackupKey(destination, context.getClientID()), ByteArrayCodec.INSTANCE).removeAsync(envelope.getElement());
+        batch.getKeys().deleteAsync(getEnvelopeAckedKey(destination, envelope.getId()));
+        batch.execute();
+
+        envelopes.remove(envelope.getId(), envelope);
+    }
+
+    private String getMessageListKey(Destination destination) {
+        String key = null;
+        if (destination instanceof Queue) {
+            key = getDestinationKey(destination);
+        } else if (destination instanceof Topic) {
+            key = getTopicConsumerListKey(destination, context.getClientID());
+        }
+        return key;
+    }
+
+    /**
+     * 读取消息列表元素对应的消息
+     *
+     * @param consumer 消息消费者
+     * @param element  消息列表元素，为消息 ID 或内联消息
+     * @return JMS 消息
+     */
+    private JmsMessage readMessage(JmsConsumerImpl consumer, byte[] element) throws JMSException {
+        if (Objects.isNull(element)) {
+            return null;
+        }
+
+        if (Envelope.isEnvelope(element)) {
+            return openEnvelope(consumer, element);
+        }
+
+        if (isInline(element)) {
+            //内联消息以列表元素作为回执，确认时从备份队列中移除
+            JmsMessage message = fromInline(element);
+            message.setAcknowledgeCallback(new JmsAcknowledgeCallback(consumer, element));
+
+            long expiration = message.getJMSExpiration();
+            if (expiration > 0 && expiration < System.currentTimeMillis()) {
+                acknowledge(consumer, message, element);
+                return null;
+            }
+            return message;
+        }
+
+        Destination destination = consumer.getDestination();
+        JmsMessage message = readMessage(destination, new String(element));
+        if (message != null) {
+            message.setAcknowledgeCallback(new JmsAcknowledgeCallback(consumer, null));
+        } else {
+            //消息已过期，从备份队列中移除
+            context.client().getList(getDestinationBackupKey(destination, context.getClientID()), ByteArrayCodec.INSTANCE).removeAsync(element);
+        }
+        return message;
+    }
+
+    private JmsMessage readMessage(Destination destination, String messageId) throws JMSException {
+        RedissonClient client = context.client();
+
+        Map<String, byte[]> props = client.<String, byte[]>getMap(getDestinationPropsKey(destination, messageId), context.codec()).readAllMap();
+        if (props.size() == 0) {
+            //消息有可能已过期
+            return null;
+        }
+
+        if (!props.containsKey(JMSX_BODY)) {
+            //兼容消息内容单独保存的旧格式
+            byte[] body = client.<byte[]>getBucket(getDestinationBodyKey(destination, messageId), ByteArrayCodec.INSTANCE).get();
+            if (body != null) {
+                props.put(JMSX_BODY, body);
+            }
+        }
+
+        JmsMessage message = decode(messageId, props);
+        loadChunks(destination, message, props);
+        return message;
+    }
+
+    /**
+     * 读取优先级最高的消息列表元素，并移入备份队列
+     *
+     * @param destination 消息目标
+     * @return 消息列表元素，无消息时为 null
+     */
+    private byte[] pollPriority(Destination destination) {
+        List<Object> keys = getQueueListKeys(destination);
+        keys.add(getDestinationBackupKey(destination, context.getClientID()));
+        keys.add(getDestinationPriorityServedKey(destination));
+
+        return LuaScript.PRIORITY_POLL.eval(context.client(), RScript.ReturnType.VALUE, keys,
+                String.valueOf(System.currentTimeMillis()).getBytes(),
+                String.valueOf(context.config().getPriorityAging().toMillis()).getBytes(),
+                getDestinationPropsKey(destination, "").getBytes(), SKIP_LIMIT);
+    }
+
+    /**
+     * 读取消息列表元素，并移入备份队列。已过期的消息 ID 在服务端跳过
+     *
+     * @param destination 消息目标
+     * @return 消息列表元素，无消息时为 null
+     */
+    private byte[] poll(Destination destination) {
+        List<Object> keys = Arrays.asList(getMessageListKey(destination), getDestinationBackupKey(destination, context.getClientID()));
+
+        return LuaScript.POLL.eval(context.client(), RScript.ReturnType.VALUE, keys,
+                getDestinationPropsKey(destination, "").getBytes(), SKIP_LIMIT);
+    }
+
+    private JmsMessage receivePriority(JmsConsumerImpl consumer, long timeout) throws JMSException {
+        Destination destination = consumer.getDestination();
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        Signal signal = signals.get(consumer);
+
+        try {
+            do {
+                long version = signal != null ? signal.version() : 0;
+
+                byte[] element = pollPriority(destination);
+                if (element != null) {
+                    JmsMessage message = readMessage(consumer, element);
+                    if (message != null) {
+                        return message;
+                    }
+                    //消息已过期，继续读取
+                    continue;
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+
+                long wait = Math.min(remaining, SIGNAL_WAIT);
+                if (signal != null) {
+                    signal.await(version, wait);
+                } else {
+                    Thread.sleep(wait);
+                }
+            } while (true);
+        } catch (InterruptedException e) {
+            throw JMSExceptionSupport.create(String.format("Read message from '%s' fail case thread interrupted", getDestinationKey(destination)), e);
+        }
+    }
+
+    @Override
+    public JmsMessage receive(JmsConsumerImpl consumer, long timeout) throws JMSException {
+        JmsMessage unpackedMessage = nextUnpacked(consumer);
+        if (unpackedMessage != null) {
+            return unpackedMessage;
+        }
+
+        Destination destination = consumer.getDestination();
+        if (isPriority(destination)) {
+            return receivePriority(consumer, timeout);
+        }
+
+        String key = getMessageListKey(destination);
+        String backupKey = getDestinationBackupKey(destination, context.getClientID());
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+        try {
+            RBlockingDeque<byte[]> blockingDeque = context.client().getBlockingDeque(key, ByteArrayCodec.INSTANCE);
+            do {
+                long remaining = timeout > 0 ? deadline - System.currentTimeMillis() : 0;
+                if (timeout > 0 && remaining <= 0) {
+                    return null;
+                }
+
+                byte[] element = blockingDeque.pollLastAndOfferFirstTo(backupKey, remaining, TimeUnit.MILLISECONDS);
+                if (element == null) {
+                    return null;
+                }
+
+                JmsMessage message = readMessage(consumer, element);
+                if (message != null) {
+                    return message;
+                }
+
+                //消息已过期，由脚本跳过后续已过期的消息，避免逐条读取
+                message = readMessage(consumer, poll(destination));
+                if (message != null) {
+                    return message;
+                }
+            } while (true);
+        } catch (RedisTimeoutException e) {
+            //BLOCK 操作超时会触发该异常
+            return null;
+        } catch (InterruptedException e) {
+            throw JMSExceptionSupport.create(String.format("Read message from '%s' fail case thread interrupted", key), e);
+        }
+    }
+
+    @Override
+    public JmsMessage receiveNoWait(JmsConsumerImpl consumer) throws JMSException {
+        JmsMessage unpackedMessage = nextUnpacked(consumer);
+        if (unpackedMessage != null) {
+            return unpackedMessage;
+        }
+
+        Destination destination = consumer.getDestination();
+        boolean priority = isPriority(destination);
+
+        byte[] element;
+        while ((element = priority ? pollPriority(destination) : poll(destination)) != null) {
+            JmsMessage message = readMessage(consumer, element);
+            if (message != null) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void acknowledge(JmsConsumerImpl consumer, JmsMessage message, Object receipt) throws JMSException {
+        RedissonClient client = context.client();
+
+        if (receipt instanceof Envelope) {
+            Envelope envelope = (Envelope) receipt;
+            if (envelope.acknowledge(message.getJMSMessageID()) && envelopes.remove(envelope.getId(), envelope)) {
+                release(consumer, envelope);
+                return;
+            }
+
+            //信封重新投递时据此跳过已确认的消息
+            RBatch batch = client.createBatch(BatchOptions.defaults());
+            RSetAsync<String> acked = batch.getSet(getEnvelopeAckedKey(consumer.getDestination(), envelope.getId()), StringCodec.INSTANCE);
+            acked.addAsync(message.getJMSMessageID());
+            acked.expireAsync(context.config().getConsumerExpire().toMillis(), TimeUnit.MILLISECONDS);
+            batch.execute();
+            return;
+        }
+
+        if (receipt instanceof byte[]) {
+            //内联消息仅存在于备份队列中
+            String backupKey = getDestinationBackupKey(consumer.getDestination(), context.getClientID());
+            client.getList(backupKey, ByteArrayCodec.INSTANCE).remove(receipt);
+            return;
+        }
+
+        Destination destination = message.getJMSDestination();
+        String messageId = message.getJMSMessageID();
+
+        RBatch batch = client.createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.REDIS_WRITE_ATOMIC));
+        if (destination instanceof Topic) {
+            String itemConsumersKey = getTopicItemConsumersKey(destination, messageId);
+            RSet<String> consumerSets = client.getSet(itemConsumersKey, StringCodec.INSTANCE);
+
+            consumerSets.remove(context.getClientID());
+            if (consumerSets.size() > 0) {
+                //仍有订阅者未消费该消息
+                return;
+            }
+
+            batch.getKeys().deleteAsync(itemConsumersKey);
+        }
+
+        //同时删除旧格式中单独保存的消息内容
+        batch.getKeys().deleteAsync(getDestinationPropsKey(destination, messageId), getDestinationBodyKey(destination, messageId));
+        batch.execute();
+
+        int chunks = message instanceof ChunkedMessage ? ((ChunkedMessage) message).getBodyChunks() : 0;
+        if (chunks > 0) {
+            //分块在事务外逐个删除，避免一次释放过多内存阻塞 Redis
+            RBatch chunkBatch = client.createBatch(BatchOptions.defaults());
+            for (int i = 0; i < chunks; i++) {
+                chunkBatch.getKeys().deleteAsync(getDestinationChunkKey(destination, messageId, i));
+            }
+            chunkBatch.execute();
+        }
+    }
+
+    @Override
+    public List<JmsMessage> browse(Queue queue) throws JMSException {
+        List<Object> keys = isPriority(queue) ? getQueueListKeys(queue) : Collections.singletonList(getDestinationKey(queue));
+
+        List<JmsMessage> messages = new ArrayList<>();
+        for (Object key : keys) {
+            browse(queue, (String) key, messages);
+        }
+        return messages;
+    }
+
+    private void browse(Queue queue, String key, List<JmsMessage> messages) throws JMSException {
+        List<byte[]> elements = context.client().<byte[]>getList(key, ByteArrayCodec.INSTANCE).readAll();
+
+        //消息自队尾出列，按出列顺序返回
+        for (int i = elements.size() - 1; i >= 0; i--) {
+            byte[] element = elements.get(i);
+            if (Envelope.isEnvelope(element)) {
+                List<JmsMessage> packed = Envelope.unpack(element);
+                messages.addAll(unpack(queue, packed.get(0).getJMSMessageID(), packed));
+                continue;
+            }
+
+            JmsMessage message = isInline(element) ? fromInline(element) : readMessage(queue, new String(element));
+            if (message != null) {
+                messages.add(message);
+            }
+        }
+    }
+
+    /**
+     * 将到期的延迟消息移入消息列表
+     *
+     * @param destination 消息目标
+     */
+    private void moveDue(Destination destination) {
+        List<Object> keys;
+        Object[] args;
+        if (destination instanceof Topic) {
+            byte[][] range = heartbeatRange();
+            keys = Arrays.asList(getDestinationDelayedKey(destination), getTopicConsumersKey(destination));
+            args = new Object[]{getTopicConsumerListKey(destination, "").getBytes(), range[0], range[1]};
+        } else {
+            keys = new ArrayList<>(12);
+            keys.add(getDestinationDelayedKey(destination));
+            keys.add(getDestinationKey(destination));
+            if (isPriority(destination)) {
+                for (int priority = 0; priority <= 9; priority++) {
+                    keys.add(getQueueListKey(destination, priority));
+                }
+            }
+            args = new Object[]{new byte[0], new byte[0], new byte[0]};
+        }
+        byte[] propsPrefix = getDestinationPropsKey(destination, "").getBytes();
+
+        long moved;
+        do {
+            moved = LuaScript.DELAY_MOVE.eval(context.client(), RScript.ReturnType.INTEGER, keys,
+                    String.valueOf(System.currentTimeMillis()).getBytes(), String.valueOf(MOVE_LIMIT).getBytes(),
+                    args[0], args[1], args[2], propsPrefix);
+
+            if (moved > 0 && isPriority(destination)) {
+                context.client().getTopic(getDestinationNotifyKey(destination), StringCodec.INSTANCE).publish("");
+            }
+        } while (moved >= MOVE_LIMIT);
+    }
+
+    /**
+     * 清除已过期的延迟消息，并删除各消息列表读取端窗口内已过期的消息 ID。窗口之外的过期消息 ID 由读取脚本跳过
+     *
+     * @param destination 消息目标
+     */
+    private void sweepExpired(Destination destination) {
+        List<Object> keys = new ArrayList<>();
+        keys.add(getDestinationExpiryKey(destination));
+        keys.add(getDestinationDelayedKey(destination));
+
+        byte[] prefix;
+        if (destination instanceof Topic) {
+            keys.add(getTopicConsumersKey(destination));
+            prefix = getTopicConsumerListKey(destination, "").getBytes();
+        } else {
+            keys.addAll(isPriority(destination) ? getQueueListKeys(destination) : Collections.singletonList(getDestinationKey(destination)));
+            prefix = new byte[0];
+        }
+
+        byte[] propsPrefix = getDestinationPropsKey(destination, "").getBytes();
+
+        long swept;
+        do {
+            swept = LuaScript.EXPIRE_SWEEP.eval(context.client(), RScript.ReturnType.INTEGER, keys,
+                    String.valueOf(System.currentTimeMillis()).getBytes(), String.valueOf(SWEEP_LIMIT).getBytes(), prefix,
+                    propsPrefix, SWEEP_WINDOW);
+        } while (swept >= SWEEP_LIMIT);
+    }
+
+    private ScheduledFuture<?> schedule(Destination destination, Duration interval, Consumer<Destination> task, String name) {
+        if (interval.isZero()) {
+            return null;
+        }
+
+        return context.scheduledPool().scheduleWithFixedDelay(() -> {
+            try {
+                task.accept(destination);
+            } catch (RuntimeException e) {
+                //避免异常中断定时任务
+                LOGGER.log(Level.WARNING, String.format("%s of '%s' fail", name, destination), e);
+            }
+        }, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void register(JmsConsumerImpl consumer) {
+        Destination destination = consumer.getDestination();
+        maintenances.compute(destination, (key, maintenance) -> {
+            if (maintenance == null) {
+                JmsConfig config = context.config();
+                maintenance = new Maintenance(
+                        schedule(destination, config.getDelayInterval(), this::moveDue, "Move delayed messages"),
+                        schedule(destination, config.getExpireInterval(), this::sweepExpired, "Sweep expired messages")
+                );
+            }
+            maintenance.consumers++;
+            return maintenance;
+        });
+
+        //订阅者通过心跳注册，优先级队列的消费者需订阅新消息通知
+        if (isPriority(consumer.getDestination())) {
+            Signal signal = new Signal();
+            RTopic notify = context.client().getTopic(getDestinationNotifyKey(consumer.getDestination()), StringCodec.INSTANCE);
+            signal.listenerId = notify.addListener(String.class, (channel, msg) -> signal.signal());
+
+            signals.put(consumer, signal);
+        }
+    }
+
+    @Override
+    public void unregister(JmsConsumerImpl consumer) {
+        super.unregister(consumer);
+
+        maintenances.computeIfPresent(consumer.getDestination(), (key, maintenance) -> {
+            if (--maintenance.consumers > 0) {
+                return maintenance;
+            }
+            maintenance.cancel();
+            return null;
+        });
+
+        Signal signal = signals.remove(consumer);
+        if (signal != null) {
+            context.client().getTopic(getDestinationNotifyKey(consumer.getDestination()), StringCodec.INSTANCE).removeListener(signal.listenerId);
+        }
+
+        //未投递的消息留在备份队列中，由后续的消费者重新投递
+        ConcurrentLinkedQueue<Envelope> queue = unpacked.remove(consumer);
+        if (queue != null) {
+            queue.forEach(envelope -> envelopes.remove(envelope.getId(), envelope));
+        }
+    }
+
+    /**
+     * 清理 Redis 中的已消费消息备份队列，消费超时的消息重新入列
+     */
+    @Override
+    public void recover(JmsConsumerImpl consumer) {
+        RedissonClient client = context.client();
+        Destination destination = consumer.getDestination();
+        String backupKey = getDestinationBackupKey(destination, context.getClientID());
+        boolean priorityQueue = isPriority(destination);
+        boolean requeued = false;
+        do {
+            @SuppressWarnings("ConstantConditions")
+            byte[] element = client.<byte[]>getList(backupKey, ByteArrayCodec.INSTANCE).get(-1);
+            if (element == null) {
+                //备份队列为空，结束处理
+                break;
+            }
+
+            boolean inline = isInline(element);
+            boolean envelope = Envelope.isEnvelope(element);
+            String messageId;
+            int priority = Message.DEFAULT_PRIORITY;
+            try {
+                if (envelope) {
+                    messageId = Envelope.idOf(element);
+                    if (priorityQueue) {
+                        //信封中的消息优先级相同
+                        priority = Envelope.unpack(element).get(0).getJMSPriority();
+                    }
+                } else if (inline) {
+                    JmsMessage message = fromInline(element);
+                    messageId = message.getJMSMessageID();
+                    priority = message.getJMSPriority();
+                } else {
+                    messageId = new String(element);
+                }
+            } catch (JMSException e) {
+                throw JMSExceptionSupport.wrap(e);
+            }
+
+            boolean consuming = envelope ? isConsuming(consumer, messageId) : consumer.isConsuming(messageId);
+            if (consuming) {
+                //备份队列队尾元素正在消费中，可以认为备份队列中无历史记录。
+                break;
+            }
+
+            boolean remoteExist = false;
+            RSet<Object> consumerKeys = client.getSet(getTopicItemConsumersKey(destination, messageId), StringCodec.INSTANCE);
+
+            if (envelope) {
+                //信封中的消息均确认后即从备份队列移除，重新投递时跳过已确认的消息
+                envelopes.remove(messageId);
+                remoteExist = true;
+            } else if (inline) {
+                //内联消息确认时即从备份队列移除，仍在备份队列中即为未确认
+                remoteExist = true;
+            } else if (destination instanceof Topic) {
+                remoteExist = consumerKeys.contains(context.getClientID());
+            } else if (destination instanceof Queue) {
+                String propsKey = getDestinationPropsKey(destination, messageId);
+                remoteExist = client.getKeys().countExists(propsKey) > 0;
+                if (remoteExist && priorityQueue) {
+                    String value = client.<String, String>getMap(propsKey, StringCodec.INSTANCE).get(JMS_PRIORITY);
+                    priority = value != null ? Integer.parseInt(value) : priority;
+                }
+            }
+
+            RDeque<Object> backupDeque = client.getDeque(backupKey, StringCodec.INSTANCE);
+            if (remoteExist) {
+                //消息未正常消费，按原优先级重新入列
+                String listKey = destination instanceof Queue ? getQueueListKey(destination, priority) : getMessageListKey(destination);
+                backupDeque.pollLastAndOfferFirstTo(listKey);
+                requeued = true;
+            } else {
+                backupDeque.pollLast();
+            }
+        } while (true);
+
+        if (requeued && isPriority(destination)) {
+            client.getTopic(getDestinationNotifyKey(destination), StringCodec.INSTANCE).publish("");
+        }
+    }
+
+    private boolean isConsuming(JmsConsumerImpl consumer, String envelopeId) {
+        Envelope envelope = envelopes.get(envelopeId);
+        return envelope != null && envelope.isConsuming(consumer);
+    }
+
+    /**
+     * 消息目标的定时维护任务
+     */
+    private static class Maintenance {
+
+        private final ScheduledFuture<?> mover;
+        private final ScheduledFuture<?> sweeper;
+        private int consumers;
+
+        Maintenance(ScheduledFuture<?> mover, ScheduledFuture<?> sweeper) {
+            this.mover = mover;
+            this.sweeper = sweeper;
+        }
+
+        void cancel() {
+            Stream.of(mover, sweeper).filter(Objects::nonNull).forEach(task -> task.cancel(false));
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package com.ltsoft.jms.engine;
+
+/**
+ * 新消息通知，消费者读取不到消息时据此等待
+ */
+class Signal {
+
+    int listenerId;
+    private long version;
+
+    synchronized long version() {
+        return version;
+    }
+
+    synchronized void signal() {
+        version++;
+        notifyAll();
+    }
+
+    synchronized void await(long since, long timeout) throws InterruptedException {
+        if (version == since) {
+            wait(timeout);
+        }
+    }
+}
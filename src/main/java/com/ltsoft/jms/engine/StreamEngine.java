@@ -0,0 +1,403 @@
+package com.ltsoft.jms.engine;
+
+import com.ltsoft.jms.JmsConsumerImpl;
+import com.ltsoft.jms.JmsContextImpl;
+import com.ltsoft.jms.message.JmsMessage;
+import com.ltsoft.jms.util.LuaScript;
+import org.redisson.api.BatchOptions;
+import org.redisson.api.PendingEntry;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
+import org.redisson.api.RStream;
+import org.redisson.api.RStreamAsync;
+import org.redisson.api.StreamGroup;
+import org.redisson.api.StreamMessageId;
+import org.redisson.client.RedisException;
+import org.redisson.client.RedisTimeoutException;
+import org.redisson.client.codec.ByteArrayCodec;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Queue;
+import javax.jms.Topic;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.ltsoft.jms.message.JmsMessageHelper.*;
+import static com.ltsoft.jms.util.KeyHelper.getDestinationStreamKey;
+import static com.ltsoft.jms.util.KeyHelper.getTopicConsumersKey;
+
+/**
+ * 基于 Redis Streams 的存储引擎。
+ * <p>
+ * 消息属性及内容直接保存在消息流中，发送与读取均只需一条指令。Queue 的所有消费者共享一个消费组，
+ * Topic 的每个订阅者拥有独立的消费组。已投递未确认的消息由消费组的待确认列表记录，
+ * 消费超时的消息通过 XCLAIM 转移给当前消费者重新投递。
+ * <p>
+ * 消息写入后立即投递，不支持延迟投递。消息流中的消息不会自动过期，消费者读取到已过期的消息时直接确认并丢弃，Queue 中尚未投递的过期消息由恢复任务删除。
+ */
+public class StreamEngine extends AbstractEngine {
+
+    //Queue 所有消费者共享的消费组
+    private static final String QUEUE_GROUP = "JMS_QUEUE";
+
+    //单次最多检查的待确认消息数
+    private static final int RECOVER_LIMIT = 1000;
+
+    //单次最多删除的消息数
+    private static final byte[] TRIM_LIMIT = "1000".getBytes();
+
+    //单次阻塞读取的最长时间，超时后检查是否有待重新投递的消息
+    private static final long BLOCK_WAIT = Duration.ofSeconds(1).toMillis();
+
+    //已转移至消费者、等待重新投递的消息
+    private final Map<JmsConsumerImpl, Map<StreamMessageId, Map<byte[], byte[]>>> redelivery = new ConcurrentHashMap<>();
+
+    public StreamEngine(JmsContextImpl context) {
+        super(context);
+    }
+
+    private static boolean isError(RedisException e, String code) {
+        return e.getMessage() != null && e.getMessage().contains(code);
+    }
+
+    private RStream<byte[], byte[]> stream(Destination destination) {
+        return context.client().getStream(getDestinationStreamKey(destination), ByteArrayCodec.INSTANCE);
+    }
+
+    private String groupName(Destination destination) {
+        return destination instanceof Topic ? context.getClientID() : QUEUE_GROUP;
+    }
+
+    /**
+     * 创建消费组。Queue 的消费组从头消费，Topic 的消费组从最新消息之后开始消费。
+     *
+     * @param destination 消息目标
+     */
+    private void ensureGroup(Destination destination) {
+        try {
+            StreamMessageId offset = destination instanceof Topic ? StreamMessageId.NEWEST : StreamMessageId.ALL;
+            stream(destination).createGroup(groupName(destination), offset);
+        } catch (RedisException e) {
+            //消费组已存在
+            if (!isError(e, "BUSYGROUP")) {
+                throw e;
+            }
+        }
+    }
+
+    private Map<byte[], byte[]> toFields(JmsMessage message) throws JMSException {
+        Map<String, byte[]> props = toMap(message);
+        byte[] body = encodeBody(message, props);
+
+        Map<byte[], byte[]> fields = new LinkedHashMap<>();
+        fields.put(JMS_MESSAGE_ID.getBytes(), message.getJMSMessageID().getBytes());
+        if (message.getJMSExpiration() > 0) {
+            //过期时间另以字符串保存，供脚本删除尚未投递的过期消息
+            fields.put(JMS_EXPIRATION.getBytes(), String.valueOf(message.getJMSExpiration()).getBytes());
+        }
+        if (body != null) {
+            fields.put(JMSX_BODY.getBytes(), body);
+        }
+        props.forEach((key, value) -> fields.put(key.getBytes(), value));
+
+        return fields;
+    }
+
+    private List<Object> appendKeys(Destination destination) {
+        return Arrays.asList(getDestinationStreamKey(destination), getTopicConsumersKey(destination));
+    }
+
+    private Object[] appendArgs(JmsMessage message, long timeToLive) throws JMSException {
+        byte[][] range = heartbeatRange();
+        return messageArgs(message, timeToLive, range[0], range[1]);
+    }
+
+    @Override
+    public RFuture<?> send(RBatch batch, Destination destination, JmsMessage message, long timeToLive) throws JMSException {
+        rejectDelayed(destination, message);
+
+        if (destination instanceof Topic) {
+            return LuaScript.STREAM_APPEND.evalAsync(batch, RScript.ReturnType.VALUE,
+                    appendKeys(destination), appendArgs(message, timeToLive));
+        } else if (destination instanceof Queue) {
+            return batch.<byte[], byte[]>getStream(getDestinationStreamKey(destination), ByteArrayCodec.INSTANCE).addAllAsync(toFields(message));
+        }
+        throw new JMSException("不支持的目的类型");
+    }
+
+    @Override
+    public CompletionStage<?> send(Destination destination, JmsMessage message, long timeToLive) throws JMSException {
+        rejectDelayed(destination, message);
+
+        if (destination instanceof Topic) {
+            //无有效订阅者时不写入消息
+            return LuaScript.STREAM_APPEND.evalAsync(context.client(), RScript.ReturnType.VALUE,
+                    appendKeys(destination), appendArgs(message, timeToLive));
+        } else if (destination instanceof Queue) {
+            return stream(destination).addAllAsync(toFields(message));
+        }
+        throw new JMSException("不支持的目的类型");
+    }
+
+    /**
+     * 将消息流中的消息还原为 JMS 消息，已过期的消息将被确认并丢弃
+     *
+     * @param consumer    消息消费者
+     * @param id          消息流中的消息 ID
+     * @param fields      消息属性及内容
+     * @param redelivered 是否为重新投递
+     * @return JMS 消息，消息已过期时为 null
+     */
+    private JmsMessage toMessage(JmsConsumerImpl consumer, StreamMessageId id, Map<byte[], byte[]> fields, boolean redelivered) throws JMSException {
+        Map<String, byte[]> props = toStringKey(fields);
+        String messageId = new String(props.get(JMS_MESSAGE_ID));
+
+        //流中的 ID 作为回执，确认时据此执行 XACK
+        JmsMessage message = createMessage(consumer, messageId, props, id);
+        if (message.getJMSExpiration() > 0 && message.getJMSExpiration() < System.currentTimeMillis()) {
+            acknowledge(consumer, message, id);
+            return null;
+        }
+
+        message.setJMSRedelivered(redelivered);
+        return message;
+    }
+
+    /**
+     * 读取等待重新投递的消息
+     *
+     * @param consumer 消息消费者
+     * @return JMS 消息，无消息时为 null
+     */
+    private JmsMessage pollRedelivery(JmsConsumerImpl consumer) throws JMSException {
+        Map<StreamMessageId, Map<byte[], byte[]>> entries = redelivery.get(consumer);
+        while (entries != null) {
+            Map.Entry<StreamMessageId, Map<byte[], byte[]>> entry;
+            synchronized (entries) {
+                Iterator<Map.Entry<StreamMessageId, Map<byte[], byte[]>>> iterator = entries.entrySet().iterator();
+                if (!iterator.hasNext()) {
+                    return null;
+                }
+                entry = iterator.next();
+                iterator.remove();
+            }
+
+            JmsMessage message = toMessage(consumer, entry.getKey(), entry.getValue(), true);
+            if (message != null) {
+                return message;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 读取消费组中尚未投递的消息
+     *
+     * @param consumer 消息消费者
+     * @param timeout  阻塞毫秒数，0 表示一直等待，小于 0 表示不等待
+     * @return 消息流中的消息
+     */
+    private Map<StreamMessageId, Map<byte[], byte[]>> readGroup(JmsConsumerImpl consumer, long timeout) {
+        Destination destination = consumer.getDestination();
+        RStream<byte[], byte[]> stream = stream(destination);
+        String group = groupName(destination);
+
+        try {
+            if (timeout < 0) {
+                return stream.readGroup(group, context.getClientID(), 1, StreamMessageId.NEVER_DELIVERED);
+            }
+            return stream.readGroup(group, context.getClientID(), 1, timeout, TimeUnit.MILLISECONDS, StreamMessageId.NEVER_DELIVERED);
+        } catch (RedisException e) {
+            if (!isError(e, "NOGROUP")) {
+                throw e;
+            }
+            //消费者尚未注册，创建消费组后重试
+            ensureGroup(destination);
+            return readGroup(consumer, timeout);
+        }
+    }
+
+    private JmsMessage read(JmsConsumerImpl consumer, long timeout) throws JMSException {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+
+        do {
+            JmsMessage message = pollRedelivery(consumer);
+            if (message != null) {
+                return message;
+            }
+
+            long wait = timeout;
+            if (timeout >= 0) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                wait = Math.min(remaining, BLOCK_WAIT);
+            }
+
+            Map<StreamMessageId, Map<byte[], byte[]>> entries = readGroup(consumer, wait);
+            if (entries == null || entries.isEmpty()) {
+                if (timeout < 0) {
+                    return null;
+                }
+                continue;
+            }
+
+            Map.Entry<StreamMessageId, Map<byte[], byte[]>> entry = entries.entrySet().iterator().next();
+            message = toMessage(consumer, entry.getKey(), entry.getValue(), false);
+            if (message != null) {
+                return message;
+            }
+        } while (true);
+    }
+
+    @Override
+    public JmsMessage receive(JmsConsumerImpl consumer, long timeout) throws JMSException {
+        try {
+            return read(consumer, timeout);
+        } catch (RedisTimeoutException e) {
+            //BLOCK 操作超时会触发该异常
+            return null;
+        }
+    }
+
+    @Override
+    public JmsMessage receiveNoWait(JmsConsumerImpl consumer) throws JMSException {
+        return read(consumer, -1);
+    }
+
+    @Override
+    public void acknowledge(JmsConsumerImpl consumer, JmsMessage message, Object receipt) throws JMSException {
+        if (receipt == null) {
+            return;
+        }
+
+        Destination destination = message.getJMSDestination();
+        StreamMessageId id = (StreamMessageId) receipt;
+
+        RBatch batch = context.client().createBatch(BatchOptions.defaults().executionMode(BatchOptions.ExecutionMode.REDIS_WRITE_ATOMIC));
+        RStreamAsync<byte[], byte[]> stream = batch.<byte[], byte[]>getStream(getDestinationStreamKey(destination), ByteArrayCodec.INSTANCE);
+        stream.ackAsync(groupName(destination), id);
+        if (destination instanceof Queue) {
+            //Queue 的消息仅消费一次，确认后即可删除
+            stream.removeAsync(id);
+        }
+        batch.execute();
+    }
+
+    @Override
+    public void register(JmsConsumerImpl consumer) {
+        redelivery.put(consumer, Collections.synchronizedMap(new LinkedHashMap<>()));
+    }
+
+    @Override
+    public void ping(JmsConsumerImpl consumer) {
+        //订阅者因心跳超时被清理后，将从最新消息之后重新开始消费
+        ensureGroup(consumer.getDestination());
+
+        super.ping(consumer);
+    }
+
+    @Override
+    public void unregister(JmsConsumerImpl consumer) {
+        super.unregister(consumer);
+
+        redelivery.remove(consumer);
+    }
+
+    /**
+     * 消费超时的消息转移给当前消费者重新投递，并删除 Topic 中所有订阅者均已确认的消息
+     */
+    @Override
+    public void recover(JmsConsumerImpl consumer) {
+        Destination destination = consumer.getDestination();
+        RStream<byte[], byte[]> stream = stream(destination);
+        String group = groupName(destination);
+        long timeout = context.config().getConsumingTimeout().toMillis();
+
+        Map<StreamMessageId, Map<byte[], byte[]>> entries = redelivery.get(consumer);
+        if (entries != null) {
+            try {
+                List<StreamMessageId> ids = stream.listPending(group, StreamMessageId.MIN, StreamMessageId.MAX, RECOVER_LIMIT).stream()
+                        .filter(entry -> entry.getIdleTime() >= timeout && !entries.containsKey(entry.getId()))
+                        .map(PendingEntry::getId)
+                        .collect(Collectors.toList());
+
+                if (!ids.isEmpty()) {
+                    //XCLAIM 仅转移空闲时间仍超过消费超时时间的消息，避免与其他消费者重复转移
+                    entries.putAll(stream.claim(group, context.getClientID(), timeout, TimeUnit.MILLISECONDS, ids.toArray(new StreamMessageId[0])));
+                }
+            } catch (RedisException e) {
+                //消费组尚未创建时无待确认消息
+                if (!isError(e, "NOGROUP")) {
+                    throw e;
+                }
+            }
+        }
+
+        if (destination instanceof Topic) {
+            byte[][] range = heartbeatRange();
+            LuaScript.STREAM_TRIM.eval(context.client(), RScript.ReturnType.INTEGER,
+                    appendKeys(destination), range[0], range[1], TRIM_LIMIT);
+        } else if (destination instanceof Queue) {
+            //尚未投递的过期消息不会被读取，由此删除
+            LuaScript.STREAM_EXPIRE.eval(context.client(), RScript.ReturnType.INTEGER,
+                    Collections.singletonList(getDestinationStreamKey(destination)),
+                    QUEUE_GROUP.getBytes(), String.valueOf(System.currentTimeMillis()).getBytes(), TRIM_LIMIT);
+        }
+    }
+
+    /**
+     * 消费组最后投递的消息 ID，之前的消息均已投递或已确认删除
+     *
+     * @param queue 消息目标
+     * @return 消息 ID，消费组尚未创建时为 {@link StreamMessageId#MIN}
+     */
+    private StreamMessageId lastDelivered(Queue queue) {
+        try {
+            for (StreamGroup group : stream(queue).listGroups()) {
+                if (QUEUE_GROUP.equals(group.getName())) {
+                    return group.getLastDeliveredId();
+                }
+            }
+        } catch (RedisException e) {
+            //消息流尚未创建
+            if (!isError(e, "no such key")) {
+                throw e;
+            }
+        }
+        return StreamMessageId.MIN;
+    }
+
+    /**
+     * 仅返回尚未投递的消息，已投递待确认的消息不在浏览结果中
+     */
+    @Override
+    public List<JmsMessage> browse(Queue queue) throws JMSException {
+        StreamMessageId start = lastDelivered(queue);
+        Map<StreamMessageId, Map<byte[], byte[]>> entries = stream(queue).range(start, StreamMessageId.MAX);
+        entries.remove(start);
+
+        List<JmsMessage> messages = new ArrayList<>(entries.size());
+        for (Map<byte[], byte[]> fields : entries.values()) {
+            Map<String, byte[]> props = toStringKey(fields);
+            JmsMessage message = decode(new String(props.get(JMS_MESSAGE_ID)), props);
+            if (message.getJMSExpiration() == 0 || message.getJMSExpiration() >= System.currentTimeMillis()) {
+                messages.add(message);
+            }
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,230 @@
+package com.ltsoft.jms.engine;
+
+import com.ltsoft.jms.JmsConsumerImpl;
+import com.ltsoft.jms.JmsContextImpl;
+import com.ltsoft.jms.exception.JMSExceptionSupport;
+import com.ltsoft.jms.message.JmsMessage;
+import com.ltsoft.jms.util.LuaScript;
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
+import org.redisson.api.RTopic;
+import org.redisson.client.codec.StringCodec;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.Topic;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.ltsoft.jms.util.KeyHelper.*;
+
+/**
+ * 基于共享消息日志的 Topic 存储引擎。
+ * <p>
+ * 每个 Topic 的消息只写入一份，消息 ID 按序号追加至消息日志。每个订阅者维护投递游标与确认游标，
+ * 读取消息时推进投递游标，确认消息时推进确认游标；所有订阅者的确认游标均越过的消息将被定时回收。
+ * <p>
+ * 确认游标只会前进，因此确认某条消息即表示确认了该订阅者此前收到的所有消息。
+ * <p>
+ * 消息写入后立即投递，不支持延迟投递。
+ */
+public class TopicLogEngine extends AbstractEngine {
+
+    //单次读取时最多检查的日志条数，已过期的消息会被跳过
+    private static final byte[] POLL_LIMIT = "100".getBytes();
+
+    //单次最多回收的消息数
+    private static final byte[] RECLAIM_LIMIT = "1000".getBytes();
+
+    //未收到新消息通知时的最长等待时间，避免通知丢失导致读取停滞
+    private static final long SIGNAL_WAIT = Duration.ofSeconds(1).toMillis();
+
+    private final Map<JmsConsumerImpl, Signal> signals = new ConcurrentHashMap<>();
+
+    public TopicLogEngine(JmsContextImpl context) {
+        super(context);
+    }
+
+    private static Topic asTopic(Destination destination) throws JMSException {
+        if (destination instanceof Topic) {
+            return (Topic) destination;
+        }
+        throw new JMSException("不支持的目的类型");
+    }
+
+    private List<Object> appendKeys(Topic topic, String messageId) {
+        return Arrays.asList(
+                getDestinationPropsKey(topic, messageId),
+                getTopicLogKey(topic),
+                getTopicLogSeqKey(topic),
+                getTopicLogCursorKey(topic)
+        );
+    }
+
+    private Object[] appendArgs(Topic topic, JmsMessage message, long timeToLive) throws JMSException {
+        return messageArgs(message, timeToLive, getTopicLogNotifyKey(topic).getBytes());
+    }
+
+    @Override
+    public RFuture<?> send(RBatch batch, Destination destination, JmsMessage message, long timeToLive) throws JMSException {
+        Topic topic = asTopic(destination);
+        rejectDelayed(destination, message);
+        return LuaScript.LOG_APPEND.evalAsync(batch, RScript.ReturnType.INTEGER,
+                appendKeys(topic, message.getJMSMessageID()), appendArgs(topic, message, timeToLive));
+    }
+
+    @Override
+    public CompletionStage<?> send(Destination destination, JmsMessage message, long timeToLive) throws JMSException {
+        Topic topic = asTopic(destination);
+        rejectDelayed(destination, message);
+        return LuaScript.LOG_APPEND.evalAsync(context.client(), RScript.ReturnType.INTEGER,
+                appendKeys(topic, message.getJMSMessageID()), appendArgs(topic, message, timeToLive));
+    }
+
+    /**
+     * 读取投递游标之后的下一条消息
+     *
+     * @param consumer 消息消费者
+     * @return JMS 消息，无新消息时为 null
+     */
+    private JmsMessage poll(JmsConsumerImpl consumer) throws JMSException {
+        Destination destination = consumer.getDestination();
+
+        List<Object> result = LuaScript.LOG_POLL.eval(context.client(), RScript.ReturnType.MULTI,
+                Arrays.asList(getTopicLogKey(destination), getTopicLogCursorKey(destination)),
+                context.getClientID().getBytes(), getDestinationPropsKey(destination, "").getBytes(), POLL_LIMIT);
+
+        if (result == null || result.isEmpty()) {
+            return null;
+        }
+
+        String messageId = new String((byte[]) result.get(0));
+        String seq = new String((byte[]) result.get(1));
+
+        Map<String, byte[]> props = new HashMap<>();
+        for (int i = 2; i + 1 < result.size(); i += 2) {
+            props.put(new String((byte[]) result.get(i)), (byte[]) result.get(i + 1));
+        }
+
+        //日志序号作为回执，确认时据此推进确认游标
+        return createMessage(consumer, messageId, props, seq);
+    }
+
+    @Override
+    public JmsMessage receive(JmsConsumerImpl consumer, long timeout) throws JMSException {
+        long deadline = timeout > 0 ? System.currentTimeMillis() + timeout : Long.MAX_VALUE;
+        Signal signal = signals.get(consumer);
+
+        try {
+            do {
+                long version = signal != null ? signal.version() : 0;
+
+                JmsMessage message = poll(consumer);
+                if (message != null) {
+                    return message;
+                }
+
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+
+                long wait = Math.min(remaining, SIGNAL_WAIT);
+                if (signal != null) {
+                    signal.await(version, wait);
+                } else {
+                    Thread.sleep(wait);
+                }
+            } while (true);
+        } catch (InterruptedException e) {
+            throw JMSExceptionSupport.create(String.format("Read message from '%s' fail case thread interrupted", getTopicLogKey(consumer.getDestination())), e);
+        }
+    }
+
+    @Override
+    public JmsMessage receiveNoWait(JmsConsumerImpl consumer) throws JMSException {
+        return poll(consumer);
+    }
+
+    @Override
+    public void acknowledge(JmsConsumerImpl consumer, JmsMessage message, Object receipt) throws JMSException {
+        if (receipt == null) {
+            return;
+        }
+
+        LuaScript.LOG_ACK.eval(context.client(), RScript.ReturnType.INTEGER,
+                Collections.singletonList(getTopicLogAckedKey(message.getJMSDestination())),
+                context.getClientID().getBytes(), receipt.toString().getBytes());
+    }
+
+    @Override
+    public void register(JmsConsumerImpl consumer) {
+        Signal signal = new Signal();
+        RTopic notify = context.client().getTopic(getTopicLogNotifyKey(consumer.getDestination()), StringCodec.INSTANCE);
+        signal.listenerId = notify.addListener(String.class, (channel, seq) -> signal.signal());
+
+        signals.put(consumer, signal);
+    }
+
+    @Override
+    public void ping(JmsConsumerImpl consumer) {
+        //游标已存在时不会被重置，心跳超时的订阅者恢复后从确认游标处继续消费
+        Destination destination = consumer.getDestination();
+        LuaScript.LOG_REGISTER.eval(context.client(), RScript.ReturnType.VALUE,
+                Arrays.asList(getTopicLogCursorKey(destination), getTopicLogAckedKey(destination), getTopicLogSeqKey(destination), getTopicLogSeenKey(destination)),
+                context.getClientID().getBytes(), String.valueOf(Instant.now().getEpochSecond()).getBytes());
+
+        super.ping(consumer);
+    }
+
+    @Override
+    public void unregister(JmsConsumerImpl consumer) {
+        super.unregister(consumer);
+
+        Signal signal = signals.remove(consumer);
+        if (signal != null) {
+            context.client().getTopic(getTopicLogNotifyKey(consumer.getDestination()), StringCodec.INSTANCE).removeListener(signal.listenerId);
+        }
+    }
+
+    /**
+     * 删除订阅者的游标，订阅者未确认的消息随后被回收
+     */
+    @Override
+    public void unsubscribe(JmsConsumerImpl consumer) {
+        Destination destination = consumer.getDestination();
+        LuaScript.LOG_UNSUBSCRIBE.eval(context.client(), RScript.ReturnType.INTEGER,
+                Arrays.asList(getTopicLogCursorKey(destination), getTopicLogAckedKey(destination), getTopicLogSeenKey(destination)),
+                context.getClientID().getBytes());
+    }
+
+    /**
+     * 已投递但消费超时的消息通过回退投递游标重新投递，并回收所有订阅者均已确认的消息。
+     * 心跳超时的订阅者同样阻止回收，超过 {@link com.ltsoft.jms.JmsConfig#getSubscriptionRetention()} 未出现时才删除其游标
+     */
+    @Override
+    public void recover(JmsConsumerImpl consumer) {
+        Destination destination = consumer.getDestination();
+        String cursorKey = getTopicLogCursorKey(destination);
+        String ackedKey = getTopicLogAckedKey(destination);
+
+        if (!consumer.hasConsuming()) {
+            LuaScript.LOG_REWIND.eval(context.client(), RScript.ReturnType.INTEGER,
+                    Arrays.asList(cursorKey, ackedKey), context.getClientID().getBytes());
+        }
+
+        long now = Instant.now().getEpochSecond();
+        long retention = context.config().getSubscriptionRetention().getSeconds();
+        LuaScript.LOG_RECLAIM.eval(context.client(), RScript.ReturnType.INTEGER,
+                Arrays.asList(getTopicLogKey(destination), cursorKey, ackedKey, getTopicLogSeenKey(destination)),
+                String.valueOf(now).getBytes(), String.valueOf(now - retention).getBytes(), getDestinationPropsKey(destination, "").getBytes(), RECLAIM_LIMIT);
+    }
+}
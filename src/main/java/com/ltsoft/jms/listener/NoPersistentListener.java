@@ -15,6 +15,7 @@ import java.util.Objects;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import static com.ltsoft.jms.message.JmsMessageHelper.useSerializer;
 import static com.ltsoft.jms.util.KeyHelper.getDestinationKey;
 
 /**
@@ -42,18 +43,20 @@ public class NoPersistentListener implements MessageListener<byte[]>, Listener {
 
     @Override
     public void onMessage(CharSequence channel, byte[] msg) {
+        //在监听线程中解码，无法解码的消息记录日志后跳过，不影响后续消息的接收
         JmsMessage message = null;
         try {
             message = JmsMessageHelper.fromBytes(msg);
             if (noLocal && Objects.equals(message.getJMSXMessageFrom(), clientID)) {
                 return;
             }
-        } catch (JMSException e) {
+        } catch (JMSException | RuntimeException e) {
             LOGGER.log(Level.WARNING, "NoPersistentListener can not read message from property", e);
         }
 
         if (message != null) {
             message.setReadOnly(true);
+            useSerializer(message, context.config().getSerializer());
 
             listener.onMessage(message);
         }
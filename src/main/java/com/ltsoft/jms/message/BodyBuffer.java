@@ -0,0 +1,129 @@
+package com.ltsoft.jms.message;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * 可增长的消息内容缓冲区，替代 ByteArrayOutputStream。
+ * <p>
+ * 新建缓冲区的初始容量取自同类消息近期的内容字节数，多数消息写入时无需扩容。{@link #toByteArray()} 交出底层数组而不复制，
+ * 容量与内容不等长时仅截取一次；已交出的数组在下次写入前复制，不会被修改。未交出底层数组时，清空后可继续复用。
+ */
+final class BodyBuffer extends OutputStream {
+
+    private static final byte[] EMPTY = new byte[0];
+
+    private final SizeHint hint;
+    private byte[] buf;
+    private int count;
+
+    //底层数组已交出或由调用方提供，写入前需复制
+    private boolean shared;
+
+    BodyBuffer(SizeHint hint) {
+        this.hint = hint;
+        this.buf = new byte[hint.get()];
+    }
+
+    private BodyBuffer(byte[] bytes) {
+        this.hint = null;
+        this.buf = bytes;
+        this.count = bytes.length;
+        this.shared = true;
+    }
+
+    /**
+     * 以已有数组作为消息内容，不复制
+     *
+     * @param bytes 消息内容，可为 null
+     * @return 缓冲区
+     */
+    static BodyBuffer wrap(byte[] bytes) {
+        return new BodyBuffer(bytes != null ? bytes : EMPTY);
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(count + 1);
+        buf[count++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        ensureCapacity(count + len);
+        System.arraycopy(b, off, buf, count, len);
+        count += len;
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        if (minCapacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(minCapacity, buf.length * 2));
+            shared = false;
+        } else if (shared) {
+            buf = Arrays.copyOf(buf, buf.length);
+            shared = false;
+        }
+    }
+
+    int size() {
+        return count;
+    }
+
+    int capacity() {
+        return buf.length;
+    }
+
+    /**
+     * @return 消息内容，即缓冲区的底层数组
+     */
+    byte[] toByteArray() {
+        if (count != buf.length) {
+            buf = Arrays.copyOf(buf, count);
+        }
+        if (!shared && hint != null) {
+            hint.record(count);
+        }
+        shared = true;
+        return buf;
+    }
+
+    /**
+     * @return 读取已写入内容的输入流，不复制
+     */
+    InputStream open() {
+        return new ByteArrayInputStream(buf, 0, count);
+    }
+
+    /**
+     * 清空内容，未交出的底层数组继续复用
+     */
+    void clear() {
+        count = 0;
+        if (shared) {
+            buf = hint != null ? new byte[hint.get()] : EMPTY;
+            shared = false;
+        }
+    }
+
+    /**
+     * 同类消息近期的内容字节数，用作新缓冲区的初始容量
+     */
+    static final class SizeHint {
+
+        private static final int MIN = 64;
+        private static final int MAX = 64 * 1024;
+
+        private volatile int size = 256;
+
+        int get() {
+            return size;
+        }
+
+        void record(int bytes) {
+            //按 1/4 权重平滑，避免个别大消息放大初始容量
+            size = Math.min(MAX, Math.max(MIN, size + (bytes - size) / 4));
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.ltsoft.jms.message;
+
+import com.ltsoft.jms.exception.JMSExceptionSupport;
+
+import javax.jms.JMSException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 分块保存的消息内容
+ */
+final class ChunkedBody {
+
+    private final int count;
+    private final long length;
+    private final ChunkedMessage.ChunkLoader loader;
+
+    ChunkedBody(int count, long length, ChunkedMessage.ChunkLoader loader) {
+        this.count = count;
+        this.length = length;
+        this.loader = loader;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    long getLength() {
+        return length;
+    }
+
+    /**
+     * @return 按需逐块加载的消息内容
+     */
+    InputStream open() {
+        return new ChunkedInputStream();
+    }
+
+    /**
+     * 读取全部消息内容
+     *
+     * @param is 消息内容
+     * @return 消息内容
+     * @throws JMSException 读取失败
+     */
+    static byte[] readAll(InputStream is) throws JMSException {
+        try (InputStream in = is) {
+            ByteArrayOutputStream bao = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bao.write(buffer, 0, read);
+            }
+            return bao.toByteArray();
+        } catch (IOException e) {
+            throw JMSExceptionSupport.create(e);
+        }
+    }
+
+    /**
+     * 仅持有当前分块的输入流
+     */
+    private class ChunkedInputStream extends InputStream {
+
+        private int index;
+        private byte[] chunk;
+        private int position;
+
+        private boolean fill() throws IOException {
+            while (chunk == null || position >= chunk.length) {
+                if (index >= count) {
+                    return false;
+                }
+                chunk = loader.load(index);
+                if (chunk == null) {
+                    throw new IOException(String.format("Chunk %s of message body is missing", index));
+                }
+                index++;
+                position = 0;
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? chunk[position++] & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            //跨分块读取，与读取完整的消息内容时行为一致
+            int read = 0;
+            while (read < len && fill()) {
+                int size = Math.min(len - read, chunk.length - position);
+                System.arraycopy(chunk, position, b, off + read, size);
+                position += size;
+                read += size;
+            }
+            return read > 0 ? read : -1;
+        }
+
+        @Override
+        public int available() {
+            return chunk != null ? chunk.length - position : 0;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.ltsoft.jms.message;
+
+import javax.jms.JMSException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * 支持分块保存消息内容的消息。
+ * <p>
+ * 消息内容超过 {@link com.ltsoft.jms.JmsConfig#getChunkSize()}，或通过 {@link #setBodyStream(InputStream)} 设置时，
+ * 由存储引擎逐块写入多个 Key；消费者读取消息时按需逐块加载，内存占用与消息内容大小无关。
+ */
+public interface ChunkedMessage {
+
+    /**
+     * 以流的方式设置消息内容，发送时逐块读取并写入，读取完毕后关闭
+     *
+     * @param bodyStream 消息内容
+     * @throws JMSException 消息只读
+     */
+    void setBodyStream(InputStream bodyStream) throws JMSException;
+
+    /**
+     * 以流的方式读取消息内容，分块保存的消息内容按需逐块加载
+     *
+     * @return 消息内容
+     * @throws JMSException 消息内容读取失败
+     */
+    InputStream getBodyStream() throws JMSException;
+
+    /**
+     * @return 消息内容是否通过流设置
+     */
+    boolean isStreamBody();
+
+    /**
+     * @return 消息内容字节数，通过流设置时为 -1
+     */
+    long getBodySize();
+
+    /**
+     * @return 消息内容的分块数，未分块保存时为 0
+     */
+    int getBodyChunks();
+
+    /**
+     * 设置分块保存的消息内容，由存储引擎在还原消息时调用
+     *
+     * @param count  分块数
+     * @param length 消息内容字节数
+     * @param loader 分块加载方式
+     */
+    void setBodyChunks(int count, long length, ChunkLoader loader);
+
+    /**
+     * 消息内容分块的加载方式
+     */
+    @FunctionalInterface
+    interface ChunkLoader {
+
+        /**
+         * @param index 分块序号
+         * @return 分块内容
+         * @throws IOException 分块不存在或读取失败
+         */
+        byte[] load(int index) throws IOException;
+    }
+}
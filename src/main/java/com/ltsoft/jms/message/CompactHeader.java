@@ -0,0 +1,202 @@
+package com.ltsoft.jms.message;
+
+import com.ltsoft.jms.destination.JmsDestination;
+import com.ltsoft.jms.util.MessageType;
+
+import javax.jms.Destination;
+import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 紧凑的二进制消息头，所有 JMS 消息头编码为一个字段。
+ * <p>
+ * 格式为：1 字节版本号、1 字节消息类型、1 字节投递模式、1 字节优先级、1 字节标志位，
+ * 随后按标志位依次写入 varint 编码的时间戳、过期时间、投递时间，及长度前缀的 CorrelationID、消息目标、回复目标。
+ */
+final class CompactHeader {
+
+    static final byte VERSION = 1;
+
+    private static final int REDELIVERED = 1;
+    private static final int TIMESTAMP = 1 << 1;
+    private static final int EXPIRATION = 1 << 2;
+    private static final int DELIVERY_TIME = 1 << 3;
+    private static final int CORRELATION_ID = 1 << 4;
+    private static final int DESTINATION = 1 << 5;
+    private static final int REPLY_TO = 1 << 6;
+
+    private static final MessageType[] TYPES = MessageType.values();
+
+    private CompactHeader() {
+        //禁用构造函数
+    }
+
+    static byte[] encode(JmsMessage message) throws JMSException {
+        long timestamp = message.getJMSTimestamp();
+        long expiration = message.getJMSExpiration();
+        long deliveryTime = message.getJMSDeliveryTime();
+        byte[] correlationId = message.getJMSCorrelationID() != null ? message.getJMSCorrelationIDAsBytes() : null;
+        byte[] destination = toBytes(message.getJMSDestination());
+        byte[] replyTo = toBytes(message.getJMSReplyTo());
+
+        int flags = message.getJMSRedelivered() ? REDELIVERED : 0;
+        int size = 5;
+        if (timestamp > 0) {
+            flags |= TIMESTAMP;
+            size += varLongSize(timestamp);
+        }
+        if (expiration > 0) {
+            flags |= EXPIRATION;
+            size += varLongSize(expiration);
+        }
+        //投递时间与时间戳相同时省略
+        if (deliveryTime > 0 && deliveryTime != timestamp) {
+            flags |= DELIVERY_TIME;
+            size += varLongSize(deliveryTime);
+        }
+        if (correlationId != null) {
+            flags |= CORRELATION_ID;
+            size += varLongSize(correlationId.length) + correlationId.length;
+        }
+        if (destination != null) {
+            flags |= DESTINATION;
+            size += varLongSize(destination.length) + destination.length;
+        }
+        if (replyTo != null) {
+            flags |= REPLY_TO;
+            size += varLongSize(replyTo.length) + replyTo.length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.put(VERSION);
+        buffer.put((byte) MessageType.valueOf(message.getJMSType()).ordinal());
+        buffer.put((byte) message.getJMSDeliveryMode());
+        buffer.put((byte) message.getJMSPriority());
+        buffer.put((byte) flags);
+
+        if ((flags & TIMESTAMP) != 0) {
+            putVarLong(buffer, timestamp);
+        }
+        if ((flags & EXPIRATION) != 0) {
+            putVarLong(buffer, expiration);
+        }
+        if ((flags & DELIVERY_TIME) != 0) {
+            putVarLong(buffer, deliveryTime);
+        }
+        putBytes(buffer, correlationId);
+        putBytes(buffer, destination);
+        putBytes(buffer, replyTo);
+
+        return buffer.array();
+    }
+
+    /**
+     * 解码消息头，并创建对应类型的消息
+     *
+     * @param header 编码后的消息头
+     * @return 仅包含消息头的 JMS 消息
+     * @throws JMSException 版本不支持或格式错误
+     */
+    static JmsMessage decode(byte[] header) throws JMSException {
+        return decode(ByteBuffer.wrap(header));
+    }
+
+    /**
+     * 自缓冲区当前位置解码消息头，解码后缓冲区位置移至消息头之后
+     *
+     * @param buffer 包含消息头的缓冲区
+     * @return 仅包含消息头的 JMS 消息
+     * @throws JMSException 版本不支持或格式错误
+     */
+    static JmsMessage decode(ByteBuffer buffer) throws JMSException {
+        try {
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new MessageFormatException(String.format("Unsupported header version %s", version));
+            }
+
+            int type = buffer.get();
+            if (type < 0 || type >= TYPES.length) {
+                throw new MessageFormatException(String.format("Unknown message type %s", type));
+            }
+
+            JmsMessage message = JmsMessageHelper.createMessage(TYPES[type]);
+            message.setJMSDeliveryMode(buffer.get());
+            message.setJMSPriority(buffer.get());
+
+            int flags = buffer.get();
+            message.setJMSRedelivered((flags & REDELIVERED) != 0);
+            if ((flags & TIMESTAMP) != 0) {
+                message.setJMSTimestamp(getVarLong(buffer));
+                message.setJMSDeliveryTime(message.getJMSTimestamp());
+            }
+            if ((flags & EXPIRATION) != 0) {
+                message.setJMSExpiration(getVarLong(buffer));
+            }
+            if ((flags & DELIVERY_TIME) != 0) {
+                message.setJMSDeliveryTime(getVarLong(buffer));
+            }
+            if ((flags & CORRELATION_ID) != 0) {
+                message.setJMSCorrelationIDAsBytes(getBytes(buffer));
+            }
+            if ((flags & DESTINATION) != 0) {
+                message.setJMSDestination(JmsDestination.valueOf(new String(getBytes(buffer), StandardCharsets.UTF_8)));
+            }
+            if ((flags & REPLY_TO) != 0) {
+                message.setJMSReplyTo(JmsDestination.valueOf(new String(getBytes(buffer), StandardCharsets.UTF_8)));
+            }
+
+            return message;
+        } catch (BufferUnderflowException e) {
+            throw new MessageFormatException("Header is truncated");
+        }
+    }
+
+    private static byte[] toBytes(Destination destination) {
+        return destination != null ? destination.toString().getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    static int varLongSize(long value) {
+        int size = 1;
+        while ((value >>>= 7) != 0) {
+            size++;
+        }
+        return size;
+    }
+
+    static void putVarLong(ByteBuffer buffer, long value) {
+        while ((value & ~0x7FL) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer buffer) throws MessageFormatException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = buffer.get();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new MessageFormatException("Malformed varint in header");
+    }
+
+    private static void putBytes(ByteBuffer buffer, byte[] value) {
+        if (value != null) {
+            putVarLong(buffer, value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) throws MessageFormatException {
+        byte[] value = new byte[(int) getVarLong(buffer)];
+        buffer.get(value);
+        return value;
+    }
+}
@@ -0,0 +1,220 @@
+package com.ltsoft.jms.message;
+
+import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.ltsoft.jms.message.CompactHeader.getVarLong;
+import static com.ltsoft.jms.message.CompactHeader.putVarLong;
+import static com.ltsoft.jms.message.CompactHeader.varLongSize;
+
+/**
+ * 紧凑的 Map 消息内容编码，替代 Java 序列化。
+ * <p>
+ * 格式为：1 字节标记、1 字节版本号、varint 编码的条目数，随后每个条目依次写入长度前缀的名称、1 字节类型编码及值。
+ * 类型编码沿用 {@link JmsMessageHelper#TYPE_TO_CODE}，另补充 Character 与 null。定长类型按大端序写入，String 与 byte[] 写入长度前缀。
+ * Java 序列化的内容以 0xACED 开头，不会与标记冲突，因此旧格式的消息内容仍可解码。
+ */
+final class CompactMapBody {
+
+    static final byte MARKER = (byte) 0xc1;
+    static final byte VERSION = 1;
+
+    private static final byte BOOLEAN = JmsMessageHelper.TYPE_TO_CODE.get(Boolean.class);
+    private static final byte BYTE = JmsMessageHelper.TYPE_TO_CODE.get(Byte.class);
+    private static final byte SHORT = JmsMessageHelper.TYPE_TO_CODE.get(Short.class);
+    private static final byte INT = JmsMessageHelper.TYPE_TO_CODE.get(Integer.class);
+    private static final byte LONG = JmsMessageHelper.TYPE_TO_CODE.get(Long.class);
+    private static final byte FLOAT = JmsMessageHelper.TYPE_TO_CODE.get(Float.class);
+    private static final byte DOUBLE = JmsMessageHelper.TYPE_TO_CODE.get(Double.class);
+    private static final byte STRING = JmsMessageHelper.TYPE_TO_CODE.get(String.class);
+    private static final byte BYTES = JmsMessageHelper.TYPE_TO_CODE.get(byte[].class);
+    //类型编码表中没有的类型，Boolean 的编码已与属性中的 null 共用
+    private static final byte CHAR = (byte) 0xd3;
+    private static final byte NULL = (byte) 0xc4;
+
+    private CompactMapBody() {
+        //禁用构造函数
+    }
+
+    /**
+     * @param bytes 消息内容
+     * @return 是否为紧凑编码
+     */
+    static boolean isCompact(byte[] bytes) {
+        return bytes.length >= 2 && bytes[0] == MARKER;
+    }
+
+    /**
+     * 解码消息内容，写入 Map 消息
+     *
+     * @param bytes   编码后的消息内容
+     * @param message Map 消息
+     * @throws JMSException 版本不支持或格式错误
+     */
+    static void decode(byte[] bytes, JmsMapMessage message) throws JMSException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        try {
+            buffer.get();
+            byte version = buffer.get();
+            if (version != VERSION) {
+                throw new MessageFormatException(String.format("Unsupported map body version %s", version));
+            }
+
+            long count = getVarLong(buffer);
+            for (long i = 0; i < count; i++) {
+                String name = getString(buffer);
+                byte code = buffer.get();
+
+                if (code == BOOLEAN) {
+                    message.setBoolean(name, buffer.get() != 0);
+                } else if (code == BYTE) {
+                    message.setByte(name, buffer.get());
+                } else if (code == SHORT) {
+                    message.setShort(name, buffer.getShort());
+                } else if (code == CHAR) {
+                    message.setChar(name, buffer.getChar());
+                } else if (code == INT) {
+                    message.setInt(name, buffer.getInt());
+                } else if (code == LONG) {
+                    message.setLong(name, buffer.getLong());
+                } else if (code == FLOAT) {
+                    message.setFloat(name, buffer.getFloat());
+                } else if (code == DOUBLE) {
+                    message.setDouble(name, buffer.getDouble());
+                } else if (code == STRING) {
+                    message.setString(name, getString(buffer));
+                } else if (code == BYTES) {
+                    message.setBytes(name, getBytes(buffer));
+                } else if (code == NULL) {
+                    message.setObject(name, null);
+                } else {
+                    throw new MessageFormatException(String.format("Unknown type code %s of map entry %s", code, name));
+                }
+            }
+        } catch (BufferUnderflowException e) {
+            throw new MessageFormatException("Map body is truncated");
+        }
+    }
+
+    private static byte[] getBytes(ByteBuffer buffer) throws MessageFormatException {
+        long length = getVarLong(buffer);
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        byte[] value = new byte[(int) length];
+        buffer.get(value);
+        return value;
+    }
+
+    private static String getString(ByteBuffer buffer) throws MessageFormatException {
+        long length = getVarLong(buffer);
+        if (length > buffer.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String value = new String(buffer.array(), buffer.position(), (int) length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + (int) length);
+        return value;
+    }
+
+    /**
+     * 按写入顺序累积 Map 消息的条目，累积时计算编码后的字节数，编码时一次分配
+     */
+    static final class Writer {
+
+        private final List<byte[]> names = new ArrayList<>();
+        private final List<Object> values = new ArrayList<>();
+        private int size = 2;
+
+        void add(String name, Object value) {
+            byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+            size += varLongSize(nameBytes.length) + nameBytes.length + 1;
+
+            if (value instanceof String) {
+                EncodedString string = new EncodedString(((String) value).getBytes(StandardCharsets.UTF_8));
+                size += varLongSize(string.bytes.length) + string.bytes.length;
+                value = string;
+            } else if (value instanceof byte[]) {
+                size += varLongSize(((byte[]) value).length) + ((byte[]) value).length;
+            } else {
+                size += fixedSize(value);
+            }
+
+            names.add(nameBytes);
+            values.add(value);
+        }
+
+        private static int fixedSize(Object value) {
+            if (value == null) {
+                return 0;
+            } else if (value instanceof Boolean || value instanceof Byte) {
+                return 1;
+            } else if (value instanceof Short || value instanceof Character) {
+                return 2;
+            } else if (value instanceof Integer || value instanceof Float) {
+                return 4;
+            } else if (value instanceof Long || value instanceof Double) {
+                return 8;
+            }
+            throw new IllegalArgumentException("Unsupported map value type " + value.getClass());
+        }
+
+        byte[] toByteArray() {
+            ByteBuffer buffer = ByteBuffer.allocate(size + varLongSize(names.size()));
+            buffer.put(MARKER);
+            buffer.put(VERSION);
+            putVarLong(buffer, names.size());
+
+            for (int i = 0; i < names.size(); i++) {
+                putBytes(buffer, names.get(i));
+
+                Object value = values.get(i);
+                if (value == null) {
+                    buffer.put(NULL);
+                } else if (value instanceof EncodedString) {
+                    buffer.put(STRING);
+                    putBytes(buffer, ((EncodedString) value).bytes);
+                } else if (value instanceof byte[]) {
+                    buffer.put(BYTES);
+                    putBytes(buffer, (byte[]) value);
+                } else if (value instanceof Boolean) {
+                    buffer.put(BOOLEAN).put((byte) ((Boolean) value ? 1 : 0));
+                } else if (value instanceof Byte) {
+                    buffer.put(BYTE).put((Byte) value);
+                } else if (value instanceof Short) {
+                    buffer.put(SHORT).putShort((Short) value);
+                } else if (value instanceof Character) {
+                    buffer.put(CHAR).putChar((Character) value);
+                } else if (value instanceof Integer) {
+                    buffer.put(INT).putInt((Integer) value);
+                } else if (value instanceof Long) {
+                    buffer.put(LONG).putLong((Long) value);
+                } else if (value instanceof Float) {
+                    buffer.put(FLOAT).putFloat((Float) value);
+                } else {
+                    buffer.put(DOUBLE).putDouble((Double) value);
+                }
+            }
+
+            return buffer.array();
+        }
+
+        private static void putBytes(ByteBuffer buffer, byte[] value) {
+            putVarLong(buffer, value.length);
+            buffer.put(value);
+        }
+    }
+
+    private static final class EncodedString {
+
+        private final byte[] bytes;
+
+        EncodedString(byte[] bytes) {
+            this.bytes = bytes;
+        }
+    }
+}
@@ -11,33 +11,39 @@ import java.io.*;
 /**
  * 字节数组消息
  */
-public class JmsBytesMessage extends JmsMessage implements BytesMessage {
+public class JmsBytesMessage extends JmsMessage implements BytesMessage, ChunkedMessage {
 
-    private byte[] body = new byte[0];
-    private ByteArrayInputStream bodyIs;
-    private ByteArrayOutputStream bodyOs;
+    private static final BodyBuffer.SizeHint SIZE_HINT = new BodyBuffer.SizeHint();
+
+    private BodyBuffer body = BodyBuffer.wrap(null);
     private DataOutputStream dataOut;
     private DataInputStream dataIn;
+    private InputStream bodyStream;
+    private ChunkedBody chunkedBody;
 
     private void initializeWriting() throws JMSException {
         checkReadOnly();
         if (this.dataOut == null) {
-            this.bodyOs = new ByteArrayOutputStream();
-            this.dataOut = new DataOutputStream(bodyOs);
+            if (body.capacity() == 0) {
+                this.body = new BodyBuffer(SIZE_HINT);
+            }
+            this.dataOut = new DataOutputStream(body);
         }
     }
 
     private void initializeReading() throws JMSException {
-        if (dataIn == null) {
-            this.bodyIs = new ByteArrayInputStream(body);
-            dataIn = new DataInputStream(bodyIs);
+        if (dataIn == null && chunkedBody != null) {
+            //分块保存的消息内容按需逐块加载
+            dataIn = new DataInputStream(chunkedBody.open());
+        } else if (dataIn == null) {
+            dataIn = new DataInputStream(body.open());
         }
     }
 
     @Override
     public long getBodyLength() throws JMSException {
         initializeReading();
-        return bodyOs != null ? bodyOs.size() : body.length;
+        return chunkedBody != null ? chunkedBody.getLength() : body.size();
     }
 
     @Override
@@ -313,18 +319,7 @@ public class JmsBytesMessage extends JmsMessage implements BytesMessage {
 
     @Override
     public void reset() throws JMSException {
-        try {
-            if (bodyIs != null) {
-                bodyIs.close();
-                this.bodyIs = null;
-            }
-            if (bodyOs != null) {
-                this.bodyOs.close();
-                this.bodyOs = null;
-            }
-        } catch (IOException e) {
-            throw JMSExceptionSupport.create(e);
-        }
+        //已写入的内容保留在缓冲区中，重新从头读取
         this.dataIn = null;
         this.dataOut = null;
     }
@@ -333,21 +328,92 @@ public class JmsBytesMessage extends JmsMessage implements BytesMessage {
     public void clearBody() throws JMSException {
         checkReadOnly();
         reset();
-        this.body = new byte[0];
+        body.clear();
+        this.bodyStream = null;
+        this.chunkedBody = null;
     }
 
     @Override
     public byte[] getBody() throws JMSException {
-        return bodyOs != null ? bodyOs.toByteArray() : body;
+        if (bodyStream != null) {
+            //未分块写入时读取全部内容
+            this.body = BodyBuffer.wrap(ChunkedBody.readAll(bodyStream));
+            this.bodyStream = null;
+        }
+        if (chunkedBody != null) {
+            return ChunkedBody.readAll(chunkedBody.open());
+        }
+        return body.toByteArray();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getBody(Class<T> c) throws JMSException {
+        if (!c.isAssignableFrom(byte[].class)) {
+            throw new MessageFormatException("can't not cast body to " + c.getSimpleName());
+        }
+        byte[] bytes = getBody();
+        return bytes.length > 0 ? (T) bytes : null;
+    }
+
+    @Override
+    public boolean isBodyAssignableTo(Class c) throws JMSException {
+        //参数类型由 Message 接口限定为 Class，不读取消息内容
+        Class<?> type = c;
+        return type.isAssignableFrom(byte[].class);
     }
 
     @Override
     public void setBody(byte[] bodyBytes) throws JMSException {
         checkReadOnly();
-        this.body = bodyBytes;
+        this.body = BodyBuffer.wrap(bodyBytes);
+        this.bodyStream = null;
+        this.chunkedBody = null;
         reset();
     }
 
+    @Override
+    public void setBodyStream(InputStream bodyStream) throws JMSException {
+        clearBody();
+        this.bodyStream = bodyStream;
+    }
+
+    @Override
+    public InputStream getBodyStream() throws JMSException {
+        if (bodyStream != null) {
+            return bodyStream;
+        }
+        return chunkedBody != null ? chunkedBody.open() : body.open();
+    }
+
+    @Override
+    public boolean isStreamBody() {
+        return bodyStream != null;
+    }
+
+    @Override
+    public long getBodySize() {
+        if (bodyStream != null) {
+            return -1;
+        }
+        if (chunkedBody != null) {
+            return chunkedBody.getLength();
+        }
+        return body.size();
+    }
+
+    @Override
+    public int getBodyChunks() {
+        return chunkedBody != null ? chunkedBody.getCount() : 0;
+    }
+
+    @Override
+    public void setBodyChunks(int count, long length, ChunkLoader loader) {
+        this.body = BodyBuffer.wrap(null);
+        this.chunkedBody = new ChunkedBody(count, length, loader);
+        this.dataIn = null;
+    }
+
     @Override
     public String getJMSType() throws JMSException {
         return MessageType.Bytes.name();
@@ -78,42 +78,42 @@ public class JmsMapMessage extends JmsMessage implements MapMessage {
 
     @Override
     public void setBoolean(String name, boolean value) throws JMSException {
-        setObject(name, value);
+        body.setBooleanProperty(name, value);
     }
 
     @Override
     public void setByte(String name, byte value) throws JMSException {
-        setObject(name, value);
+        body.setByteProperty(name, value);
     }
 
     @Override
     public void setShort(String name, short value) throws JMSException {
-        setObject(name, value);
+        body.setShortProperty(name, value);
     }
 
     @Override
     public void setChar(String name, char value) throws JMSException {
-        setObject(name, value);
+        body.setCharProperty(name, value);
     }
 
     @Override
     public void setInt(String name, int value) throws JMSException {
-        setObject(name, value);
+        body.setIntProperty(name, value);
     }
 
     @Override
     public void setLong(String name, long value) throws JMSException {
-        setObject(name, value);
+        body.setLongProperty(name, value);
     }
 
     @Override
     public void setFloat(String name, float value) throws JMSException {
-        setObject(name, value);
+        body.setFloatProperty(name, value);
     }
 
     @Override
     public void setDouble(String name, double value) throws JMSException {
-        setObject(name, value);
+        body.setDoubleProperty(name, value);
     }
 
     @Override
@@ -169,10 +169,20 @@ public class JmsMapMessage extends JmsMessage implements MapMessage {
         return Map.class.isAssignableFrom(c);
     }
 
+    @Override
+    public byte[] getBody() throws JMSException {
+        return body.encode();
+    }
+
     @Override
     @SuppressWarnings("unchecked")
     public void setBody(byte[] bytes) throws JMSException {
-        body.merge(TypeSerializeSupport.deserialize(bytes, HashMap.class));
+        if (CompactMapBody.isCompact(bytes)) {
+            CompactMapBody.decode(bytes, this);
+        } else {
+            //兼容以 Java 序列化编码的消息内容
+            body.merge(TypeSerializeSupport.deserialize(bytes, HashMap.class));
+        }
     }
 
     @Override
@@ -184,7 +194,7 @@ public class JmsMapMessage extends JmsMessage implements MapMessage {
 
         void setBytes(String name, byte[] bytes) {
             if (bytes != null) {
-                properties.put(name, bytes);
+                putValue(name, bytes);
             }
         }
 
@@ -193,11 +203,17 @@ public class JmsMapMessage extends JmsMessage implements MapMessage {
         }
 
         void merge(Map<String, Object> data) {
-            properties.putAll(data);
+            data.forEach(this::putValue);
         }
 
         HashMap<String, Object> getMap() {
-            return properties;
+            return toMap();
+        }
+
+        byte[] encode() {
+            CompactMapBody.Writer writer = new CompactMapBody.Writer();
+            forEachValue(writer::add);
+            return writer.toByteArray();
         }
     }
 }
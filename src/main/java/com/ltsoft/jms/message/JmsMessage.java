@@ -175,6 +175,23 @@ public class JmsMessage implements Message {
         property.mergeProperty(props);
     }
 
+    /**
+     * 设置编码后的属性值，首次读取时解码
+     *
+     * @param name   属性名称
+     * @param bytes  包含属性值的数组
+     * @param offset 属性值的起始位置
+     * @param length 属性值的字节数
+     */
+    void setEncodedProperty(String name, byte[] bytes, int offset, int length) {
+        if (!(property instanceof LazyMessageProperty)) {
+            LazyMessageProperty lazy = new LazyMessageProperty();
+            lazy.mergeProperty(property);
+            property = lazy;
+        }
+        ((LazyMessageProperty) property).setEncodedProperty(name, bytes, offset, length);
+    }
+
     @Override
     public boolean propertyExists(String name) throws JMSException {
         return property.propertyExists(name);
@@ -232,37 +249,37 @@ public class JmsMessage implements Message {
 
     @Override
     public void setBooleanProperty(String name, boolean value) throws JMSException {
-        setObjectProperty(name, value);
+        property.setBooleanProperty(name, value);
     }
 
     @Override
     public void setByteProperty(String name, byte value) throws JMSException {
-        setObjectProperty(name, value);
+        property.setByteProperty(name, value);
     }
 
     @Override
     public void setShortProperty(String name, short value) throws JMSException {
-        setObjectProperty(name, value);
+        property.setShortProperty(name, value);
     }
 
     @Override
     public void setIntProperty(String name, int value) throws JMSException {
-        setObjectProperty(name, value);
+        property.setIntProperty(name, value);
     }
 
     @Override
     public void setLongProperty(String name, long value) throws JMSException {
-        setObjectProperty(name, value);
+        property.setLongProperty(name, value);
     }
 
     @Override
     public void setFloatProperty(String name, float value) throws JMSException {
-        setObjectProperty(name, value);
+        property.setFloatProperty(name, value);
     }
 
     @Override
     public void setDoubleProperty(String name, double value) throws JMSException {
-        setObjectProperty(name, value);
+        property.setDoubleProperty(name, value);
     }
 
     @Override
@@ -0,0 +1,93 @@
+package com.ltsoft.jms.message;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import org.redisson.client.codec.BaseCodec;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.protocol.Decoder;
+import org.redisson.client.protocol.Encoder;
+
+import javax.jms.JMSException;
+import java.io.IOException;
+import java.nio.charset.Charset;
+
+/**
+ * JMS 消息编解码器。
+ * <p>
+ * 值编码为 {@link JmsMessage}，与 {@link JmsMessageHelper#toBytes(JmsMessage)} 格式相同，由 {@link MessageWriter} 计算字节数后将各字段直接写入发送缓冲区。
+ * 值按字节数组读取，由调用方通过 {@link JmsMessageHelper#fromBytes(byte[])} 解码并处理格式错误的内容。
+ * <p>
+ * Map 及消息流的字段名称为字符串，字段值为字节数组，读取消息属性时无需再转换字段名称。
+ */
+public class JmsMessageCodec extends BaseCodec {
+
+    private final String compression;
+    private final int threshold;
+
+    private final Encoder encoder = this::encode;
+
+    private final Encoder mapKeyEncoder = in -> Unpooled.wrappedBuffer(((String) in).getBytes());
+
+    private final Decoder<Object> mapKeyDecoder = (buf, state) -> {
+        String key = buf.toString(Charset.defaultCharset());
+        buf.skipBytes(buf.readableBytes());
+        return key;
+    };
+
+    public JmsMessageCodec() {
+        this(null, 0);
+    }
+
+    /**
+     * @param compression 压缩算法名称
+     * @param threshold   压缩消息内容的最小字节数，0 表示不压缩
+     */
+    public JmsMessageCodec(String compression, int threshold) {
+        this.compression = compression;
+        this.threshold = threshold;
+    }
+
+    private ByteBuf encode(Object in) throws IOException {
+        MessageWriter writer;
+        try {
+            writer = new MessageWriter((JmsMessage) in, compression, threshold);
+        } catch (JMSException e) {
+            throw new IOException(e);
+        }
+
+        ByteBuf out = ByteBufAllocator.DEFAULT.buffer(writer.size());
+        writer.writeTo(out);
+        return out;
+    }
+
+    @Override
+    public Decoder<Object> getValueDecoder() {
+        return ByteArrayCodec.INSTANCE.getValueDecoder();
+    }
+
+    @Override
+    public Encoder getValueEncoder() {
+        return encoder;
+    }
+
+    @Override
+    public Decoder<Object> getMapKeyDecoder() {
+        return mapKeyDecoder;
+    }
+
+    @Override
+    public Encoder getMapKeyEncoder() {
+        return mapKeyEncoder;
+    }
+
+    @Override
+    public Decoder<Object> getMapValueDecoder() {
+        return ByteArrayCodec.INSTANCE.getValueDecoder();
+    }
+
+    @Override
+    public Encoder getMapValueEncoder() {
+        return ByteArrayCodec.INSTANCE.getValueEncoder();
+    }
+}
@@ -1,15 +1,22 @@
 package com.ltsoft.jms.message;
 
 import com.ltsoft.jms.destination.JmsDestination;
-import com.ltsoft.jms.exception.JMSExceptionSupport;
+import com.ltsoft.jms.util.Compressor;
+import com.ltsoft.jms.util.DeflateCompressor;
+import com.ltsoft.jms.util.IdGenerator;
 import com.ltsoft.jms.util.MessageType;
+import com.ltsoft.jms.util.Serializer;
+import com.ltsoft.jms.util.TimeOrderedIdGenerator;
 import com.ltsoft.jms.util.TypeSerializeSupport;
+import io.netty.buffer.Unpooled;
 
 import javax.jms.JMSException;
 import javax.jms.MessageEOFException;
+import javax.jms.MessageFormatException;
 import javax.jms.MessageNotReadableException;
-import java.io.*;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 /**
@@ -31,18 +38,36 @@ public final class JmsMessageHelper {
     public static final String JMS_TYPE = "JMSType";
 
     public static final String JMSX_BODY = "JMSXBody";
+    public static final String JMSX_HEADER = "JMSXHeader";
+    public static final String JMSX_COMPRESSION = "JMSXCompression";
+    public static final String JMSX_CHUNKS = "JMSXChunks";
+    public static final String JMSX_BODY_LENGTH = "JMSXBodyLength";
 
     public static final String JMSX_DELIVERY_COUNT = "JMSXDeliveryCount";
     public static final String JMSX_GROUPID = "JMSXGroupID";
     public static final String JMSX_GROUPSEQ = "JMSXGroupSeq";
     public static final String JMSX_USERID = "JMSXUserID";
 
-    public static final Map<Class, Byte> TYPE_TO_CODE = new HashMap<>();
-    private static final Map<Byte, Class> CODE_TO_TYPE = new HashMap<>();
+    public static final Map<Class<?>, Byte> TYPE_TO_CODE = new HashMap<>();
+    private static final Map<Byte, Class<?>> CODE_TO_TYPE = new HashMap<>();
 
-    private static final Byte NULL_CODE = (byte) 0xc0;
+    static final Byte NULL_CODE = (byte) 0xc0;
+
+    static final byte[] HEADER_KEY = JMSX_HEADER.getBytes();
+
+    private static final IdGenerator ID_GENERATOR;
+
+    private static final Map<String, Compressor> COMPRESSORS = new HashMap<>();
 
     static {
+        //加载消息 ID 生成器
+        Iterator<IdGenerator> generators = ServiceLoader.load(IdGenerator.class).iterator();
+        ID_GENERATOR = generators.hasNext() ? generators.next() : new TimeOrderedIdGenerator();
+
+        //加载压缩算法，扩展的实现可覆盖同名的默认实现
+        COMPRESSORS.put(DeflateCompressor.NAME, new DeflateCompressor());
+        ServiceLoader.load(Compressor.class).forEach(compressor -> COMPRESSORS.put(compressor.getName(), compressor));
+
         TYPE_TO_CODE.put(Boolean.class, (byte) 0xc0);
 
         TYPE_TO_CODE.put(Float.class, (byte) 0xca);
@@ -64,14 +89,6 @@ public final class JmsMessageHelper {
         //禁用构造函数
     }
 
-    private static String compressUUID(UUID uuid) {
-        ByteBuffer bytes = ByteBuffer.allocate(16);
-        bytes.putLong(uuid.getMostSignificantBits());
-        bytes.putLong(uuid.getLeastSignificantBits());
-
-        return Base64.getUrlEncoder().encodeToString(bytes.array()).substring(0, 22);
-    }
-
     private static UUID decompressUUID(String compressedUuid) {
         if (compressedUuid.length() != 22) {
             throw new IllegalArgumentException("Invalid uuid!");
@@ -81,10 +98,14 @@ public final class JmsMessageHelper {
     }
 
     public static String getMessageId() {
-        return ID_PREFIX + compressUUID(UUID.randomUUID());
+        return ID_GENERATOR.nextId();
     }
 
     public static UUID decodeMessageId(String messageId) {
+        if (TimeOrderedIdGenerator.isTimeOrdered(messageId)) {
+            return TimeOrderedIdGenerator.decode(messageId);
+        }
+
         if (messageId.length() != 25) {
             throw new IllegalArgumentException("Invalid MessageId!");
         }
@@ -92,6 +113,76 @@ public final class JmsMessageHelper {
         return decompressUUID(messageId.substring(ID_PREFIX.length()));
     }
 
+    private static Compressor getCompressor(String name) throws JMSException {
+        Compressor compressor = COMPRESSORS.get(name);
+        if (compressor == null) {
+            throw new MessageFormatException(String.format("Unknown compression '%s'", name));
+        }
+        return compressor;
+    }
+
+    /**
+     * 压缩消息内容，压缩后的消息属性中记录压缩算法
+     *
+     * @param body        消息内容
+     * @param props       消息属性
+     * @param compression 压缩算法名称
+     * @param threshold   压缩消息内容的最小字节数，0 表示不压缩
+     * @return 写入 Redis 的消息内容，未达到阈值或压缩无收益时为原消息内容
+     * @throws JMSException 压缩算法不存在
+     */
+    public static byte[] compressBody(byte[] body, Map<String, byte[]> props, String compression, int threshold) throws JMSException {
+        byte[] compressed = compress(body, compression, threshold);
+        if (compressed == null) {
+            return body;
+        }
+
+        props.put(JMSX_COMPRESSION, compression.getBytes());
+        return compressed;
+    }
+
+    /**
+     * @param body        消息内容
+     * @param compression 压缩算法名称
+     * @param threshold   压缩消息内容的最小字节数，0 表示不压缩
+     * @return 压缩后的消息内容，未达到阈值或压缩无收益时为 null
+     * @throws JMSException 压缩算法不存在
+     */
+    static byte[] compress(byte[] body, String compression, int threshold) throws JMSException {
+        if (body == null || threshold <= 0 || body.length < threshold) {
+            return null;
+        }
+
+        byte[] compressed = getCompressor(compression).compress(body);
+        return compressed.length < body.length ? compressed : null;
+    }
+
+    private static byte[] decompressBody(byte[] body, byte[] compression) throws JMSException {
+        if (compression == null) {
+            return body;
+        }
+        return getCompressor(new String(compression)).decompress(body);
+    }
+
+    private static byte[] decompressBody(byte[] bytes, int offset, int length, String compression) throws JMSException {
+        if (compression == null) {
+            return Arrays.copyOfRange(bytes, offset, offset + length);
+        }
+        return getCompressor(compression).decompress(bytes, offset, length);
+    }
+
+    /**
+     * 为 ObjectMessage 指定消息内容的序列化工具，其他类型的消息或序列化工具为 null 时不处理
+     *
+     * @param message    JMS 消息
+     * @param serializer 序列化工具
+     */
+    public static void useSerializer(JmsMessage message, Serializer serializer) {
+        if (serializer != null && message instanceof JmsObjectMessage) {
+            ((JmsObjectMessage) message).setSerializer(serializer);
+        }
+    }
+
     public static Map<String, byte[]> toStringKey(Map<byte[], byte[]> source) {
         if (source != null) {
             Map<String, byte[]> result = new HashMap<>();
@@ -113,73 +204,76 @@ public final class JmsMessageHelper {
     public static Map<String, byte[]> toMap(JmsMessage message) throws JMSException {
         Map<String, byte[]> map = new HashMap<>();
 
-        if (message.getJMSCorrelationID() != null) {
-            map.put(JMS_CORRELATION_ID, message.getJMSCorrelationIDAsBytes());
-        }
-
-        map.put(JMS_DELIVERY_MODE, String.valueOf(message.getJMSDeliveryMode()).getBytes());
-        if (message.getJMSDestination() != null) {
-            map.put(JMS_DESTINATION, String.valueOf(message.getJMSDestination()).getBytes());
-        }
-        if (message.getJMSExpiration() > 0) {
-            map.put(JMS_EXPIRATION, String.valueOf(message.getJMSExpiration()).getBytes());
-        }
-        map.put(JMS_PRIORITY, String.valueOf(message.getJMSPriority()).getBytes());
-        map.put(JMS_REDELIVERED, String.valueOf(message.getJMSRedelivered()).getBytes());
-        if (message.getJMSReplyTo() != null) {
-            map.put(JMS_REPLY_TO, String.valueOf(message.getJMSReplyTo()).getBytes());
-        }
-        if (message.getJMSTimestamp() > 0) {
-            map.put(JMS_TIMESTAMP, String.valueOf(message.getJMSTimestamp()).getBytes());
-        }
-        map.put(JMS_TYPE, message.getJMSType().getBytes());
+        //所有消息头编码为一个字段
+        map.put(JMSX_HEADER, CompactHeader.encode(message));
 
         Enumeration<String> enumeration = message.getPropertyNames();
         while (enumeration.hasMoreElements()) {
             String name = enumeration.nextElement();
+            map.put(name, encodeProperty(message.getObjectProperty(name)));
+        }
 
-            byte[] result;
-            Object property = message.getObjectProperty(name);
-            if (property != null) {
-                byte[] data = TypeSerializeSupport.serialize(property);
-                result = new byte[data.length + 1];
-                result[0] = TYPE_TO_CODE.get(property.getClass());
-                System.arraycopy(data, 0, result, 1, data.length);
-            } else {
-                result = new byte[]{NULL_CODE};
-            }
+        return map;
+    }
 
-            map.put(name, result);
+    private static byte[] encodeProperty(Object property) {
+        if (property == null) {
+            return new byte[]{NULL_CODE};
         }
 
-        return map;
+        byte[] data = TypeSerializeSupport.serialize(property);
+        byte[] result = new byte[data.length + 1];
+        result[0] = TYPE_TO_CODE.get(property.getClass());
+        System.arraycopy(data, 0, result, 1, data.length);
+        return result;
+    }
+
+    private static void readProperty(JmsMessage message, String name, byte[] bytes, int offset, int length) {
+        //属性值在首次读取时解码，无法识别的类型忽略
+        if (CODE_TO_TYPE.containsKey(bytes[offset]) || NULL_CODE.equals(bytes[offset])) {
+            message.setEncodedProperty(name, bytes, offset, length);
+        }
+    }
+
+    /**
+     * 解码属性值
+     *
+     * @param bytes  包含属性值的数组
+     * @param offset 属性值的起始位置，首字节为类型编码
+     * @param length 属性值的字节数
+     * @return 属性值
+     */
+    static Object decodeProperty(byte[] bytes, int offset, int length) {
+        Class<?> type = CODE_TO_TYPE.get(bytes[offset]);
+        if (type == null) {
+            return null;
+        }
+        return TypeSerializeSupport.deserialize(bytes, offset + 1, length - 1, type);
+    }
+
+    static JmsMessage createMessage(MessageType messageType) {
+        switch (messageType) {
+            case Bytes:
+                return new JmsBytesMessage();
+            case Map:
+                return new JmsMapMessage();
+            case Stream:
+                return new JmsStreamMessage();
+            case Object:
+                return new JmsObjectMessage();
+            case Text:
+                return new JmsTextMessage();
+            default:
+                return new JmsMessage();
+        }
     }
 
     @SuppressWarnings("unchecked")
     public static <T extends JmsMessage> T fromMap(Map<String, byte[]> propBytes) throws JMSException {
-        if (propBytes.containsKey(JMS_TYPE)) {
-            JmsMessage message = null;
-            MessageType messageType = MessageType.valueOf(new String(propBytes.get(JMS_TYPE)));
-            switch (messageType) {
-                case Basic:
-                    message = new JmsMessage();
-                    break;
-                case Bytes:
-                    message = new JmsBytesMessage();
-                    break;
-                case Map:
-                    message = new JmsMapMessage();
-                    break;
-                case Stream:
-                    message = new JmsStreamMessage();
-                    break;
-                case Object:
-                    message = new JmsObjectMessage();
-                    break;
-                case Text:
-                    message = new JmsTextMessage();
-                    break;
-            }
+        byte[] header = propBytes.get(JMSX_HEADER);
+        if (header != null || propBytes.containsKey(JMS_TYPE)) {
+            //兼容消息头逐个保存为字符串的旧格式
+            JmsMessage message = header != null ? CompactHeader.decode(header) : createMessage(MessageType.valueOf(new String(propBytes.get(JMS_TYPE))));
 
             for (Map.Entry<String, byte[]> entry : propBytes.entrySet()) {
                 String key = entry.getKey();
@@ -213,20 +307,18 @@ public final class JmsMessageHelper {
                         message.setJMSTimestamp(Long.valueOf(new String(value)));
                         break;
                     case JMSX_BODY:
-                        message.setBody(value);
+                        //未压缩的消息不含压缩算法属性
+                        message.setBody(decompressBody(value, propBytes.get(JMSX_COMPRESSION)));
                         break;
                     case JMS_TYPE:
+                    case JMSX_HEADER:
+                    case JMSX_COMPRESSION:
+                    case JMSX_CHUNKS:
+                    case JMSX_BODY_LENGTH:
+                        //分块保存的消息内容由存储引擎加载
                         break;
                     default:
-                        byte[] bytes = entry.getValue();
-                        byte[] data = Arrays.copyOfRange(bytes, 1, bytes.length);
-                        Class type = CODE_TO_TYPE.get(bytes[0]);
-                        if (type != null) {
-                            message.setObjectProperty(key, TypeSerializeSupport.deserialize(data, type));
-                        } else if (NULL_CODE.equals(bytes[0])) {
-                            message.setObjectProperty(key, null);
-                        }
-
+                        readProperty(message, key, value, 0, value.length);
                 }
             }
 
@@ -237,60 +329,129 @@ public final class JmsMessageHelper {
     }
 
     public static byte[] toBytes(JmsMessage message) throws JMSException {
-        Map<String, byte[]> map = toMap(message);
-        //与持久化为 Map 类型不同， bytes 中需要记录 MessageID 和 Body
-        map.put(JMS_MESSAGE_ID, message.getJMSMessageID().getBytes());
-        map.put(JMSX_BODY, message.getBody());
+        return toBytes(message, null, 0);
+    }
 
-        try (ByteArrayOutputStream os = new ByteArrayOutputStream();
-             DataOutputStream writer = new DataOutputStream(os)) {
+    /**
+     * 编码消息，消息内容达到阈值时压缩。
+     * <p>
+     * 编码为依次排列的字段，每个字段的名称与值均以 4 字节长度为前缀。消息头固定为首个字段，
+     * 压缩算法位于消息内容之前，以便解码时单次遍历即可创建消息。各字段由 {@link MessageWriter} 直接写入结果数组。
+     *
+     * @param message     JMS 消息
+     * @param compression 压缩算法名称
+     * @param threshold   压缩消息内容的最小字节数，0 表示不压缩
+     * @return 编码后的消息
+     * @throws JMSException 消息无法序列化
+     */
+    public static byte[] toBytes(JmsMessage message, String compression, int threshold) throws JMSException {
+        MessageWriter writer = new MessageWriter(message, compression, threshold);
+
+        byte[] bytes = new byte[writer.size()];
+        writer.writeTo(Unpooled.wrappedBuffer(bytes).clear());
+        return bytes;
+    }
 
-            for (Map.Entry<String, byte[]> entry : map.entrySet()) {
-                byte[] key = entry.getKey().getBytes();
-                byte[] value = entry.getValue();
-                writer.writeInt(key.length);
-                writer.write(key);
-                writer.writeInt(value.length);
-                writer.write(value);
+    public static <T extends JmsMessage> T fromBytes(byte[] bytes) throws JMSException {
+        return fromBytes(bytes, 0, bytes.length);
+    }
+
+    /**
+     * 解码数组中的部分内容。
+     * <p>
+     * 首个字段为消息头时单次遍历直接构建消息，字段值自原数组读取，仅复制最终写入消息的内容；
+     * 旧版本编码的字段顺序不固定，读取全部字段后再解码。
+     *
+     * @param bytes  包含编码后消息的数组
+     * @param offset 编码后消息的起始位置
+     * @param length 编码后消息的字节数
+     * @return JMS 消息
+     * @throws JMSException 消息格式错误
+     */
+    @SuppressWarnings("unchecked")
+    public static <T extends JmsMessage> T fromBytes(byte[] bytes, int offset, int length) throws JMSException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        try {
+            if (!startsWithHeader(buffer)) {
+                return fromMap(readFields(buffer));
+            }
+
+            skipField(buffer);
+            int headerOffset = skipField(buffer);
+            JmsMessage message = CompactHeader.decode(ByteBuffer.wrap(bytes, headerOffset, buffer.position() - headerOffset));
+
+            String compression = null;
+            while (buffer.hasRemaining()) {
+                int keyOffset = skipField(buffer);
+                String key = new String(bytes, keyOffset, buffer.position() - keyOffset, StandardCharsets.UTF_8);
+                int valueOffset = skipField(buffer);
+                int valueLength = buffer.position() - valueOffset;
+
+                switch (key) {
+                    case JMS_MESSAGE_ID:
+                        message.setJMSMessageID(new String(bytes, valueOffset, valueLength, StandardCharsets.UTF_8));
+                        break;
+                    case JMSX_COMPRESSION:
+                        compression = new String(bytes, valueOffset, valueLength);
+                        break;
+                    case JMSX_BODY:
+                        message.setBody(decompressBody(bytes, valueOffset, valueLength, compression));
+                        break;
+                    case JMSX_CHUNKS:
+                    case JMSX_BODY_LENGTH:
+                        break;
+                    default:
+                        readProperty(message, key, bytes, valueOffset, valueLength);
+                }
             }
 
-            return os.toByteArray();
-        } catch (IOException e) {
-            throw JMSExceptionSupport.create(e);
+            return (T) message;
+        } catch (BufferUnderflowException e) {
+            throw new MessageEOFException("Message is truncated");
         }
     }
 
-    public static <T extends JmsMessage> T fromBytes(byte[] bytes) throws JMSException {
-        Map<String, byte[]> map = new HashMap<>();
-
-        try (ByteArrayInputStream is = new ByteArrayInputStream(bytes);
-             DataInputStream reader = new DataInputStream(is)) {
+    private static boolean startsWithHeader(ByteBuffer buffer) {
+        int offset = buffer.position();
+        if (buffer.remaining() < Integer.BYTES + HEADER_KEY.length || buffer.getInt(offset) != HEADER_KEY.length) {
+            return false;
+        }
 
-            while (true) {
-                int keyLen;
-                try {
-                    keyLen = reader.readInt();
-                } catch (EOFException e) {
-                    break;
-                }
-                byte[] key = new byte[keyLen];
-                if (reader.read(key) == -1) {
-                    throw new MessageEOFException("read key fail");
-                }
-                int valueLen = reader.readInt();
-                byte[] value = new byte[valueLen];
-                if (reader.read(value) == -1) {
-                    throw new MessageEOFException("read value fail");
-                }
-                map.put(new String(key), value);
+        byte[] bytes = buffer.array();
+        for (int i = 0; i < HEADER_KEY.length; i++) {
+            if (bytes[offset + Integer.BYTES + i] != HEADER_KEY[i]) {
+                return false;
             }
-        } catch (EOFException e) {
-            throw new MessageEOFException(e.getMessage());
-        } catch (IOException e) {
-            throw JMSExceptionSupport.create(e);
         }
+        return true;
+    }
 
-        return fromMap(map);
+    /**
+     * 跳过以 4 字节长度为前缀的字段
+     *
+     * @param buffer 位于字段起始处的缓冲区
+     * @return 字段内容的起始位置，结束位置为跳过后缓冲区的位置
+     * @throws MessageEOFException 字段不完整
+     */
+    private static int skipField(ByteBuffer buffer) throws MessageEOFException {
+        int length = buffer.getInt();
+        int offset = buffer.position();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new MessageEOFException("Message is truncated");
+        }
+        buffer.position(offset + length);
+        return offset;
     }
-}
 
+    private static Map<String, byte[]> readFields(ByteBuffer buffer) throws MessageEOFException {
+        byte[] bytes = buffer.array();
+        Map<String, byte[]> map = new HashMap<>();
+        while (buffer.hasRemaining()) {
+            int keyOffset = skipField(buffer);
+            String key = new String(bytes, keyOffset, buffer.position() - keyOffset);
+            int valueOffset = skipField(buffer);
+            map.put(key, Arrays.copyOfRange(bytes, valueOffset, buffer.position()));
+        }
+        return map;
+    }
+}
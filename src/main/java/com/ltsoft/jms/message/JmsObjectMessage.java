@@ -1,7 +1,9 @@
 package com.ltsoft.jms.message;
 
 import com.ltsoft.jms.exception.JMSExceptionSupport;
+import com.ltsoft.jms.util.CompactSerializer;
 import com.ltsoft.jms.util.MessageType;
+import com.ltsoft.jms.util.Serializer;
 import com.ltsoft.jms.util.TypeConversionSupport;
 import com.ltsoft.jms.util.TypeSerializeSupport;
 
@@ -11,38 +13,89 @@ import java.io.Serializable;
 
 /**
  * 可序列化对象消息
+ * <p>
+ * 接收的消息内容在首次读取对象时反序列化，未指定序列化工具时按全局配置处理。
  */
 public class JmsObjectMessage extends JmsMessage implements ObjectMessage {
 
     private Serializable obj;
 
+    //尚未反序列化的消息内容
+    private byte[] bytes;
+
+    private Serializer serializer;
+
+    /**
+     * 指定消息内容的序列化工具，为 null 时使用全局配置
+     *
+     * @param serializer 序列化工具
+     */
+    public void setSerializer(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
     @Override
     public void setObject(Serializable object) throws JMSException {
         this.obj = object;
+        this.bytes = null;
     }
 
     @Override
     public Serializable getObject() throws JMSException {
+        if (bytes != null) {
+            try {
+                obj = deserialize(bytes);
+            } catch (RuntimeException e) {
+                throw JMSExceptionSupport.create(e);
+            }
+            bytes = null;
+        }
         return obj;
     }
 
+    private Serializable deserialize(byte[] source) {
+        if (serializer != null) {
+            return serializer.deserialize(source);
+        } else if (CompactSerializer.isCompact(source)) {
+            return CompactSerializer.INSTANCE.deserialize(source);
+        }
+        return TypeSerializeSupport.deserialize(source, Serializable.class);
+    }
+
     @Override
     public void clearBody() throws JMSException {
         this.obj = null;
+        this.bytes = null;
     }
 
     @Override
     public <T> T getBody(Class<T> c) throws JMSException {
         try {
-            return TypeConversionSupport.convert(obj, c);
+            return TypeConversionSupport.convert(getObject(), c);
         } catch (IllegalArgumentException e) {
             throw JMSExceptionSupport.create(e);
         }
     }
 
+    @Override
+    public byte[] getBody() throws JMSException {
+        if (bytes != null) {
+            return bytes;
+        } else if (obj == null || serializer == null) {
+            return super.getBody();
+        }
+
+        try {
+            return serializer.serialize(obj);
+        } catch (RuntimeException e) {
+            throw JMSExceptionSupport.create(e);
+        }
+    }
+
     @Override
     public void setBody(byte[] bodyBytes) throws JMSException {
-        setObject(TypeSerializeSupport.deserialize(bodyBytes, Serializable.class));
+        this.obj = null;
+        this.bytes = bodyBytes;
     }
 
     @Override
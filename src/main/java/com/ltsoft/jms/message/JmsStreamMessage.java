@@ -16,28 +16,34 @@ import static com.ltsoft.jms.message.JmsMessageHelper.TYPE_TO_CODE;
 /**
  * 字节流消息
  */
-public class JmsStreamMessage extends JmsMessage implements StreamMessage {
+public class JmsStreamMessage extends JmsMessage implements StreamMessage, ChunkedMessage {
 
-    private byte[] body = new byte[0];
-    private ByteArrayInputStream bodyIs;
-    private ByteArrayOutputStream bodyOs;
+    private static final BodyBuffer.SizeHint SIZE_HINT = new BodyBuffer.SizeHint();
+
+    private BodyBuffer body = BodyBuffer.wrap(null);
     private DataOutputStream dataOut;
     private DataInputStream dataIn;
+    private InputStream bodyStream;
+    private ChunkedBody chunkedBody;
 
     private int bytesRemind = 0;
 
     private void initializeWriting() throws JMSException {
         checkReadOnly();
         if (this.dataOut == null) {
-            this.bodyOs = new ByteArrayOutputStream();
-            this.dataOut = new DataOutputStream(bodyOs);
+            if (body.capacity() == 0) {
+                this.body = new BodyBuffer(SIZE_HINT);
+            }
+            this.dataOut = new DataOutputStream(body);
         }
     }
 
     private void initializeReading() throws JMSException {
-        if (dataIn == null) {
-            this.bodyIs = new ByteArrayInputStream(body);
-            dataIn = new DataInputStream(bodyIs);
+        if (dataIn == null && chunkedBody != null) {
+            //分块保存的消息内容按需逐块加载
+            dataIn = new DataInputStream(chunkedBody.open());
+        } else if (dataIn == null) {
+            dataIn = new DataInputStream(body.open());
         }
     }
 
@@ -91,7 +97,7 @@ public class JmsStreamMessage extends JmsMessage implements StreamMessage {
         initializeReading();
         try {
             if (bytesRemind == 0) {
-                int type = dataIn.readByte();
+                int type = dataIn.readUnsignedByte();
                 if (type != 0x90) {
                     throw new MessageFormatException("Object in steam is a " + readObjectByType(type).getClass().getSimpleName());
                 }
@@ -141,7 +147,7 @@ public class JmsStreamMessage extends JmsMessage implements StreamMessage {
     public Object readObject() throws JMSException {
         initializeReading();
         try {
-            return readObjectByType(dataIn.readByte());
+            return readObjectByType(dataIn.readUnsignedByte());
         } catch (IOException e) {
             throw JMSExceptionSupport.create(e);
         }
@@ -240,18 +246,7 @@ public class JmsStreamMessage extends JmsMessage implements StreamMessage {
 
     @Override
     public void reset() throws JMSException {
-        try {
-            if (bodyIs != null) {
-                bodyIs.close();
-                this.bodyIs = null;
-            }
-            if (bodyOs != null) {
-                this.bodyOs.close();
-                this.bodyOs = null;
-            }
-        } catch (IOException e) {
-            throw JMSExceptionSupport.create(e);
-        }
+        //已写入的内容保留在缓冲区中，重新从头读取
         this.dataIn = null;
         this.dataOut = null;
     }
@@ -260,21 +255,75 @@ public class JmsStreamMessage extends JmsMessage implements StreamMessage {
     public void clearBody() throws JMSException {
         checkReadOnly();
         reset();
-        this.body = new byte[0];
+        body.clear();
+        this.bodyStream = null;
+        this.chunkedBody = null;
     }
 
     @Override
     public byte[] getBody() throws JMSException {
-        return bodyOs != null ? bodyOs.toByteArray() : body;
+        if (bodyStream != null) {
+            //未分块写入时读取全部内容
+            this.body = BodyBuffer.wrap(ChunkedBody.readAll(bodyStream));
+            this.bodyStream = null;
+        }
+        if (chunkedBody != null) {
+            return ChunkedBody.readAll(chunkedBody.open());
+        }
+        return body.toByteArray();
     }
 
     @Override
     public void setBody(byte[] bodyBytes) throws JMSException {
         checkReadOnly();
-        this.body = bodyBytes;
+        this.body = BodyBuffer.wrap(bodyBytes);
+        this.bodyStream = null;
+        this.chunkedBody = null;
         reset();
     }
 
+    @Override
+    public void setBodyStream(InputStream bodyStream) throws JMSException {
+        clearBody();
+        this.bodyStream = bodyStream;
+    }
+
+    @Override
+    public InputStream getBodyStream() throws JMSException {
+        if (bodyStream != null) {
+            return bodyStream;
+        }
+        return chunkedBody != null ? chunkedBody.open() : body.open();
+    }
+
+    @Override
+    public boolean isStreamBody() {
+        return bodyStream != null;
+    }
+
+    @Override
+    public long getBodySize() {
+        if (bodyStream != null) {
+            return -1;
+        }
+        if (chunkedBody != null) {
+            return chunkedBody.getLength();
+        }
+        return body.size();
+    }
+
+    @Override
+    public int getBodyChunks() {
+        return chunkedBody != null ? chunkedBody.getCount() : 0;
+    }
+
+    @Override
+    public void setBodyChunks(int count, long length, ChunkLoader loader) {
+        this.body = BodyBuffer.wrap(null);
+        this.chunkedBody = new ChunkedBody(count, length, loader);
+        this.dataIn = null;
+    }
+
     @Override
     public String getJMSType() throws JMSException {
         return MessageType.Stream.name();
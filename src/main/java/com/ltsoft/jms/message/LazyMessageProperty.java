@@ -0,0 +1,54 @@
+package com.ltsoft.jms.message;
+
+import com.ltsoft.jms.util.MessageProperty;
+
+
+/**
+ * 接收消息的属性，保留编码后的属性值，首次读取时解码。
+ * <p>
+ * 编码后的属性值直接引用接收到的数组，解码前数组不会被回收。
+ */
+final class LazyMessageProperty extends MessageProperty {
+
+    /**
+     * 设置编码后的属性值
+     *
+     * @param name   属性名称
+     * @param bytes  包含属性值的数组
+     * @param offset 属性值的起始位置
+     * @param length 属性值的字节数
+     */
+    void setEncodedProperty(String name, byte[] bytes, int offset, int length) {
+        putValue(name, new Encoded(bytes, offset, length));
+    }
+
+    @Override
+    protected int lookup(String name) {
+        int index = super.lookup(name);
+        Object value = index >= 0 ? objectAt(index) : null;
+        if (value instanceof Encoded) {
+            Encoded encoded = (Encoded) value;
+            putValue(name, JmsMessageHelper.decodeProperty(encoded.bytes, encoded.offset, encoded.length));
+        }
+        return index;
+    }
+
+    @Override
+    public String toString() {
+        getPropertyNames().forEach(this::lookup);
+        return super.toString();
+    }
+
+    private static final class Encoded {
+
+        private final byte[] bytes;
+        private final int offset;
+        private final int length;
+
+        Encoded(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
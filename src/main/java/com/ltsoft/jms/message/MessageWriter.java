@@ -0,0 +1,133 @@
+package com.ltsoft.jms.message;
+
+import com.ltsoft.jms.util.TypeSerializeSupport;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+
+import javax.jms.JMSException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+
+import static com.ltsoft.jms.message.JmsMessageHelper.*;
+
+/**
+ * 按 {@link JmsMessageHelper#toBytes(JmsMessage, String, int)} 的格式编码消息。
+ * <p>
+ * 创建时编码消息头、序列化属性值并计算编码后的字节数，写入时字段名称、属性值及消息内容直接写入目标缓冲区，不再为各字段复制数组。
+ * 字段名称及消息 ID 按 UTF-8 编码。
+ */
+final class MessageWriter {
+
+    private static final byte[] MESSAGE_ID_KEY = JMS_MESSAGE_ID.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] COMPRESSION_KEY = JMSX_COMPRESSION.getBytes(StandardCharsets.UTF_8);
+    private static final byte[] BODY_KEY = JMSX_BODY.getBytes(StandardCharsets.UTF_8);
+
+    private final byte[] header;
+    private final String messageId;
+    private final List<String> names = new ArrayList<>();
+    private final List<Object> properties = new ArrayList<>();
+    private final List<byte[]> values = new ArrayList<>();
+    private final String compression;
+    private final byte[] body;
+    private final int size;
+
+    /**
+     * @param message     JMS 消息
+     * @param compression 压缩算法名称
+     * @param threshold   压缩消息内容的最小字节数，0 表示不压缩
+     * @throws JMSException 消息无法序列化
+     */
+    MessageWriter(JmsMessage message, String compression, int threshold) throws JMSException {
+        this.header = CompactHeader.encode(message);
+        this.messageId = message.getJMSMessageID();
+
+        int size = field(HEADER_KEY.length) + field(header.length) + field(MESSAGE_ID_KEY.length) + field(ByteBufUtil.utf8Bytes(messageId));
+
+        Enumeration<String> enumeration = message.getPropertyNames();
+        while (enumeration.hasMoreElements()) {
+            String name = enumeration.nextElement();
+            Object property = message.getObjectProperty(name);
+            byte[] value = TypeSerializeSupport.serialize(property);
+
+            names.add(name);
+            properties.add(property);
+            values.add(value);
+            //属性值以 1 字节类型编码为前缀
+            size += field(ByteBufUtil.utf8Bytes(name)) + field(1 + (value != null ? value.length : 0));
+        }
+
+        byte[] body = message.getBody();
+        byte[] compressed = compress(body, compression, threshold);
+        this.compression = compressed != null ? compression : null;
+        this.body = compressed != null ? compressed : body;
+
+        if (this.compression != null) {
+            size += field(COMPRESSION_KEY.length) + field(ByteBufUtil.utf8Bytes(this.compression));
+        }
+        if (this.body != null) {
+            size += field(BODY_KEY.length) + field(this.body.length);
+        }
+        this.size = size;
+    }
+
+    private static int field(int length) {
+        return Integer.BYTES + length;
+    }
+
+    /**
+     * @return 编码后的字节数
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * 依次写入各字段，每个字段以 4 字节长度为前缀。消息头固定为首个字段，压缩算法位于消息内容之前
+     *
+     * @param out 目标缓冲区，可写入的字节数不小于 {@link #size()}
+     */
+    void writeTo(ByteBuf out) {
+        writeBytes(out, HEADER_KEY);
+        writeBytes(out, header);
+        writeBytes(out, MESSAGE_ID_KEY);
+        writeString(out, messageId);
+
+        for (int i = 0; i < names.size(); i++) {
+            writeString(out, names.get(i));
+
+            Object property = properties.get(i);
+            byte[] value = values.get(i);
+            if (property == null) {
+                out.writeInt(1);
+                out.writeByte(NULL_CODE);
+            } else {
+                out.writeInt(1 + value.length);
+                out.writeByte(TYPE_TO_CODE.get(property.getClass()));
+                out.writeBytes(value);
+            }
+        }
+
+        if (compression != null) {
+            writeBytes(out, COMPRESSION_KEY);
+            writeString(out, compression);
+        }
+        if (body != null) {
+            writeBytes(out, BODY_KEY);
+            writeBytes(out, body);
+        }
+    }
+
+    private static void writeBytes(ByteBuf out, byte[] value) {
+        out.writeInt(value.length);
+        out.writeBytes(value);
+    }
+
+    private static void writeString(ByteBuf out, String value) {
+        int length = ByteBufUtil.utf8Bytes(value);
+        out.writeInt(length);
+        //按实际字节数预留空间，目标缓冲区的容量与编码后的字节数相同
+        ByteBufUtil.reserveAndWriteUtf8(out, value, length);
+    }
+}
@@ -0,0 +1,275 @@
+package com.ltsoft.jms.util;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的对象序列化工具，仅依赖 JDK。
+ * <p>
+ * 格式为：1 字节标记、1 字节版本号、1 字节对象类型，随后为对象内容。对象内容基于 Java 序列化，但类描述仅写入注册的类 ID 或类名，
+ * 不写入字段描述，因此收发双方需使用相同版本的类。可通过 {@link #register(int, Class)} 注册常用的类，以类 ID 代替类名。
+ * 实现 {@link Externalizable} 且无 writeReplace/readResolve 方法的对象直接调用 writeExternal/readExternal，不经过 Java 序列化的对象处理。
+ * <p>
+ * 序列化时复用线程内的缓冲区，输出的数组与内容等长；超过 64KB 的缓冲区按该线程上次序列化的字节数重新分配，不长期占用内存。
+ * 不以标记开头的内容按 Java 序列化读取，因此切换序列化工具后已写入的消息仍可读取。
+ */
+public class CompactSerializer implements Serializer {
+
+    /**
+     * 未注册类 ID 的实例，可读取任意未使用类 ID 的内容
+     */
+    public static final CompactSerializer INSTANCE = new CompactSerializer();
+
+    static final byte MARKER = (byte) 0xc5;
+    static final byte VERSION = 1;
+
+    private static final byte OBJECT = 0;
+    private static final byte EXTERNAL = 1;
+
+    private static final byte CLASS_ID = 0;
+    private static final byte CLASS_NAME = 1;
+
+    private static final int MIN_BUFFER = 256;
+    //超过该容量的缓冲区不保留在线程内
+    private static final int MAX_BUFFER = 64 * 1024;
+
+    private static final Serializer JAVA = new DefaultSerializer();
+
+    private static final ThreadLocal<Output> OUTPUT = ThreadLocal.withInitial(Output::new);
+
+    //可直接调用 writeExternal/readExternal 的类的无参构造函数，其余类为 null
+    private static final ClassValue<Constructor<?>> EXTERNALIZABLE = new ClassValue<Constructor<?>>() {
+        @Override
+        protected Constructor<?> computeValue(Class<?> type) {
+            return externalizableConstructor(type);
+        }
+    };
+
+    private final Map<Class<?>, Integer> classIds = new ConcurrentHashMap<>();
+    private final Map<Integer, Class<?>> classes = new ConcurrentHashMap<>();
+
+    /**
+     * 注册类 ID，序列化时以类 ID 代替类名。收发双方需注册相同的类 ID
+     *
+     * @param id   类 ID，不小于 0
+     * @param type 类
+     * @return 序列化工具
+     */
+    public CompactSerializer register(int id, Class<?> type) {
+        if (this == INSTANCE) {
+            throw new UnsupportedOperationException("Can not register class to the shared instance");
+        }
+        if (id < 0) {
+            throw new IllegalArgumentException("Class id must not be negative: " + id);
+        }
+
+        Class<?> exists = classes.putIfAbsent(id, type);
+        if (exists != null && exists != type) {
+            throw new IllegalArgumentException(String.format("Class id %s is registered by %s", id, exists.getName()));
+        }
+        classIds.put(type, id);
+        return this;
+    }
+
+    /**
+     * @param source 序列化内容
+     * @return 是否为本工具序列化的内容
+     */
+    public static boolean isCompact(byte[] source) {
+        return source != null && source.length >= 3 && source[0] == MARKER;
+    }
+
+    @Override
+    public byte[] serialize(Object source) {
+        Output output = OUTPUT.get();
+        if (output.inUse) {
+            //writeExternal 等方法中嵌套序列化时，不复用缓冲区
+            output = new Output();
+        }
+
+        output.inUse = true;
+        try {
+            output.write(MARKER);
+            output.write(VERSION);
+
+            CompactOutputStream out = new CompactOutputStream(output);
+            Constructor<?> constructor = EXTERNALIZABLE.get(source.getClass());
+            if (constructor != null) {
+                out.writeByte(EXTERNAL);
+                out.writeClass(source.getClass());
+                ((Externalizable) source).writeExternal(out);
+            } else {
+                out.writeByte(OBJECT);
+                out.writeObject(source);
+            }
+            out.flush();
+
+            return output.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException(String.format("Serialize object '%s' fail.", source.getClass().getName()), e);
+        } finally {
+            output.release();
+        }
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T deserialize(byte[] source) {
+        if (!isCompact(source)) {
+            return JAVA.deserialize(source);
+        }
+        if (source[1] != VERSION) {
+            throw new RuntimeException(String.format("Unsupported serialize version %s", source[1]));
+        }
+
+        try (CompactInputStream in = new CompactInputStream(new ByteArrayInputStream(source, 2, source.length - 2))) {
+            if (in.readByte() == EXTERNAL) {
+                Class<?> type = in.readClass();
+                Constructor<?> constructor = EXTERNALIZABLE.get(type);
+                if (constructor == null) {
+                    throw new InvalidClassException(type.getName(), "Class is not externalizable");
+                }
+
+                Externalizable value = (Externalizable) constructor.newInstance();
+                value.readExternal(in);
+                return (T) value;
+            }
+
+            return (T) in.readObject();
+        } catch (IOException | ReflectiveOperationException e) {
+            throw new RuntimeException("Deserialize object fail when read byte array.", e);
+        }
+    }
+
+    private static Constructor<?> externalizableConstructor(Class<?> type) {
+        if (!Externalizable.class.isAssignableFrom(type) || !Modifier.isPublic(type.getModifiers())) {
+            return null;
+        }
+
+        //writeReplace/readResolve 需由 Java 序列化处理
+        for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+            for (String name : Arrays.asList("writeReplace", "readResolve")) {
+                try {
+                    c.getDeclaredMethod(name);
+                    return null;
+                } catch (NoSuchMethodException e) {
+                    //继续查找父类
+                }
+            }
+        }
+
+        try {
+            return type.getConstructor();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    private static ClassLoader classLoader() {
+        ClassLoader loader = Thread.currentThread().getContextClassLoader();
+        return loader != null ? loader : CompactSerializer.class.getClassLoader();
+    }
+
+    /**
+     * 类描述仅写入类 ID 或类名的对象输出流
+     */
+    private class CompactOutputStream extends ObjectOutputStream {
+
+        CompactOutputStream(OutputStream out) throws IOException {
+            super(out);
+        }
+
+        @Override
+        protected void writeStreamHeader() {
+            //流头由标记及版本号代替
+        }
+
+        @Override
+        protected void writeClassDescriptor(ObjectStreamClass desc) throws IOException {
+            writeClass(desc.forClass());
+        }
+
+        void writeClass(Class<?> type) throws IOException {
+            Integer id = classIds.get(type);
+            if (id != null) {
+                writeByte(CLASS_ID);
+                writeInt(id);
+            } else {
+                writeByte(CLASS_NAME);
+                writeUTF(type.getName());
+            }
+        }
+    }
+
+    private class CompactInputStream extends ObjectInputStream {
+
+        CompactInputStream(InputStream in) throws IOException {
+            super(in);
+        }
+
+        @Override
+        protected void readStreamHeader() {
+            //流头由标记及版本号代替
+        }
+
+        @Override
+        protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException {
+            ObjectStreamClass desc = ObjectStreamClass.lookupAny(readClass());
+            if (desc == null) {
+                throw new InvalidClassException("Class descriptor not found");
+            }
+            return desc;
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            Class<?> type = desc.forClass();
+            return type != null ? type : super.resolveClass(desc);
+        }
+
+        Class<?> readClass() throws IOException, ClassNotFoundException {
+            if (readByte() == CLASS_ID) {
+                int id = readInt();
+                Class<?> type = classes.get(id);
+                if (type == null) {
+                    throw new ClassNotFoundException("Unregistered class id " + id);
+                }
+                return type;
+            }
+            return Class.forName(readUTF(), false, classLoader());
+        }
+    }
+
+    /**
+     * 线程内复用的输出缓冲区
+     */
+    private static final class Output extends ByteArrayOutputStream {
+
+        private boolean inUse;
+
+        //该线程上次序列化的字节数
+        private int lastSize = MIN_BUFFER;
+
+        Output() {
+            super(MIN_BUFFER);
+        }
+
+        @Override
+        public synchronized byte[] toByteArray() {
+            lastSize = count;
+            return super.toByteArray();
+        }
+
+        void release() {
+            if (buf.length > MAX_BUFFER) {
+                buf = new byte[Math.max(MIN_BUFFER, Math.min(lastSize, MAX_BUFFER))];
+            }
+            reset();
+            inUse = false;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.ltsoft.jms.util;
+
+import java.util.Arrays;
+
+/**
+ * 消息内容压缩算法，可通过 ServiceLoader 扩展。
+ * <p>
+ * 压缩后的消息在属性中记录算法名称，接收方按名称选择算法解压，因此收发双方均需加载同名的实现。
+ */
+public interface Compressor {
+
+    /**
+     * @return 算法名称，写入消息属性
+     */
+    String getName();
+
+    byte[] compress(byte[] source);
+
+    byte[] decompress(byte[] source);
+
+    /**
+     * 解压数组中的部分内容，默认实现复制后解压，实现类可覆盖以避免复制
+     *
+     * @param source 包含压缩内容的数组
+     * @param offset 压缩内容的起始位置
+     * @param length 压缩内容的字节数
+     * @return 解压后的内容
+     */
+    default byte[] decompress(byte[] source, int offset, int length) {
+        return decompress(Arrays.copyOfRange(source, offset, offset + length));
+    }
+
+}
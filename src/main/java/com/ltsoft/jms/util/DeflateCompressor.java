@@ -0,0 +1,58 @@
+package com.ltsoft.jms.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * 基于 JDK Deflater 的默认压缩算法
+ */
+public class DeflateCompressor implements Compressor {
+
+    public static final String NAME = "deflate";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public byte[] compress(byte[] source) {
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            ByteArrayOutputStream bao = new ByteArrayOutputStream(source.length / 2);
+            try (DeflaterOutputStream out = new DeflaterOutputStream(bao, deflater)) {
+                out.write(source);
+            }
+            return bao.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Compress byte array fail.", e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public byte[] decompress(byte[] source) {
+        return decompress(source, 0, source.length);
+    }
+
+    @Override
+    public byte[] decompress(byte[] source, int offset, int length) {
+        try (InputStream in = new InflaterInputStream(new ByteArrayInputStream(source, offset, length))) {
+            ByteArrayOutputStream bao = new ByteArrayOutputStream(length * 4);
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bao.write(buffer, 0, read);
+            }
+            return bao.toByteArray();
+        } catch (IOException e) {
+            throw new RuntimeException("Decompress byte array fail.", e);
+        }
+    }
+}
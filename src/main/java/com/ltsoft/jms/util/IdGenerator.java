@@ -0,0 +1,13 @@
+package com.ltsoft.jms.util;
+
+/**
+ * 消息 ID 生成器，可通过 {@link java.util.ServiceLoader} 替换默认实现
+ */
+public interface IdGenerator {
+
+    /**
+     * @return 新的消息 ID，以 "ID:" 开头
+     */
+    String nextId();
+
+}
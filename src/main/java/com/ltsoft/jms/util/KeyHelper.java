@@ -12,6 +12,20 @@ public class KeyHelper {
     private static final String PREFIX = "JMS";
     private static final String CONSUMERS = "CONSUMERS";
     private static final String ID_BACKUP = "MSG_ID_BACKUP";
+    private static final String LOG = "MSG_LOG";
+    private static final String LOG_SEQ = "MSG_LOG_SEQ";
+    private static final String LOG_NOTIFY = "MSG_LOG_NOTIFY";
+    private static final String LOG_CURSOR = "MSG_LOG_CURSOR";
+    private static final String LOG_ACKED = "MSG_LOG_ACKED";
+    private static final String LOG_SEEN = "MSG_LOG_SEEN";
+    private static final String STREAM = "MSG_STREAM";
+    private static final String ENVELOPE_ACKED = "ENVELOPE_ACKED";
+    private static final String PRIORITY = "PRIORITY";
+    private static final String PRIORITY_SERVED = "PRIORITY_SERVED";
+    private static final String NOTIFY = "NOTIFY";
+    private static final String DELAYED = "DELAYED";
+    private static final String EXPIRY = "EXPIRY";
+    private static final String CHUNK = "CHUNK";
 
     /**
      * 消息目标地址
@@ -45,6 +59,69 @@ public class KeyHelper {
         return String.join(DELIMITER, PREFIX, destination.toString(), messageId, "BODY");
     }
 
+    /**
+     * 消息内容分块地址
+     *
+     * @param destination 消息目标
+     * @param messageId   消息ID
+     * @param index       分块序号
+     * @return 消息内容分块 Key
+     */
+    public static String getDestinationChunkKey(Destination destination, String messageId, int index) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), messageId, CHUNK, String.valueOf(index));
+    }
+
+    /**
+     * 优先级消息列表，默认优先级的消息仍写入消息目标
+     *
+     * @param destination 消息目标
+     * @param priority    消息优先级
+     * @return 优先级消息列表 Key
+     */
+    public static String getDestinationPriorityKey(Destination destination, int priority) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), PRIORITY, String.valueOf(priority));
+    }
+
+    /**
+     * 各优先级消息列表最近一次出列的时间
+     *
+     * @param destination 消息目标
+     * @return 出列时间 Key
+     */
+    public static String getDestinationPriorityServedKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), PRIORITY_SERVED);
+    }
+
+    /**
+     * 延迟消息集合，按投递时间排序
+     *
+     * @param destination 消息目标
+     * @return 延迟消息集合 Key
+     */
+    public static String getDestinationDelayedKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), DELAYED);
+    }
+
+    /**
+     * 延迟消息的过期索引，按过期时间排序
+     *
+     * @param destination 消息目标
+     * @return 消息过期索引 Key
+     */
+    public static String getDestinationExpiryKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), EXPIRY);
+    }
+
+    /**
+     * 消息目标的新消息通知频道
+     *
+     * @param destination 消息目标
+     * @return 新消息通知频道
+     */
+    public static String getDestinationNotifyKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), NOTIFY);
+    }
+
     /**
      * 消息目标消费者列表地址
      *
@@ -87,4 +164,87 @@ public class KeyHelper {
     public static String getDestinationBackupKey(Destination destination, String clientId) {
         return String.join(DELIMITER, PREFIX, destination.toString(), ID_BACKUP, clientId);
     }
+
+    /**
+     * 消息日志，按序号记录 Topic 的所有消息 ID
+     *
+     * @param destination 消息目标
+     * @return 消息日志 Key
+     */
+    public static String getTopicLogKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), LOG);
+    }
+
+    /**
+     * 消息日志序号
+     *
+     * @param destination 消息目标
+     * @return 消息日志序号 Key
+     */
+    public static String getTopicLogSeqKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), LOG_SEQ);
+    }
+
+    /**
+     * 消息日志的新消息通知频道
+     *
+     * @param destination 消息目标
+     * @return 新消息通知频道
+     */
+    public static String getTopicLogNotifyKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), LOG_NOTIFY);
+    }
+
+    /**
+     * 订阅者的消息日志投递游标
+     *
+     * @param destination 消息目标
+     * @return 投递游标 Key
+     */
+    public static String getTopicLogCursorKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), LOG_CURSOR);
+    }
+
+    /**
+     * 订阅者的消息日志确认游标
+     *
+     * @param destination 消息目标
+     * @return 确认游标 Key
+     */
+    public static String getTopicLogAckedKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), LOG_ACKED);
+    }
+
+    /**
+     * 订阅者最近一次心跳的时间，用于清理长期未出现的订阅者游标
+     *
+     * @param destination 消息目标
+     * @return 心跳时间 Key
+     */
+    public static String getTopicLogSeenKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), LOG_SEEN);
+    }
+
+    /**
+     * 消息流，消息属性及内容直接保存在流中
+     *
+     * @param destination 消息目标
+     * @return 消息流 Key
+     */
+    public static String getDestinationStreamKey(Destination destination) {
+        return String.join(DELIMITER, PREFIX, destination.toString(), STREAM);
+    }
+
+    /**
+     * 信封中已确认的消息 ID 集合
+     *
+     * @param destination 消息目标
+     * @param envelopeId  信封 ID
+     * @param clientId    订阅者 ID，Queue 为 null
+     * @return 已确认消息集合 Key
+     */
+    public static String getEnvelopeAckedKey(Destination destination, String envelopeId, String clientId) {
+        String key = String.join(DELIMITER, PREFIX, destination.toString(), envelopeId, ENVELOPE_ACKED);
+        return clientId == null ? key : String.join(DELIMITER, key, clientId);
+    }
 }
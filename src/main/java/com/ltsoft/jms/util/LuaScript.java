@@ -0,0 +1,239 @@
+package com.ltsoft.jms.util;
+
+import org.redisson.api.RBatch;
+import org.redisson.api.RFuture;
+import org.redisson.api.RScript;
+import org.redisson.api.RScriptAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Redis Lua 脚本。
+ * <p>
+ * 脚本通过 EVALSHA 执行，Redis 中缺失脚本时回退为 EVAL，参数及返回值均使用 byte[] 编码。
+ */
+public final class LuaScript {
+
+    /**
+     * 持久化消息入列
+     */
+    public static final LuaScript ENQUEUE = new LuaScript("enqueue");
+
+    /**
+     * 内联消息入列
+     */
+    public static final LuaScript ENQUEUE_INLINE = new LuaScript("enqueue-inline");
+
+    /**
+     * 延迟消息写入延迟消息集合
+     */
+    public static final LuaScript DELAY_ENQUEUE = new LuaScript("delay-enqueue");
+
+    /**
+     * 到期的延迟消息移入消息列表
+     */
+    public static final LuaScript DELAY_MOVE = new LuaScript("delay-move");
+
+    /**
+     * 按优先级读取 Queue 中的消息
+     */
+    public static final LuaScript PRIORITY_POLL = new LuaScript("priority-poll");
+
+    /**
+     * 读取消息列表中的消息，跳过已过期的消息
+     */
+    public static final LuaScript POLL = new LuaScript("poll");
+
+    /**
+     * 从消息列表中清除已过期的消息
+     */
+    public static final LuaScript EXPIRE_SWEEP = new LuaScript("expire-sweep");
+
+    /**
+     * 消息写入 Topic 消息日志
+     */
+    public static final LuaScript LOG_APPEND = new LuaScript("log-append");
+
+    /**
+     * 注册消息日志的订阅者
+     */
+    public static final LuaScript LOG_REGISTER = new LuaScript("log-register");
+
+    /**
+     * 读取消息日志中的下一条消息
+     */
+    public static final LuaScript LOG_POLL = new LuaScript("log-poll");
+
+    /**
+     * 推进消息日志的确认游标
+     */
+    public static final LuaScript LOG_ACK = new LuaScript("log-ack");
+
+    /**
+     * 回退消息日志的投递游标
+     */
+    public static final LuaScript LOG_REWIND = new LuaScript("log-rewind");
+
+    /**
+     * 回收消息日志中已被确认的消息
+     */
+    public static final LuaScript LOG_RECLAIM = new LuaScript("log-reclaim");
+
+    /**
+     * 删除消息日志订阅者的游标
+     */
+    public static final LuaScript LOG_UNSUBSCRIBE = new LuaScript("log-unsubscribe");
+
+    /**
+     * 消息写入 Topic 消息流
+     */
+    public static final LuaScript STREAM_APPEND = new LuaScript("stream-append");
+
+    /**
+     * 删除消息流中已被所有订阅者确认的消息
+     */
+    public static final LuaScript STREAM_TRIM = new LuaScript("stream-trim");
+
+    /**
+     * 删除 Queue 消息流中尚未投递且已过期的消息
+     */
+    public static final LuaScript STREAM_EXPIRE = new LuaScript("stream-expire");
+
+    private final String name;
+    private final String source;
+    private final String sha;
+
+    //已加入 SCRIPT LOAD 指令的批处理
+    private final Set<RBatch> batches = Collections.newSetFromMap(Collections.synchronizedMap(new WeakHashMap<>()));
+
+    private LuaScript(String name) {
+        this.name = name;
+        this.source = readSource(name);
+        this.sha = sha1(source);
+    }
+
+    private static String readSource(String name) {
+        try (InputStream is = LuaScript.class.getResourceAsStream("/lua/" + name + ".lua");
+             ByteArrayOutputStream os = new ByteArrayOutputStream()) {
+            byte[] buffer = new byte[1024];
+            int len;
+            while ((len = is.read(buffer)) != -1) {
+                os.write(buffer, 0, len);
+            }
+            return new String(os.toByteArray(), StandardCharsets.UTF_8);
+        } catch (IOException | NullPointerException e) {
+            throw new IllegalStateException(String.format("Read lua script '%s' fail.", name), e);
+        }
+    }
+
+    private static String sha1(String source) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+            StringBuilder builder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                builder.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return builder.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static boolean isNoScript(Throwable e) {
+        return e != null && e.getMessage() != null && e.getMessage().contains("NOSCRIPT");
+    }
+
+    /**
+     * 执行脚本，Redis 中缺失脚本时自动回退为 EVAL
+     *
+     * @param client     Redisson 客户端
+     * @param returnType 返回值类型
+     * @param keys       脚本 KEYS
+     * @param values     脚本 ARGV，需为 byte[]
+     * @param <R>        返回值类型
+     * @return 脚本执行结果
+     */
+    public <R> CompletableFuture<R> evalAsync(RedissonClient client, RScript.ReturnType returnType, List<Object> keys, Object... values) {
+        RScript script = client.getScript(ByteArrayCodec.INSTANCE);
+        CompletableFuture<R> result = new CompletableFuture<>();
+
+        script.<R>evalShaAsync(RScript.Mode.READ_WRITE, sha, returnType, keys, values).onComplete((value, e) -> {
+            if (e == null) {
+                result.complete(value);
+            } else if (isNoScript(e)) {
+                script.<R>evalAsync(RScript.Mode.READ_WRITE, source, returnType, keys, values).onComplete((retry, error) -> {
+                    if (error == null) {
+                        result.complete(retry);
+                    } else {
+                        result.completeExceptionally(error);
+                    }
+                });
+            } else {
+                result.completeExceptionally(e);
+            }
+        });
+
+        return result;
+    }
+
+    /**
+     * 同步执行脚本，Redis 中缺失脚本时自动回退为 EVAL
+     *
+     * @param client     Redisson 客户端
+     * @param returnType 返回值类型
+     * @param keys       脚本 KEYS
+     * @param values     脚本 ARGV，需为 byte[]
+     * @param <R>        返回值类型
+     * @return 脚本执行结果
+     */
+    public <R> R eval(RedissonClient client, RScript.ReturnType returnType, List<Object> keys, Object... values) {
+        try {
+            return this.<R>evalAsync(client, returnType, keys, values).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * 在批处理中执行脚本。批处理中无法回退为 EVAL，因此脚本首次加入批处理时在 EVALSHA 之前加入 SCRIPT LOAD 指令，
+     * 两者经同一连接按序执行，脚本缓存被清空或主从切换后仍可执行，且不会阻塞调用线程。
+     *
+     * @param batch      Redis 批处理
+     * @param returnType 返回值类型
+     * @param keys       脚本 KEYS
+     * @param values     脚本 ARGV，需为 byte[]
+     * @param <R>        返回值类型
+     * @return 脚本执行结果，批处理执行后可用
+     */
+    public <R> RFuture<R> evalAsync(RBatch batch, RScript.ReturnType returnType, List<Object> keys, Object... values) {
+        RScriptAsync script = batch.getScript(ByteArrayCodec.INSTANCE);
+        if (batches.add(batch)) {
+            script.scriptLoadAsync(source);
+        }
+        return script.evalShaAsync(RScript.Mode.READ_WRITE, sha, returnType, keys, values);
+    }
+
+    @Override
+    public String toString() {
+        return "LuaScript{" +
+                "name='" + name + '\'' +
+                ", sha='" + sha + '\'' +
+                '}';
+    }
+}
@@ -1,49 +1,175 @@
 package com.ltsoft.jms.util;
 
 import javax.jms.MessageFormatRuntimeException;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.Optional;
 import java.util.Set;
+import java.util.function.BiConsumer;
 import java.util.function.Supplier;
 
 /**
- * 消息属性
+ * 消息属性。
+ * <p>
+ * 属性保存在并列的名称、类型及值数组中，基本类型的值以 long 保存而不装箱，其余值保存为对象。
+ * 合并至空的消息属性时双方共享数组，任一方修改前复制，因此生产者的属性无需逐条复制至每条消息。
  */
 public class MessageProperty {
 
-    protected final HashMap<String, Object> properties = new HashMap<>();
+    //值保存为对象，包括 String、null 及子类保存的其他对象
+    private static final byte OBJECT = 0;
+    private static final byte BOOLEAN = 1;
+    private static final byte BYTE = 2;
+    private static final byte SHORT = 3;
+    private static final byte CHAR = 4;
+    private static final byte INT = 5;
+    private static final byte LONG = 6;
+    private static final byte FLOAT = 7;
+    private static final byte DOUBLE = 8;
+
+    private static final int INITIAL_CAPACITY = 8;
+
+    private Slots slots = new Slots(0);
+
+    //数组是否与其他消息属性共享，共享时修改前需复制
+    private boolean shared;
 
     public void clearProperties() {
-        properties.clear();
+        slots = new Slots(0);
+        shared = false;
     }
 
     public boolean propertyExists(String name) {
-        return properties.containsKey(name);
+        return indexOf(name) >= 0;
+    }
+
+    /**
+     * 查找属性，子类可在读取前处理属性值
+     *
+     * @param name 属性名称
+     * @return 属性位置，不存在时为 -1
+     */
+    protected int lookup(String name) {
+        return indexOf(name);
+    }
+
+    private int indexOf(String name) {
+        Slots current = slots;
+        for (int i = 0; i < current.size; i++) {
+            if (current.names[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param index 属性位置
+     * @return 以对象保存的属性值，基本类型的属性为 null
+     */
+    protected Object objectAt(int index) {
+        return slots.objects[index];
+    }
+
+    protected Object getValue(String name) {
+        int index = lookup(name);
+        return index >= 0 ? valueAt(index) : null;
+    }
+
+    private Object valueAt(int index) {
+        long value = slots.values[index];
+        switch (slots.types[index]) {
+            case BOOLEAN:
+                return value != 0;
+            case BYTE:
+                return (byte) value;
+            case SHORT:
+                return (short) value;
+            case CHAR:
+                return (char) value;
+            case INT:
+                return (int) value;
+            case LONG:
+                return value;
+            case FLOAT:
+                return Float.intBitsToFloat((int) value);
+            case DOUBLE:
+                return Double.longBitsToDouble(value);
+            default:
+                return slots.objects[index];
+        }
     }
 
     protected <T> Optional<T> getProperty(String name, Class<T> type) {
         try {
-            return Optional.ofNullable(properties.get(name))
+            return Optional.ofNullable(getValue(name))
                     .map(val -> TypeConversionSupport.convert(val, type));
         } catch (Exception e) {
-            throw new MessageFormatRuntimeException(String.format("Get property %s fail：%s", name, e.getMessage()));
+            throw formatException(name, e);
         }
     }
 
-    public boolean getBooleanProperty(String name) {
-        return getProperty(name, Boolean.class).orElse(false);
+    private static MessageFormatRuntimeException formatException(String name, Exception e) {
+        return new MessageFormatRuntimeException(String.format("Get property %s fail：%s", name, e.getMessage()));
     }
 
     private Supplier<NumberFormatException> numberFormatException(String name) {
         return () -> new NumberFormatException("property " + name + " is null");
     }
 
+    //基本类型的属性值直接读取，类型不同时按转换表转换
+
+    private int requireIndex(String name) {
+        int index = lookup(name);
+        if (index < 0 || (slots.types[index] == OBJECT && slots.objects[index] == null)) {
+            throw numberFormatException(name).get();
+        }
+        return index;
+    }
+
+    public boolean getBooleanProperty(String name) {
+        int index = lookup(name);
+        if (index < 0) {
+            return false;
+        } else if (slots.types[index] == BOOLEAN) {
+            return slots.values[index] != 0;
+        }
+
+        Object value = valueAt(index);
+        try {
+            return value != null && TypeConversionSupport.toBoolean(value);
+        } catch (Exception e) {
+            throw formatException(name, e);
+        }
+    }
+
     public byte getByteProperty(String name) {
-        return getProperty(name, Byte.class).orElseThrow(numberFormatException(name));
+        int index = requireIndex(name);
+        if (slots.types[index] == BYTE) {
+            return (byte) slots.values[index];
+        }
+
+        try {
+            return TypeConversionSupport.toByte(valueAt(index));
+        } catch (Exception e) {
+            throw formatException(name, e);
+        }
     }
 
     public short getShortProperty(String name) {
-        return getProperty(name, Short.class).orElseThrow(numberFormatException(name));
+        int index = requireIndex(name);
+        switch (slots.types[index]) {
+            case BYTE:
+            case SHORT:
+                return (short) slots.values[index];
+            default:
+                try {
+                    return TypeConversionSupport.toShort(valueAt(index));
+                } catch (Exception e) {
+                    throw formatException(name, e);
+                }
+        }
     }
 
     public char getCharacter(String name) {
@@ -51,19 +177,65 @@ public class MessageProperty {
     }
 
     public int getIntProperty(String name) {
-        return getProperty(name, Integer.class).orElseThrow(numberFormatException(name));
+        int index = requireIndex(name);
+        switch (slots.types[index]) {
+            case BYTE:
+            case SHORT:
+            case INT:
+                return (int) slots.values[index];
+            default:
+                try {
+                    return TypeConversionSupport.toInt(valueAt(index));
+                } catch (Exception e) {
+                    throw formatException(name, e);
+                }
+        }
     }
 
     public long getLongProperty(String name) {
-        return getProperty(name, Long.class).orElseThrow(numberFormatException(name));
+        int index = requireIndex(name);
+        switch (slots.types[index]) {
+            case BYTE:
+            case SHORT:
+            case INT:
+            case LONG:
+                return slots.values[index];
+            default:
+                try {
+                    return TypeConversionSupport.toLong(valueAt(index));
+                } catch (Exception e) {
+                    throw formatException(name, e);
+                }
+        }
     }
 
     public float getFloatProperty(String name) {
-        return getProperty(name, Float.class).orElseThrow(numberFormatException(name));
+        int index = requireIndex(name);
+        if (slots.types[index] == FLOAT) {
+            return Float.intBitsToFloat((int) slots.values[index]);
+        }
+
+        try {
+            return TypeConversionSupport.toFloat(valueAt(index));
+        } catch (Exception e) {
+            throw formatException(name, e);
+        }
     }
 
     public double getDoubleProperty(String name) {
-        return getProperty(name, Double.class).orElseThrow(numberFormatException(name));
+        int index = requireIndex(name);
+        switch (slots.types[index]) {
+            case FLOAT:
+                return Float.intBitsToFloat((int) slots.values[index]);
+            case DOUBLE:
+                return Double.longBitsToDouble(slots.values[index]);
+            default:
+                try {
+                    return TypeConversionSupport.toDouble(valueAt(index));
+                } catch (Exception e) {
+                    throw formatException(name, e);
+                }
+        }
     }
 
     public String getStringProperty(String name) {
@@ -75,7 +247,8 @@ public class MessageProperty {
     }
 
     public Set<String> getPropertyNames() {
-        return properties.keySet();
+        Slots current = slots;
+        return new LinkedHashSet<>(Arrays.asList(current.names).subList(0, current.size));
     }
 
     private static void checkValidObject(Object value) {
@@ -97,15 +270,173 @@ public class MessageProperty {
 
     public void setProperty(String name, Object value) {
         checkValidObject(value);
-        properties.put(name, value);
+        putValue(name, value);
+    }
+
+    public void setBooleanProperty(String name, boolean value) {
+        put(name, BOOLEAN, value ? 1 : 0, null);
+    }
+
+    public void setByteProperty(String name, byte value) {
+        put(name, BYTE, value, null);
+    }
+
+    public void setShortProperty(String name, short value) {
+        put(name, SHORT, value, null);
+    }
+
+    public void setCharProperty(String name, char value) {
+        put(name, CHAR, value, null);
+    }
+
+    public void setIntProperty(String name, int value) {
+        put(name, INT, value, null);
+    }
+
+    public void setLongProperty(String name, long value) {
+        put(name, LONG, value, null);
+    }
+
+    public void setFloatProperty(String name, float value) {
+        put(name, FLOAT, Float.floatToRawIntBits(value), null);
+    }
+
+    public void setDoubleProperty(String name, double value) {
+        put(name, DOUBLE, Double.doubleToRawLongBits(value), null);
+    }
+
+    /**
+     * 保存属性值，不校验类型。基本类型的包装对象按基本类型保存
+     *
+     * @param name  属性名称
+     * @param value 属性值
+     */
+    protected void putValue(String name, Object value) {
+        if (value instanceof Boolean) {
+            setBooleanProperty(name, (Boolean) value);
+        } else if (value instanceof Byte) {
+            setByteProperty(name, (Byte) value);
+        } else if (value instanceof Short) {
+            setShortProperty(name, (Short) value);
+        } else if (value instanceof Character) {
+            setCharProperty(name, (Character) value);
+        } else if (value instanceof Integer) {
+            setIntProperty(name, (Integer) value);
+        } else if (value instanceof Long) {
+            setLongProperty(name, (Long) value);
+        } else if (value instanceof Float) {
+            setFloatProperty(name, (Float) value);
+        } else if (value instanceof Double) {
+            setDoubleProperty(name, (Double) value);
+        } else {
+            put(name, OBJECT, 0, value);
+        }
+    }
+
+    private void put(String name, byte type, long value, Object object) {
+        int index = indexOf(name);
+        if (shared) {
+            slots = slots.copy(index < 0 ? slots.size + 1 : slots.size);
+            shared = false;
+        }
+
+        Slots current = slots;
+        if (index < 0) {
+            if (current.size == current.names.length) {
+                current.grow(Math.max(INITIAL_CAPACITY, current.size * 2));
+            }
+            index = current.size++;
+            current.names[index] = name;
+        }
+        current.types[index] = type;
+        current.values[index] = value;
+        current.objects[index] = object;
     }
 
     public void mergeProperty(MessageProperty props) {
-        properties.putAll(props.properties);
+        Slots source = props.slots;
+        if (source.size == 0) {
+            return;
+        }
+
+        if (slots.size == 0) {
+            //共享数组，任一方修改前复制
+            slots = source;
+            shared = true;
+            props.shared = true;
+            return;
+        }
+
+        for (int i = 0; i < source.size; i++) {
+            put(source.names[i], source.types[i], source.values[i], source.objects[i]);
+        }
+    }
+
+    /**
+     * @return 以 Map 表示的属性，基本类型的值装箱
+     */
+    protected HashMap<String, Object> toMap() {
+        HashMap<String, Object> map = new HashMap<>();
+        forEachValue(map::put);
+        return map;
+    }
+
+    /**
+     * 按写入顺序遍历属性，基本类型的值装箱
+     *
+     * @param action 属性处理
+     */
+    protected void forEachValue(BiConsumer<String, Object> action) {
+        for (int i = 0; i < slots.size; i++) {
+            action.accept(slots.names[i], valueAt(i));
+        }
     }
 
     @Override
     public String toString() {
-        return properties.toString();
+        StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < slots.size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(slots.names[i]).append('=').append(valueAt(i));
+        }
+        return builder.append('}').toString();
+    }
+
+    /**
+     * 并列保存的属性名称、类型及值
+     */
+    private static final class Slots {
+
+        private String[] names;
+        private byte[] types;
+        private long[] values;
+        private Object[] objects;
+        private int size;
+
+        Slots(int capacity) {
+            names = new String[capacity];
+            types = new byte[capacity];
+            values = new long[capacity];
+            objects = new Object[capacity];
+        }
+
+        void grow(int capacity) {
+            names = Arrays.copyOf(names, capacity);
+            types = Arrays.copyOf(types, capacity);
+            values = Arrays.copyOf(values, capacity);
+            objects = Arrays.copyOf(objects, capacity);
+        }
+
+        Slots copy(int capacity) {
+            Slots copy = new Slots(0);
+            copy.names = Arrays.copyOf(names, capacity);
+            copy.types = Arrays.copyOf(types, capacity);
+            copy.values = Arrays.copyOf(values, capacity);
+            copy.objects = Arrays.copyOf(objects, capacity);
+            copy.size = size;
+            return copy;
+        }
     }
 }
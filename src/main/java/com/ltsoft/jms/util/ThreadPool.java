@@ -15,6 +15,8 @@ public final class ThreadPool {
 
     private final ScheduledExecutorService scheduledPool;
 
+    private final ExecutorService callbackPool;
+
     public ThreadPool(JmsConfig jmsConfig) {
         if (jmsConfig.getCacheThread() > 0) {
             this.cachedPool = Executors.newFixedThreadPool(jmsConfig.getCacheThread());
@@ -23,6 +25,7 @@ public final class ThreadPool {
         }
 
         this.scheduledPool = Executors.newScheduledThreadPool(jmsConfig.getScheduledThread());
+        this.callbackPool = Executors.newFixedThreadPool(jmsConfig.getCallbackThread());
     }
 
     public ExecutorService cachedPool() {
@@ -33,8 +36,13 @@ public final class ThreadPool {
         return scheduledPool;
     }
 
+    public ExecutorService callbackPool() {
+        return callbackPool;
+    }
+
     public void shutdown() {
         cachedPool.shutdown();
+        callbackPool.shutdown();
     }
 
 }
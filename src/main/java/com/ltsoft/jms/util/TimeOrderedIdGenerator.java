@@ -0,0 +1,200 @@
+package com.ltsoft.jms.util;
+
+import java.lang.ref.WeakReference;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * 按时间排序的消息 ID 生成器，默认的消息 ID 生成器。
+ * <p>
+ * ID 由 128 位组成：48 位毫秒时间戳、16 位线程编号、32 位节点 ID 及 32 位线程内计数器，
+ * 以按 ASCII 顺序排列的 64 进制字符编码为 22 个字符，ID 的字典序即为生成时间的先后顺序。
+ * <p>
+ * 每个线程独立维护计数器，生成 ID 时无需线程间同步。线程首次生成 ID 时占用一个线程编号，线程结束后编号连同计数器由后续线程接续使用，
+ * 因此同时存活的线程不超过 65536 个时 ID 不会重复；超出时新线程的计数器以随机值起始，降低重复的概率。
+ */
+public class TimeOrderedIdGenerator implements IdGenerator {
+
+    private static final String PREFIX = "ID:T";
+
+    private static final int LENGTH = PREFIX.length() + 22;
+
+    //按 ASCII 顺序排列，保证编码后的字典序与数值顺序一致
+    private static final char[] ALPHABET = "-0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZ_abcdefghijklmnopqrstuvwxyz".toCharArray();
+
+    private static final int[] INDEX = new int[128];
+
+    static {
+        Arrays.fill(INDEX, -1);
+        for (int i = 0; i < ALPHABET.length; i++) {
+            INDEX[ALPHABET[i]] = i;
+        }
+    }
+
+    //线程编号数，与 ID 中线程编号的位数对应
+    private static final int THREAD_SLOTS = 1 << 16;
+
+    private final long node;
+
+    //各线程编号的 ID 序列，线程结束后由后续线程接续使用
+    private final Sequence[] slots;
+    private int nextSlot;
+
+    private final Random random = new SecureRandom();
+
+    private final ThreadLocal<Sequence> sequence = ThreadLocal.withInitial(this::acquire);
+
+    public TimeOrderedIdGenerator() {
+        this(new SecureRandom().nextInt());
+    }
+
+    /**
+     * @param node 节点 ID，多个节点应使用不同的节点 ID
+     */
+    public TimeOrderedIdGenerator(int node) {
+        this(node, THREAD_SLOTS);
+    }
+
+    TimeOrderedIdGenerator(int node, int threadSlots) {
+        this.node = (node & 0xffffffffL) << 32;
+        this.slots = new Sequence[threadSlots];
+    }
+
+    /**
+     * 为当前线程分配线程编号，优先复用已结束线程的编号
+     */
+    private synchronized Sequence acquire() {
+        Thread current = Thread.currentThread();
+        for (int i = 0; i < slots.length; i++) {
+            int slot = (nextSlot + i) % slots.length;
+            Sequence seq = slots[slot];
+            if (seq == null) {
+                seq = slots[slot] = new Sequence(slot);
+            } else if (seq.isAlive()) {
+                continue;
+            }
+
+            //接续已结束线程的时间戳与计数器，ID 不会与其重复
+            seq.owner = new WeakReference<>(current);
+            nextSlot = slot + 1;
+            return seq;
+        }
+
+        //所有线程编号均被存活的线程占用
+        Sequence seq = new Sequence(nextSlot++ % slots.length);
+        seq.counter = random.nextInt();
+        return seq;
+    }
+
+    @Override
+    public String nextId() {
+        Sequence seq = sequence.get();
+
+        //时钟回拨时沿用上次的时间戳，保证同一线程内的 ID 递增
+        long millis = Math.max(System.currentTimeMillis(), seq.millis);
+        seq.millis = millis;
+
+        long msb = (millis << 16) | seq.thread;
+        long lsb = node | (seq.counter++ & 0xffffffffL);
+
+        return encode(msb, lsb);
+    }
+
+    private static String encode(long msb, long lsb) {
+        char[] chars = new char[LENGTH];
+        PREFIX.getChars(0, PREFIX.length(), chars, 0);
+
+        int pos = PREFIX.length();
+        for (int offset = 0; offset < 128; offset += 6) {
+            int value;
+            if (offset + 6 <= 64) {
+                value = (int) (msb >>> (58 - offset));
+            } else if (offset < 64) {
+                //跨越高低位
+                int high = 64 - offset;
+                value = (int) ((msb << (6 - high)) | (lsb >>> (58 + high)));
+            } else if (offset + 6 <= 128) {
+                value = (int) (lsb >>> (122 - offset));
+            } else {
+                //末尾不足 6 位，低位补 0
+                value = (int) (lsb << (offset + 6 - 128));
+            }
+            chars[pos++] = ALPHABET[value & 0x3f];
+        }
+
+        return new String(chars);
+    }
+
+    /**
+     * @param messageId 消息 ID
+     * @return 是否为按时间排序的消息 ID
+     */
+    public static boolean isTimeOrdered(String messageId) {
+        return messageId != null && messageId.length() == LENGTH && messageId.startsWith(PREFIX);
+    }
+
+    /**
+     * 还原消息 ID 的 128 位数值
+     *
+     * @param messageId 按时间排序的消息 ID
+     * @return 消息 ID 对应的 UUID
+     */
+    public static UUID decode(String messageId) {
+        if (!isTimeOrdered(messageId)) {
+            throw new IllegalArgumentException("Invalid MessageId!");
+        }
+
+        long msb = 0;
+        long lsb = 0;
+        for (int i = PREFIX.length(); i < LENGTH; i++) {
+            char ch = messageId.charAt(i);
+            int value = ch < INDEX.length ? INDEX[ch] : -1;
+            if (value < 0) {
+                throw new IllegalArgumentException("Invalid MessageId!");
+            }
+
+            if (i < LENGTH - 1) {
+                msb = (msb << 6) | (lsb >>> 58);
+                lsb = (lsb << 6) | value;
+            } else {
+                //末尾字符仅高 2 位有效
+                msb = (msb << 2) | (lsb >>> 62);
+                lsb = (lsb << 2) | (value >>> 4);
+            }
+        }
+
+        return new UUID(msb, lsb);
+    }
+
+    /**
+     * 读取消息 ID 中的时间戳，无需读取消息即可判断消息的生成时间
+     *
+     * @param messageId 按时间排序的消息 ID
+     * @return 毫秒时间戳
+     */
+    public static long timestampOf(String messageId) {
+        return decode(messageId).getMostSignificantBits() >>> 16;
+    }
+
+    /**
+     * 线程内的 ID 序列
+     */
+    private static class Sequence {
+
+        private final long thread;
+        private long millis;
+        private int counter;
+        private WeakReference<Thread> owner;
+
+        Sequence(int thread) {
+            this.thread = thread & 0xffff;
+        }
+
+        boolean isAlive() {
+            Thread thread = owner.get();
+            return thread != null && thread.isAlive();
+        }
+    }
+}
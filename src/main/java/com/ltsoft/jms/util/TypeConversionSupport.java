@@ -16,7 +16,8 @@
  */
 package com.ltsoft.jms.util;
 
-import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.function.Function;
 
 import static java.util.Objects.requireNonNull;
@@ -43,8 +44,8 @@ public final class TypeConversionSupport {
     private TypeConversionSupport() {
     }
 
-    //JMS 基本类型转换
-    private static final HashMap<ConversionKey, Function<?, ?>> CONVERSION_MAP = new HashMap<>();
+    //JMS 基本类型转换，按源类型及目标类型索引，查找时无需创建对象
+    private static final Map<Class<?>, Map<Class<?>, Function<?, ?>>> CONVERSION_MAP = new IdentityHashMap<>();
 
     static {
 
@@ -52,36 +53,49 @@ public final class TypeConversionSupport {
         Function<Number, Long> longConvert = Number::longValue;
 
         //Boolean
-        CONVERSION_MAP.put(new ConversionKey(Boolean.class, String.class), toStringConverter);
+        register(Boolean.class, String.class, toStringConverter);
         //Byte
-        CONVERSION_MAP.put(new ConversionKey(Byte.class, Short.class), (Function<Byte, Short>) Byte::shortValue);
-        CONVERSION_MAP.put(new ConversionKey(Byte.class, Integer.class), (Function<Byte, Integer>) Byte::intValue);
-        CONVERSION_MAP.put(new ConversionKey(Byte.class, Long.class), (Function<Byte, Long>) Byte::longValue);
-        CONVERSION_MAP.put(new ConversionKey(Byte.class, String.class), toStringConverter);
+        register(Byte.class, Short.class, (Function<Byte, Short>) Byte::shortValue);
+        register(Byte.class, Integer.class, (Function<Byte, Integer>) Byte::intValue);
+        register(Byte.class, Long.class, (Function<Byte, Long>) Byte::longValue);
+        register(Byte.class, String.class, toStringConverter);
         //Short
-        CONVERSION_MAP.put(new ConversionKey(Short.class, Integer.class), (Function<Number, Integer>) Number::intValue);
-        CONVERSION_MAP.put(new ConversionKey(Short.class, Long.class), longConvert);
-        CONVERSION_MAP.put(new ConversionKey(Short.class, String.class), toStringConverter);
+        register(Short.class, Integer.class, (Function<Number, Integer>) Number::intValue);
+        register(Short.class, Long.class, longConvert);
+        register(Short.class, String.class, toStringConverter);
         //Character
-        CONVERSION_MAP.put(new ConversionKey(Character.class, String.class), toStringConverter);
+        register(Character.class, String.class, toStringConverter);
         //Integer
-        CONVERSION_MAP.put(new ConversionKey(Integer.class, Long.class), longConvert);
-        CONVERSION_MAP.put(new ConversionKey(Integer.class, String.class), toStringConverter);
+        register(Integer.class, Long.class, longConvert);
+        register(Integer.class, String.class, toStringConverter);
         //Long
-        CONVERSION_MAP.put(new ConversionKey(Long.class, String.class), toStringConverter);
+        register(Long.class, String.class, toStringConverter);
         //Float
-        CONVERSION_MAP.put(new ConversionKey(Float.class, Double.class), (Function<Number, Double>) Number::doubleValue);
-        CONVERSION_MAP.put(new ConversionKey(Float.class, String.class), toStringConverter);
+        register(Float.class, Double.class, (Function<Number, Double>) Number::doubleValue);
+        register(Float.class, String.class, toStringConverter);
         //Double
-        CONVERSION_MAP.put(new ConversionKey(Double.class, String.class), toStringConverter);
+        register(Double.class, String.class, toStringConverter);
         //String
-        CONVERSION_MAP.put(new ConversionKey(String.class, Boolean.class), (Function<String, Boolean>) Boolean::valueOf);
-        CONVERSION_MAP.put(new ConversionKey(String.class, Byte.class), (Function<String, Byte>) Byte::valueOf);
-        CONVERSION_MAP.put(new ConversionKey(String.class, Short.class), (Function<String, Short>) Short::valueOf);
-        CONVERSION_MAP.put(new ConversionKey(String.class, Integer.class), (Function<String, Integer>) Integer::valueOf);
-        CONVERSION_MAP.put(new ConversionKey(String.class, Long.class), (Function<String, Long>) Long::valueOf);
-        CONVERSION_MAP.put(new ConversionKey(String.class, Float.class), (Function<String, Float>) Float::valueOf);
-        CONVERSION_MAP.put(new ConversionKey(String.class, Double.class), (Function<String, Double>) Double::valueOf);
+        register(String.class, Boolean.class, (Function<String, Boolean>) Boolean::valueOf);
+        register(String.class, Byte.class, (Function<String, Byte>) Byte::valueOf);
+        register(String.class, Short.class, (Function<String, Short>) Short::valueOf);
+        register(String.class, Integer.class, (Function<String, Integer>) Integer::valueOf);
+        register(String.class, Long.class, (Function<String, Long>) Long::valueOf);
+        register(String.class, Float.class, (Function<String, Float>) Float::valueOf);
+        register(String.class, Double.class, (Function<String, Double>) Double::valueOf);
+    }
+
+    private static void register(Class<?> fromClass, Class<?> toClass, Function<?, ?> converter) {
+        CONVERSION_MAP.computeIfAbsent(fromClass, key -> new IdentityHashMap<>()).put(toClass, converter);
+    }
+
+    private static Function<?, ?> converter(Class<?> fromClass, Class<?> toClass) {
+        Map<Class<?>, Function<?, ?>> converters = CONVERSION_MAP.get(fromClass);
+        return converters != null ? converters.get(toClass) : null;
+    }
+
+    private static IllegalArgumentException noConverter(Object value, Class<?> toClass) {
+        return new IllegalArgumentException(String.format("No converter for %s to %s", value.getClass().getName(), toClass.getSimpleName()));
     }
 
     /**
@@ -98,9 +112,7 @@ public final class TypeConversionSupport {
             return true;
         }
 
-        Class<?> fromClass = value.getClass();
-
-        return CONVERSION_MAP.containsKey(new ConversionKey(fromClass, toClass));
+        return converter(value.getClass(), toClass) != null;
     }
 
     @SuppressWarnings("unchecked")
@@ -113,13 +125,78 @@ public final class TypeConversionSupport {
             return (T) value;
         }
 
-        Class<?> fromClass = value.getClass();
-
-        Function<Object, T> c = (Function<Object, T>) CONVERSION_MAP.get(new ConversionKey(fromClass, toClass));
+        Function<Object, T> c = (Function<Object, T>) converter(value.getClass(), toClass);
         if (c == null) {
-            throw new IllegalArgumentException(String.format("No converter for %s to %s", fromClass.getName(), toClass.getSimpleName()));
+            throw noConverter(value, toClass);
         }
 
         return c.apply(value);
     }
+
+    /*
+     * 以下为基本类型的快速转换，规则与转换表一致，结果不装箱。value 不可为 null
+     */
+
+    public static boolean toBoolean(Object value) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof String) {
+            return Boolean.parseBoolean((String) value);
+        }
+        throw noConverter(value, Boolean.class);
+    }
+
+    public static byte toByte(Object value) {
+        if (value instanceof Byte) {
+            return (Byte) value;
+        } else if (value instanceof String) {
+            return Byte.parseByte((String) value);
+        }
+        throw noConverter(value, Byte.class);
+    }
+
+    public static short toShort(Object value) {
+        if (value instanceof Short || value instanceof Byte) {
+            return ((Number) value).shortValue();
+        } else if (value instanceof String) {
+            return Short.parseShort((String) value);
+        }
+        throw noConverter(value, Short.class);
+    }
+
+    public static int toInt(Object value) {
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).intValue();
+        } else if (value instanceof String) {
+            return Integer.parseInt((String) value);
+        }
+        throw noConverter(value, Integer.class);
+    }
+
+    public static long toLong(Object value) {
+        if (value instanceof Long || value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        } else if (value instanceof String) {
+            return Long.parseLong((String) value);
+        }
+        throw noConverter(value, Long.class);
+    }
+
+    public static float toFloat(Object value) {
+        if (value instanceof Float) {
+            return (Float) value;
+        } else if (value instanceof String) {
+            return Float.parseFloat((String) value);
+        }
+        throw noConverter(value, Float.class);
+    }
+
+    public static double toDouble(Object value) {
+        if (value instanceof Double || value instanceof Float) {
+            return ((Number) value).doubleValue();
+        } else if (value instanceof String) {
+            return Double.parseDouble((String) value);
+        }
+        throw noConverter(value, Double.class);
+    }
 }
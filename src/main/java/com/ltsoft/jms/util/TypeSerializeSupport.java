@@ -4,10 +4,12 @@ import com.ltsoft.jms.destination.*;
 
 import javax.jms.Destination;
 import java.io.Serializable;
-import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
 import java.nio.charset.Charset;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.function.Function;
 
@@ -25,8 +27,9 @@ public final class TypeSerializeSupport {
     private static final byte[] TRUE = {(byte) 0xc3};
     private static final byte[] FALSE = {(byte) 0xc2};
 
-    //JMS 序列化转换
-    private static final HashMap<ConversionKey, Function<?, ?>> CONVERSION_MAP = new HashMap<>();
+    //JMS 序列化转换，按类型索引，查找时无需创建对象
+    private static final Map<Class<?>, Function<Object, byte[]>> SERIALIZERS = new IdentityHashMap<>();
+    private static final Map<Class<?>, Reader> DESERIALIZERS = new IdentityHashMap<>();
 
     private static Serializer serializer;
 
@@ -43,42 +46,48 @@ public final class TypeSerializeSupport {
             serializer = new DefaultSerializer();
         }
 
-        //序列化
-        CONVERSION_MAP.put(new ConversionKey(Boolean.class, byte[].class), (Boolean value) -> value ? TRUE : FALSE);
-        CONVERSION_MAP.put(new ConversionKey(Byte.class, byte[].class), (Byte value) -> new byte[]{value});
-        CONVERSION_MAP.put(new ConversionKey(Short.class, byte[].class), (Short value) -> ByteBuffer.allocate(4).putShort(value).array());
-        CONVERSION_MAP.put(new ConversionKey(Character.class, byte[].class), (Character value) -> ByteBuffer.allocate(4).putChar(value).array());
-        CONVERSION_MAP.put(new ConversionKey(Integer.class, byte[].class), (Integer value) -> ByteBuffer.allocate(4).putInt(value).array());
-        CONVERSION_MAP.put(new ConversionKey(Long.class, byte[].class), (Long value) -> ByteBuffer.allocate(8).putLong(value).array());
-        CONVERSION_MAP.put(new ConversionKey(Float.class, byte[].class), (Float value) -> ByteBuffer.allocate(4).putFloat(value).array());
-        CONVERSION_MAP.put(new ConversionKey(Double.class, byte[].class), (Double value) -> ByteBuffer.allocate(8).putDouble(value).array());
-        CONVERSION_MAP.put(new ConversionKey(String.class, byte[].class), (String value) -> value.getBytes(UTF8));
-
-        CONVERSION_MAP.put(new ConversionKey(Serializable.class, byte[].class), serializeConversion);
-
-        Function<Destination, byte[]> destinationConverter = (Destination value) -> value.toString().getBytes(UTF8);
-        CONVERSION_MAP.put(new ConversionKey(JmsQueue.class, byte[].class), destinationConverter);
-        CONVERSION_MAP.put(new ConversionKey(JmsTopic.class, byte[].class), destinationConverter);
-        CONVERSION_MAP.put(new ConversionKey(JmsTemporaryQueue.class, byte[].class), destinationConverter);
-        CONVERSION_MAP.put(new ConversionKey(JmsTemporaryTopic.class, byte[].class), destinationConverter);
+        //序列化，Short 与 Character 沿用 4 字节的编码
+        SERIALIZERS.put(Boolean.class, value -> (Boolean) value ? TRUE : FALSE);
+        SERIALIZERS.put(Byte.class, value -> new byte[]{(Byte) value});
+        SERIALIZERS.put(Short.class, value -> putShort(new byte[4], (Short) value));
+        SERIALIZERS.put(Character.class, value -> putShort(new byte[4], (short) (char) (Character) value));
+        SERIALIZERS.put(Integer.class, value -> putInt(new byte[4], (Integer) value));
+        SERIALIZERS.put(Long.class, value -> putLong(new byte[8], (Long) value));
+        SERIALIZERS.put(Float.class, value -> putInt(new byte[4], Float.floatToIntBits((Float) value)));
+        SERIALIZERS.put(Double.class, value -> putLong(new byte[8], Double.doubleToLongBits((Double) value)));
+        SERIALIZERS.put(String.class, value -> ((String) value).getBytes(UTF8));
+
+        Function<Object, byte[]> destinationConverter = value -> value.toString().getBytes(UTF8);
+        SERIALIZERS.put(JmsQueue.class, destinationConverter);
+        SERIALIZERS.put(JmsTopic.class, destinationConverter);
+        SERIALIZERS.put(JmsTemporaryQueue.class, destinationConverter);
+        SERIALIZERS.put(JmsTemporaryTopic.class, destinationConverter);
 
         //反序列化
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, Boolean.class), (byte[] value) -> value.length == 1 && value[0] == TRUE[0]);
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, Byte.class), (byte[] value) -> value[0]);
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, Short.class), (byte[] value) -> ByteBuffer.wrap(value).getShort());
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, Character.class), (byte[] value) -> ByteBuffer.wrap(value).getChar());
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, Integer.class), (byte[] value) -> ByteBuffer.wrap(value).getInt());
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, Long.class), (byte[] value) -> ByteBuffer.wrap(value).getLong());
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, Float.class), (byte[] value) -> ByteBuffer.wrap(value).getFloat());
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, Double.class), (byte[] value) -> ByteBuffer.wrap(value).getDouble());
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, String.class), (byte[] value) -> new String(value, UTF8));
-
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, Serializable.class), deserializeConversion);
-
-        CONVERSION_MAP.put(new ConversionKey(byte[].class, Destination.class), (byte[] value) -> JmsDestination.valueOf(new String(value, UTF8)));
+        DESERIALIZERS.put(Boolean.class, (value, offset, length) -> length == 1 && value[offset] == TRUE[0]);
+        DESERIALIZERS.put(Byte.class, (value, offset, length) -> value[require(offset, length, Byte.BYTES)]);
+        DESERIALIZERS.put(Short.class, (value, offset, length) -> getShort(value, require(offset, length, Short.BYTES)));
+        DESERIALIZERS.put(Character.class, (value, offset, length) -> (char) getShort(value, require(offset, length, Character.BYTES)));
+        DESERIALIZERS.put(Integer.class, (value, offset, length) -> getInt(value, require(offset, length, Integer.BYTES)));
+        DESERIALIZERS.put(Long.class, (value, offset, length) -> getLong(value, require(offset, length, Long.BYTES)));
+        DESERIALIZERS.put(Float.class, (value, offset, length) -> Float.intBitsToFloat(getInt(value, require(offset, length, Float.BYTES))));
+        DESERIALIZERS.put(Double.class, (value, offset, length) -> Double.longBitsToDouble(getLong(value, require(offset, length, Double.BYTES))));
+        DESERIALIZERS.put(String.class, (value, offset, length) -> new String(value, offset, length, UTF8));
+
+        DESERIALIZERS.put(Serializable.class, (value, offset, length) -> deserializeConversion.apply(copy(value, offset, length)));
+
+        DESERIALIZERS.put(Destination.class, (value, offset, length) -> JmsDestination.valueOf(new String(value, offset, length, UTF8)));
+    }
+
+    /**
+     * 自数组的指定区间读取值
+     */
+    @FunctionalInterface
+    private interface Reader {
+
+        Object read(byte[] value, int offset, int length);
     }
 
-    @SuppressWarnings("unchecked")
     public static byte[] serialize(Object value) {
         if (value == null) {
             return null;
@@ -89,7 +98,7 @@ public final class TypeSerializeSupport {
             return (byte[]) value;
         }
 
-        Function<Object, byte[]> c = (Function<Object, byte[]>) CONVERSION_MAP.get(new ConversionKey(fromClass, byte[].class));
+        Function<Object, byte[]> c = SERIALIZERS.get(fromClass);
         if (c == null) {
             if (value instanceof Serializable) {
                 return serializeConversion.apply(value);
@@ -100,25 +109,96 @@ public final class TypeSerializeSupport {
         return c.apply(value);
     }
 
-    @SuppressWarnings("unchecked")
     public static <T> T deserialize(byte[] value, Class<T> toClass) {
         if (value == null) {
             return null;
         }
+        return deserialize(value, 0, value.length, toClass);
+    }
+
+    /**
+     * 反序列化数组中的部分内容，数值类型直接自原数组读取
+     *
+     * @param value   包含序列化内容的数组
+     * @param offset  序列化内容的起始位置
+     * @param length  序列化内容的字节数
+     * @param toClass 反序列化的类型
+     * @param <T>     反序列化的类型
+     * @return 反序列化的值
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T deserialize(byte[] value, int offset, int length, Class<T> toClass) {
+        if (value == null) {
+            return null;
+        }
 
         if (toClass == byte[].class || toClass == Object.class) {
-            return (T) value;
+            return (T) copy(value, offset, length);
         }
 
-        Function<byte[], T> c = (Function<byte[], T>) CONVERSION_MAP.get(new ConversionKey(byte[].class, toClass));
+        Reader c = DESERIALIZERS.get(toClass);
         if (c == null) {
             if (Serializable.class.isAssignableFrom(toClass)) {
-                return (T) deserializeConversion.apply(value);
+                return (T) deserializeConversion.apply(copy(value, offset, length));
             }
             throw new IllegalArgumentException(String.format("Can not deserialize byte[] to %s", toClass.getName()));
         }
 
-        return c.apply(value);
+        return (T) c.read(value, offset, length);
+    }
+
+    private static byte[] copy(byte[] value, int offset, int length) {
+        if (offset == 0 && length == value.length) {
+            return value;
+        }
+        return Arrays.copyOfRange(value, offset, offset + length);
+    }
+
+    //数值按大端序读写，与 ByteBuffer 的默认字节序一致
+
+    private static int require(int offset, int length, int size) {
+        if (length < size) {
+            throw new BufferUnderflowException();
+        }
+        return offset;
+    }
+
+    private static byte[] putShort(byte[] bytes, short value) {
+        bytes[0] = (byte) (value >> 8);
+        bytes[1] = (byte) value;
+        return bytes;
+    }
+
+    private static byte[] putInt(byte[] bytes, int value) {
+        bytes[0] = (byte) (value >> 24);
+        bytes[1] = (byte) (value >> 16);
+        bytes[2] = (byte) (value >> 8);
+        bytes[3] = (byte) value;
+        return bytes;
+    }
+
+    private static byte[] putLong(byte[] bytes, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[i] = (byte) value;
+            value >>= 8;
+        }
+        return bytes;
+    }
+
+    private static short getShort(byte[] bytes, int offset) {
+        return (short) ((bytes[offset] << 8) | (bytes[offset + 1] & 0xff));
+    }
+
+    private static int getInt(byte[] bytes, int offset) {
+        return (bytes[offset] << 24) | ((bytes[offset + 1] & 0xff) << 16) | ((bytes[offset + 2] & 0xff) << 8) | (bytes[offset + 3] & 0xff);
+    }
+
+    private static long getLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xff);
+        }
+        return value;
     }
 
 }
@@ -0,0 +1,24 @@
+package com.ltsoft.jms.util;
+
+import java.nio.ByteBuffer;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * 基于随机 UUID 的消息 ID 生成器，UUID 经 Base64 编码后长度为 22 个字符
+ */
+public class UuidIdGenerator implements IdGenerator {
+
+    private static final String PREFIX = "ID:";
+
+    @Override
+    public String nextId() {
+        UUID uuid = UUID.randomUUID();
+
+        ByteBuffer bytes = ByteBuffer.allocate(16);
+        bytes.putLong(uuid.getMostSignificantBits());
+        bytes.putLong(uuid.getLeastSignificantBits());
+
+        return PREFIX + Base64.getUrlEncoder().encodeToString(bytes.array()).substring(0, 22);
+    }
+}
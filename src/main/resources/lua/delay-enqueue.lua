@@ -0,0 +1,35 @@
+-- 延迟消息入列，消息 ID 按投递时间写入延迟消息集合，到期后由 delay-move 脚本移入消息列表
+--
+-- KEYS[1]: 消息属性，消息内容保存在 JMSXBody 字段中，分块保存的消息内容以 KEYS[1]:CHUNK:<序号> 为 Key
+-- KEYS[2]: 延迟消息集合
+-- KEYS[3]: 延迟消息的过期索引
+--
+-- ARGV[1]: 消息 ID
+-- ARGV[2]: 消息存活毫秒数，0 表示不过期
+-- ARGV[3]: 是否有消息内容，1 表示有
+-- ARGV[4]: 消息内容
+-- ARGV[5]: 投递时间
+-- ARGV[6]: 消息过期时间
+-- ARGV[7...]: 消息属性，按 field、value 交替排列
+
+local ttl = tonumber(ARGV[2])
+
+redis.call('HMSET', KEYS[1], unpack(ARGV, 7))
+if ARGV[3] == '1' then
+    redis.call('HSET', KEYS[1], 'JMSXBody', ARGV[4])
+end
+
+if ttl > 0 then
+    redis.call('PEXPIRE', KEYS[1], ttl)
+    redis.call('ZADD', KEYS[3], ARGV[6], ARGV[1])
+else
+    -- 分块以保底存活时间先行写入，入列成功后持久保存
+    local chunks = tonumber(redis.call('HGET', KEYS[1], 'JMSXChunks') or '0')
+    for i = 0, chunks - 1 do
+        redis.call('PERSIST', KEYS[1] .. ':CHUNK:' .. i)
+    end
+end
+
+redis.call('ZADD', KEYS[2], ARGV[5], ARGV[1])
+
+return 1
@@ -0,0 +1,58 @@
+-- 将到期的延迟消息移入消息列表，移出与入列在同一个脚本中完成，多个节点同时执行时不会重复投递
+--
+-- KEYS[1]: 延迟消息集合
+-- KEYS[2]: Queue 为目标队列，Topic 为频道订阅者集合
+-- KEYS[3...]: 仅优先级队列使用，按优先级 0 至 9 排列的消息列表
+--
+-- ARGV[1]: 当前毫秒时间
+-- ARGV[2]: 单次最多移动的消息数
+-- ARGV[3]: 订阅者消息队列的 Key 前缀，为空表示目标为 Queue
+-- ARGV[4]: 有效订阅者的最小心跳时间
+-- ARGV[5]: 有效订阅者的最大心跳时间
+-- ARGV[6]: 消息属性的 Key 前缀
+--
+-- 返回：移动的消息数
+
+local due = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+if #due == 0 then
+    return 0
+end
+
+redis.call('ZREM', KEYS[1], unpack(due))
+
+if ARGV[3] == '' then
+    for _, element in ipairs(due) do
+        local list = KEYS[2]
+        -- 优先级队列的消息按消息属性中的优先级写回对应的消息列表，未记录优先级的为默认优先级
+        if #KEYS > 2 and string.byte(element, 1) > 1 then
+            local priority = tonumber(redis.call('HGET', ARGV[6] .. element, 'JMSPriority'))
+            if priority then
+                list = KEYS[3 + math.max(0, math.min(9, priority))]
+            end
+        end
+        redis.call('LPUSH', list, element)
+    end
+    return #due
+end
+
+-- Topic 在到期时解析订阅者并分发
+local consumers = redis.call('ZRANGEBYSCORE', KEYS[2], ARGV[4], ARGV[5])
+for _, element in ipairs(due) do
+    for _, consumer in ipairs(consumers) do
+        redis.call('LPUSH', ARGV[3] .. consumer, element)
+    end
+
+    -- 内联消息及信封以 0x00、0x01 开头，其余为消息 ID，需记录尚未确认的订阅者
+    local first = string.byte(element, 1)
+    if first > 1 and #consumers > 0 then
+        local consumersKey = ARGV[6] .. element .. ':CONSUMERS'
+        redis.call('SADD', consumersKey, unpack(consumers))
+
+        local ttl = redis.call('PTTL', ARGV[6] .. element)
+        if ttl > 0 then
+            redis.call('PEXPIRE', consumersKey, ttl)
+        end
+    end
+end
+
+return #due
@@ -0,0 +1,20 @@
+-- 内联消息入列，编码后的完整消息直接写入消息列表
+--
+-- KEYS[1]: Queue 为目标队列，Topic 为频道订阅者集合
+--
+-- ARGV[1]: 编码后的消息
+-- ARGV[2]: 订阅者消息队列的 Key 前缀，为空表示目标为 Queue
+-- ARGV[3]: 有效订阅者的最小心跳时间
+-- ARGV[4]: 有效订阅者的最大心跳时间
+
+if ARGV[2] == '' then
+    redis.call('LPUSH', KEYS[1], ARGV[1])
+    return 1
+end
+
+local consumers = redis.call('ZRANGEBYSCORE', KEYS[1], ARGV[3], ARGV[4])
+for _, consumer in ipairs(consumers) do
+    redis.call('LPUSH', ARGV[2] .. consumer, ARGV[1])
+end
+
+return #consumers
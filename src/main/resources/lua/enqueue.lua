@@ -0,0 +1,49 @@
+-- 持久化消息入列
+--
+-- KEYS[1]: 消息属性，消息内容保存在 JMSXBody 字段中，分块保存的消息内容以 KEYS[1]:CHUNK:<序号> 为 Key
+-- KEYS[2]: 消息消费者集合，仅 Topic 使用
+-- KEYS[3]: Queue 为目标队列，Topic 为频道订阅者集合
+--
+-- ARGV[1]: 消息 ID
+-- ARGV[2]: 消息存活毫秒数，0 表示不过期
+-- ARGV[3]: 是否有消息内容，1 表示有
+-- ARGV[4]: 消息内容
+-- ARGV[5]: 订阅者消息队列的 Key 前缀，为空表示目标为 Queue
+-- ARGV[6]: 有效订阅者的最小心跳时间
+-- ARGV[7]: 有效订阅者的最大心跳时间
+-- ARGV[8...]: 消息属性，按 field、value 交替排列
+
+local ttl = tonumber(ARGV[2])
+local count = 1
+
+redis.call('HMSET', KEYS[1], unpack(ARGV, 8))
+if ARGV[3] == '1' then
+    redis.call('HSET', KEYS[1], 'JMSXBody', ARGV[4])
+end
+
+if ARGV[5] == '' then
+    redis.call('LPUSH', KEYS[3], ARGV[1])
+else
+    -- 在服务端解析订阅者并分发，发送成本与订阅者数量无关
+    local consumers = redis.call('ZRANGEBYSCORE', KEYS[3], ARGV[6], ARGV[7])
+    for _, consumer in ipairs(consumers) do
+        redis.call('LPUSH', ARGV[5] .. consumer, ARGV[1])
+    end
+    if #consumers > 0 then
+        redis.call('SADD', KEYS[2], unpack(consumers))
+    end
+    count = #consumers
+end
+
+if ttl > 0 then
+    redis.call('PEXPIRE', KEYS[1], ttl)
+    redis.call('PEXPIRE', KEYS[2], ttl)
+else
+    -- 分块以保底存活时间先行写入，入列成功后持久保存
+    local chunks = tonumber(redis.call('HGET', KEYS[1], 'JMSXChunks') or '0')
+    for i = 0, chunks - 1 do
+        redis.call('PERSIST', KEYS[1] .. ':CHUNK:' .. i)
+    end
+end
+
+return count
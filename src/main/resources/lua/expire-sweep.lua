@@ -0,0 +1,48 @@
+-- 清除已过期的延迟消息，并删除消息列表读取端窗口内已过期的消息 ID
+--
+-- 过期索引仅记录延迟消息，到期的索引与延迟消息集合中的消息 ID 一并删除。
+-- 每个消息列表只检查读取端固定数量的元素，删除其中属性已过期的消息 ID，包括位于未过期消息之后的消息 ID；
+-- 待删除的消息 ID 均在窗口内，自读取端查找的开销不超过窗口大小，单次执行的开销与列表长度无关。窗口之外的过期消息 ID 由读取脚本跳过。
+--
+-- KEYS[1]: 延迟消息的过期索引
+-- KEYS[2]: 延迟消息集合
+-- KEYS[3...]: Queue 为消息列表，Topic 为频道订阅者集合
+--
+-- ARGV[1]: 当前毫秒时间
+-- ARGV[2]: 单次最多清除的索引数
+-- ARGV[3]: 订阅者消息队列的 Key 前缀，为空表示目标为 Queue
+-- ARGV[4]: 消息属性的 Key 前缀
+-- ARGV[5]: 每个消息列表最多检查的元素数
+--
+-- 返回：清除的索引数
+
+local expired = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+if #expired > 0 then
+    redis.call('ZREM', KEYS[1], unpack(expired))
+    redis.call('ZREM', KEYS[2], unpack(expired))
+end
+
+local lists = {}
+if ARGV[3] == '' then
+    for i = 3, #KEYS do
+        table.insert(lists, KEYS[i])
+    end
+else
+    -- 包括心跳已超时的订阅者，其消息列表在订阅者恢复前不会被读取
+    for _, consumer in ipairs(redis.call('ZRANGE', KEYS[3], 0, -1)) do
+        table.insert(lists, ARGV[3] .. consumer)
+    end
+end
+
+local window = tonumber(ARGV[5])
+for _, list in ipairs(lists) do
+    -- 消费者自列表末尾读取
+    for _, element in ipairs(redis.call('LRANGE', list, -window, -1)) do
+        -- 设置了存活时间的消息不会内联或打包为信封，以 0x00、0x01 开头的元素不检查
+        if string.byte(element, 1) > 1 and redis.call('EXISTS', ARGV[4] .. element) == 0 then
+            redis.call('LREM', list, -1, element)
+        end
+    end
+end
+
+return #expired
@@ -0,0 +1,15 @@
+-- 推进订阅者的确认游标
+--
+-- KEYS[1]: 确认游标
+--
+-- ARGV[1]: 订阅者 ID
+-- ARGV[2]: 已确认的日志序号
+
+local acked = redis.call('HGET', KEYS[1], ARGV[1])
+if acked and tonumber(acked) >= tonumber(ARGV[2]) then
+    return 0
+end
+
+redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])
+
+return 1
@@ -0,0 +1,36 @@
+-- 消息写入 Topic 消息日志
+--
+-- KEYS[1]: 消息属性，消息内容保存在 JMSXBody 字段中
+-- KEYS[2]: 消息日志
+-- KEYS[3]: 消息日志序号
+-- KEYS[4]: 订阅者的投递游标
+--
+-- ARGV[1]: 消息 ID
+-- ARGV[2]: 消息存活毫秒数，0 表示不过期
+-- ARGV[3]: 是否有消息内容，1 表示有
+-- ARGV[4]: 消息内容
+-- ARGV[5]: 新消息通知频道
+-- ARGV[6...]: 消息属性，按 field、value 交替排列
+
+-- 没有保留游标的订阅者时，消息不会被任何人消费；心跳超时的订阅者仍保留游标，恢复后可收到期间写入的消息
+if redis.call('HLEN', KEYS[4]) == 0 then
+    return 0
+end
+
+local ttl = tonumber(ARGV[2])
+
+redis.call('HMSET', KEYS[1], unpack(ARGV, 6))
+if ARGV[3] == '1' then
+    redis.call('HSET', KEYS[1], 'JMSXBody', ARGV[4])
+end
+
+local seq = redis.call('INCR', KEYS[3])
+redis.call('ZADD', KEYS[2], seq, ARGV[1])
+
+if ttl > 0 then
+    redis.call('PEXPIRE', KEYS[1], ttl)
+end
+
+redis.call('PUBLISH', ARGV[5], seq)
+
+return seq
@@ -0,0 +1,47 @@
+-- 读取订阅者投递游标之后的下一条消息，并推进投递游标
+--
+-- KEYS[1]: 消息日志
+-- KEYS[2]: 投递游标
+--
+-- ARGV[1]: 订阅者 ID
+-- ARGV[2]: 消息属性的 Key 前缀
+-- ARGV[3]: 单次最多检查的日志条数
+--
+-- 返回：消息 ID、日志序号、消息属性（field、value 交替排列，消息内容为 JMSXBody 字段）
+
+local cursor = redis.call('HGET', KEYS[2], ARGV[1])
+if not cursor then
+    return nil
+end
+
+local entries = redis.call('ZRANGEBYSCORE', KEYS[1], '(' .. cursor, '+inf', 'WITHSCORES', 'LIMIT', 0, tonumber(ARGV[3]))
+for i = 1, #entries, 2 do
+    local id = entries[i]
+    local seq = entries[i + 1]
+    redis.call('HSET', KEYS[2], ARGV[1], seq)
+
+    -- 已过期的消息直接跳过
+    local props = redis.call('HGETALL', ARGV[2] .. id)
+    if #props > 0 then
+        local result = { id, seq }
+        local hasBody = false
+        for j = 1, #props do
+            result[#result + 1] = props[j]
+            if j % 2 == 1 and props[j] == 'JMSXBody' then
+                hasBody = true
+            end
+        end
+
+        -- 兼容消息内容单独保存的旧格式
+        if not hasBody then
+            local body = redis.call('GET', ARGV[2] .. id .. ':BODY')
+            if body then
+                result[#result + 1] = 'JMSXBody'
+                result[#result + 1] = body
+            end
+        end
+        return result
+    end
+end
+
+return nil
@@ -0,0 +1,47 @@
+-- 回收所有订阅者均已确认的消息
+--
+-- KEYS[1]: 消息日志
+-- KEYS[2]: 投递游标
+-- KEYS[3]: 确认游标
+-- KEYS[4]: 订阅者最近心跳时间
+--
+-- ARGV[1]: 当前时间
+-- ARGV[2]: 保留游标的最小心跳时间，更早心跳的订阅者游标将被删除
+-- ARGV[3]: 消息属性的 Key 前缀
+-- ARGV[4]: 单次最多回收的消息数
+
+local min
+local acked = redis.call('HGETALL', KEYS[3])
+for i = 1, #acked, 2 do
+    local consumer = acked[i]
+    local seen = redis.call('HGET', KEYS[4], consumer)
+    if seen == false then
+        -- 未记录心跳时间的游标自此开始计算保留时间
+        redis.call('HSET', KEYS[4], consumer, ARGV[1])
+        seen = ARGV[1]
+    end
+
+    if tonumber(seen) < tonumber(ARGV[2]) then
+        -- 订阅者超过保留时间未出现，不再阻止消息回收
+        redis.call('HDEL', KEYS[2], consumer)
+        redis.call('HDEL', KEYS[3], consumer)
+        redis.call('HDEL', KEYS[4], consumer)
+    else
+        -- 心跳超时的订阅者仍保留游标，恢复后继续消费未确认的消息
+        local seq = tonumber(acked[i + 1])
+        if min == nil or seq < min then
+            min = seq
+        end
+    end
+end
+
+local entries = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', min or '+inf', 'LIMIT', 0, tonumber(ARGV[4]))
+for _, id in ipairs(entries) do
+    -- 同时删除旧格式中单独保存的消息内容
+    redis.call('DEL', ARGV[3] .. id, ARGV[3] .. id .. ':BODY')
+end
+if #entries > 0 then
+    redis.call('ZREM', KEYS[1], unpack(entries))
+end
+
+return #entries
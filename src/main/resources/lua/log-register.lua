@@ -0,0 +1,17 @@
+-- 注册消息日志的订阅者，新订阅者从日志末尾开始消费，已有游标的订阅者从游标处继续消费
+--
+-- KEYS[1]: 投递游标
+-- KEYS[2]: 确认游标
+-- KEYS[3]: 消息日志序号
+-- KEYS[4]: 订阅者最近心跳时间
+--
+-- ARGV[1]: 订阅者 ID
+-- ARGV[2]: 当前时间
+
+local seq = redis.call('GET', KEYS[3]) or '0'
+
+redis.call('HSETNX', KEYS[1], ARGV[1], seq)
+redis.call('HSETNX', KEYS[2], ARGV[1], seq)
+redis.call('HSET', KEYS[4], ARGV[1], ARGV[2])
+
+return redis.call('HGET', KEYS[1], ARGV[1])
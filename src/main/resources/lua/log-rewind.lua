@@ -0,0 +1,15 @@
+-- 投递游标回退至确认游标，已投递但未确认的消息将被重新投递
+--
+-- KEYS[1]: 投递游标
+-- KEYS[2]: 确认游标
+--
+-- ARGV[1]: 订阅者 ID
+
+local cursor = redis.call('HGET', KEYS[1], ARGV[1])
+local acked = redis.call('HGET', KEYS[2], ARGV[1])
+if cursor and acked and tonumber(cursor) > tonumber(acked) then
+    redis.call('HSET', KEYS[1], ARGV[1], acked)
+    return 1
+end
+
+return 0
@@ -0,0 +1,12 @@
+-- 删除订阅者的游标，订阅者未确认的消息不再阻止回收
+--
+-- KEYS[1]: 投递游标
+-- KEYS[2]: 确认游标
+-- KEYS[3]: 订阅者最近心跳时间
+--
+-- ARGV[1]: 订阅者 ID
+
+redis.call('HDEL', KEYS[1], ARGV[1])
+redis.call('HDEL', KEYS[3], ARGV[1])
+
+return redis.call('HDEL', KEYS[2], ARGV[1])
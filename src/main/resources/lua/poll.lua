@@ -0,0 +1,24 @@
+-- 读取消息列表元素并移入备份队列，跳过属性已过期的消息 ID
+--
+-- KEYS[1]: 消息列表
+-- KEYS[2]: 备份队列
+--
+-- ARGV[1]: 消息属性的 Key 前缀
+-- ARGV[2]: 单次最多跳过的消息数
+--
+-- 返回：消息列表元素，无消息时为 nil
+
+for _ = 0, tonumber(ARGV[2]) do
+    local element = redis.call('RPOP', KEYS[1])
+    if not element then
+        return nil
+    end
+
+    -- 内联消息及信封以 0x00、0x01 开头，由客户端判断是否过期
+    if string.byte(element, 1) <= 1 or redis.call('EXISTS', ARGV[1] .. element) == 1 then
+        redis.call('LPUSH', KEYS[2], element)
+        return element
+    end
+end
+
+return nil
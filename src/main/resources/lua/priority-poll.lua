@@ -0,0 +1,64 @@
+-- 按优先级由高至低读取消息，并将消息列表元素移入备份队列，跳过属性已过期的消息 ID
+--
+-- KEYS[1..n]: 按优先级由高至低排列的消息列表
+-- KEYS[n + 1]: 备份队列
+-- KEYS[n + 2]: 各消息列表最近一次出列的时间
+--
+-- ARGV[1]: 当前毫秒时间
+-- ARGV[2]: 老化毫秒数，0 表示不启用。消息列表超过该时间未出列时，优先于更高优先级的消息列表出列
+-- ARGV[3]: 消息属性的 Key 前缀
+-- ARGV[4]: 单次最多跳过的消息数
+--
+-- 返回：消息列表元素，无消息时为 nil
+
+local count = #KEYS - 2
+local backup = KEYS[count + 1]
+local served = KEYS[count + 2]
+local now = tonumber(ARGV[1])
+local aging = tonumber(ARGV[2])
+
+local function pick()
+    local target
+    for i = 1, count do
+        if redis.call('LLEN', KEYS[i]) > 0 then
+            if not target then
+                target = i
+                if aging <= 0 then
+                    break
+                end
+            else
+                local last = tonumber(redis.call('HGET', served, KEYS[i]))
+                if not last then
+                    redis.call('HSET', served, KEYS[i], now)
+                elseif now - last >= aging then
+                    target = i
+                    break
+                end
+            end
+        elseif aging > 0 then
+            -- 空的消息列表不存在等待中的消息
+            redis.call('HSET', served, KEYS[i], now)
+        end
+    end
+    return target
+end
+
+for _ = 0, tonumber(ARGV[4]) do
+    local target = pick()
+    if not target then
+        return nil
+    end
+
+    if aging > 0 then
+        redis.call('HSET', served, KEYS[target], now)
+    end
+
+    local element = redis.call('RPOP', KEYS[target])
+    -- 内联消息及信封以 0x00、0x01 开头，由客户端判断是否过期
+    if string.byte(element, 1) <= 1 or redis.call('EXISTS', ARGV[3] .. element) == 1 then
+        redis.call('LPUSH', backup, element)
+        return element
+    end
+end
+
+return nil
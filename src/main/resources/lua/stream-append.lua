@@ -0,0 +1,28 @@
+-- 消息写入 Topic 消息流
+--
+-- KEYS[1]: 消息流
+-- KEYS[2]: 频道订阅者集合
+--
+-- ARGV[1]: 消息 ID
+-- ARGV[2]: 消息存活毫秒数，消息流中的消息不会自动过期，由消费者按 JMSExpiration 丢弃
+-- ARGV[3]: 是否有消息内容，1 表示有
+-- ARGV[4]: 消息内容
+-- ARGV[5]: 有效订阅者的最小心跳时间
+-- ARGV[6]: 有效订阅者的最大心跳时间
+-- ARGV[7...]: 消息属性，按 field、value 交替排列
+
+-- 没有有效订阅者时，消息不会被任何人消费
+if redis.call('ZCOUNT', KEYS[2], ARGV[5], ARGV[6]) == 0 then
+    return nil
+end
+
+local fields = { 'JMSMessageID', ARGV[1] }
+if ARGV[3] == '1' then
+    fields[#fields + 1] = 'JMSXBody'
+    fields[#fields + 1] = ARGV[4]
+end
+for i = 7, #ARGV do
+    fields[#fields + 1] = ARGV[i]
+end
+
+return redis.call('XADD', KEYS[1], '*', unpack(fields))
@@ -0,0 +1,50 @@
+-- 删除 Queue 消息流中尚未投递且已过期的消息。尚未投递的消息位于消费组的 last-delivered-id 之后，不在待确认列表中，删除不影响消费组
+--
+-- KEYS[1]: 消息流
+--
+-- ARGV[1]: 消费组
+-- ARGV[2]: 当前毫秒时间
+-- ARGV[3]: 单次最多检查的消息数
+--
+-- 返回：删除的消息数
+
+-- XINFO 为非确定性指令，需按效果复制后才能执行写入
+redis.replicate_commands()
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+
+local start = '-'
+for _, group in ipairs(redis.call('XINFO', 'GROUPS', KEYS[1])) do
+    local info = {}
+    for i = 1, #group, 2 do
+        info[group[i]] = group[i + 1]
+    end
+    if info['name'] == ARGV[1] then
+        start = info['last-delivered-id']
+    end
+end
+
+local now = tonumber(ARGV[2])
+local ids = {}
+-- 消息 ID 按写入时间递增，自最早未投递的消息开始检查
+for _, entry in ipairs(redis.call('XRANGE', KEYS[1], start, '+', 'COUNT', tonumber(ARGV[3]))) do
+    if entry[1] ~= start then
+        local fields = entry[2]
+        for i = 1, #fields, 2 do
+            if fields[i] == 'JMSExpiration' then
+                local expiration = tonumber(fields[i + 1])
+                if expiration and expiration > 0 and expiration < now then
+                    ids[#ids + 1] = entry[1]
+                end
+                break
+            end
+        end
+    end
+end
+if #ids > 0 then
+    redis.call('XDEL', KEYS[1], unpack(ids))
+end
+
+return #ids
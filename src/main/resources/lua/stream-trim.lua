@@ -0,0 +1,69 @@
+-- 删除所有有效订阅者均已确认的消息，并移除已失效订阅者的消费组
+--
+-- KEYS[1]: 消息流
+-- KEYS[2]: 频道订阅者集合
+--
+-- ARGV[1]: 有效订阅者的最小心跳时间
+-- ARGV[2]: 有效订阅者的最大心跳时间
+-- ARGV[3]: 单次最多删除的消息数
+
+-- XINFO、XPENDING 为非确定性指令，需按效果复制后才能执行写入
+redis.replicate_commands()
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return 0
+end
+
+local function compare(a, b)
+    local a1, a2 = string.match(a, '(%d+)-(%d+)')
+    local b1, b2 = string.match(b, '(%d+)-(%d+)')
+    a1, a2, b1, b2 = tonumber(a1), tonumber(a2), tonumber(b1), tonumber(b2)
+    if a1 ~= b1 then
+        return a1 < b1 and -1 or 1
+    end
+    if a2 ~= b2 then
+        return a2 < b2 and -1 or 1
+    end
+    return 0
+end
+
+local live = {}
+for _, consumer in ipairs(redis.call('ZRANGEBYSCORE', KEYS[2], ARGV[1], ARGV[2])) do
+    live[consumer] = true
+end
+
+-- 可删除的消息上界，exclusive 表示上界本身仍待确认
+local bound, exclusive
+for _, group in ipairs(redis.call('XINFO', 'GROUPS', KEYS[1])) do
+    local info = {}
+    for i = 1, #group, 2 do
+        info[group[i]] = group[i + 1]
+    end
+
+    if not live[info['name']] then
+        -- 订阅者已失效，不再阻止消息删除
+        redis.call('XGROUP', 'DESTROY', KEYS[1], info['name'])
+    else
+        local id, excl = info['last-delivered-id'], false
+        if tonumber(info['pending']) > 0 then
+            id, excl = redis.call('XPENDING', KEYS[1], info['name'])[2], true
+        end
+
+        local cmp = bound and compare(id, bound)
+        if bound == nil or cmp < 0 or (cmp == 0 and excl) then
+            bound, exclusive = id, excl
+        end
+    end
+end
+
+local ids = {}
+for _, entry in ipairs(redis.call('XRANGE', KEYS[1], '-', bound or '+', 'COUNT', tonumber(ARGV[3]))) do
+    if not (exclusive and entry[1] == bound) then
+        ids[#ids + 1] = entry[1]
+    end
+end
+if #ids > 0 then
+    redis.call('XDEL', KEYS[1], unpack(ids))
+end
+
+return #ids
@@ -1,5 +1,10 @@
 package com.ltsoft.jms;
 
+import com.ltsoft.jms.engine.EngineType;
+import com.ltsoft.jms.message.ChunkedMessage;
+import com.ltsoft.jms.message.JmsMessage;
+import com.ltsoft.jms.type.StringType;
+import com.ltsoft.jms.util.CompactSerializer;
 import com.ltsoft.jms.util.ThreadPool;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -8,9 +13,13 @@ import org.junit.jupiter.api.Test;
 import org.redisson.Redisson;
 import org.redisson.api.RScoredSortedSet;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
 import org.redisson.client.codec.StringCodec;
 
 import javax.jms.*;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
 import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -19,7 +28,9 @@ import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 
+import static com.ltsoft.jms.message.JmsMessageHelper.*;
 import static com.ltsoft.jms.util.KeyHelper.*;
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -132,13 +143,646 @@ public class JmsConsumerImplTest {
             String bodyKey = getDestinationBodyKey(queue, message.getJMSMessageID());
 
 
+            //消息内容与属性保存在同一个 Key 中
             assertTrue(client.getKeys().countExists(propsKey) > 0);
-            assertTrue(client.getKeys().countExists(bodyKey) > 0);
+            assertTrue(client.getMap(propsKey, StringCodec.INSTANCE).containsKey(JMSX_BODY));
+            assertEquals(0, client.getKeys().countExists(bodyKey));
 
             message.acknowledge();
 
             assertEquals(0, client.getKeys().countExists(propsKey));
-            assertEquals(0, client.getKeys().countExists(bodyKey));
+        }
+    }
+
+    @Test
+    public void testReceiveLegacyLayout() throws Exception {
+
+        Queue queue = context.createQueue("legacy-layout");
+
+        TextMessage source = context.createTextMessage("a text info");
+        source.setJMSMessageID(getMessageId());
+        source.setJMSDestination(queue);
+
+        //消息内容单独保存的旧格式
+        String messageId = source.getJMSMessageID();
+        client.getMap(getDestinationPropsKey(queue, messageId), ByteArrayCodec.INSTANCE).putAll(toBytesKey(toMap((JmsMessage) source)));
+        client.getBucket(getDestinationBodyKey(queue, messageId), ByteArrayCodec.INSTANCE).set(((JmsMessage) source).getBody());
+        client.getDeque(getDestinationKey(queue), StringCodec.INSTANCE).addFirst(messageId);
+
+        try (JMSConsumer consumer = context.createConsumer(queue)) {
+            Message message = consumer.receiveNoWait();
+            assertEquals("a text info", message.getBody(String.class));
+
+            message.acknowledge();
+            assertEquals(0, client.getKeys().countExists(getDestinationPropsKey(queue, messageId), getDestinationBodyKey(queue, messageId)));
+        }
+    }
+
+    @Test
+    public void testInlineMessage() throws Exception {
+
+        try (JmsContextImpl inlineContext = createContext("InlineClient", config -> config.setInlineThreshold(1024))) {
+            Queue queue = inlineContext.createQueue("inline-queue");
+            String backupKey = getDestinationBackupKey(queue, "InlineClient");
+
+            inlineContext.createProducer().setProperty("count", 1).send(queue, "a text info");
+            inlineContext.createProducer().send(queue, new String(new byte[2048]));
+
+            //小消息仅写入消息列表
+            assertEquals(2, client.getKeys().count());
+
+            try (JMSConsumer consumer = inlineContext.createConsumer(queue)) {
+                Message message = consumer.receiveNoWait();
+                assertEquals("a text info", message.getBody(String.class));
+                assertEquals(1, message.getIntProperty("count"));
+                assertEquals(1, client.getList(backupKey).size());
+
+                message.acknowledge();
+                assertEquals(0, client.getList(backupKey).size());
+
+                Message large = consumer.receiveNoWait();
+                assertEquals(2048, large.getBody(String.class).length());
+                assertTrue(client.getKeys().countExists(getDestinationPropsKey(queue, large.getJMSMessageID())) > 0);
+            }
+        }
+    }
+
+    @Test
+    public void testCompressedMessage() throws Exception {
+
+        try (JmsContextImpl compressContext = createContext("CompressClient", config -> {
+            config.setCompressThreshold(256);
+            config.setInlineThreshold(1024);
+        })) {
+            Queue queue = compressContext.createQueue("compress-queue");
+
+            ArrayList<String> lines = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                lines.add("line " + i);
+            }
+            compressContext.createProducer().send(queue, lines);
+            compressContext.createProducer().send(queue, String.join(",", Collections.nCopies(100, "text")));
+
+            try (JMSConsumer consumer = compressContext.createConsumer(queue)) {
+                assertEquals(lines, consumer.receiveBodyNoWait(ArrayList.class));
+                //压缩后可作为内联消息写入
+                assertEquals(String.join(",", Collections.nCopies(100, "text")), consumer.receiveBodyNoWait(String.class));
+            }
+        }
+    }
+
+    @Test
+    public void testChunkedMessage() throws Exception {
+
+        try (JmsContextImpl chunkContext = createContext("ChunkClient", config -> config.setChunkSize(1024))) {
+            Queue queue = chunkContext.createQueue("chunk-queue");
+
+            byte[] data = new byte[10 * 1024 + 100];
+            for (int i = 0; i < data.length; i++) {
+                data[i] = (byte) i;
+            }
+
+            BytesMessage bytesMessage = chunkContext.createBytesMessage();
+            bytesMessage.writeBytes(data);
+            chunkContext.createProducer().send(queue, bytesMessage);
+
+            BytesMessage streamBody = chunkContext.createBytesMessage();
+            ((ChunkedMessage) streamBody).setBodyStream(new ByteArrayInputStream(data));
+            chunkContext.createProducer().send(queue, streamBody);
+
+            StreamMessage streamMessage = chunkContext.createStreamMessage();
+            for (int i = 0; i < 1000; i++) {
+                streamMessage.writeInt(i);
+            }
+            chunkContext.createProducer().send(queue, streamMessage);
+
+            try (JMSConsumer consumer = chunkContext.createConsumer(queue)) {
+                BytesMessage received = (BytesMessage) consumer.receiveNoWait();
+                assertEquals(data.length, received.getBodyLength());
+                assertEquals(11, ((ChunkedMessage) received).getBodyChunks());
+                assertTrue(client.getKeys().countExists(getDestinationChunkKey(queue, received.getJMSMessageID(), 10)) > 0);
+                //未设置存活时间的消息入列后分块不再过期
+                assertEquals(-1, client.getBucket(getDestinationChunkKey(queue, received.getJMSMessageID(), 0)).remainTimeToLive());
+
+                byte[] read = new byte[data.length];
+                assertEquals(data.length, received.readBytes(read));
+                assertArrayEquals(data, read);
+
+                received.acknowledge();
+                assertEquals(0, client.getKeys().countExists(getDestinationChunkKey(queue, received.getJMSMessageID(), 0)));
+
+                //以流设置的消息内容同样分块保存，可按流读取
+                Message streamed = consumer.receiveNoWait();
+                try (InputStream in = ((ChunkedMessage) streamed).getBodyStream()) {
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    byte[] buffer = new byte[100];
+                    int length;
+                    while ((length = in.read(buffer)) != -1) {
+                        out.write(buffer, 0, length);
+                    }
+                    assertArrayEquals(data, out.toByteArray());
+                }
+
+                StreamMessage stream = (StreamMessage) consumer.receiveNoWait();
+                assertTrue(((ChunkedMessage) stream).getBodyChunks() > 1);
+                for (int i = 0; i < 1000; i++) {
+                    assertEquals(i, stream.readInt());
+                }
+
+                //批量发送时分块与入列脚本在同一管道中写入
+                BytesMessage batchBody = chunkContext.createBytesMessage();
+                ((ChunkedMessage) batchBody).setBodyStream(new ByteArrayInputStream(data));
+                assertTrue(((JmsProducerImpl) chunkContext.createProducer()).sendBatch(queue, Collections.singletonList(batchBody)).isEmpty());
+
+                BytesMessage batched = (BytesMessage) consumer.receiveNoWait();
+                assertEquals(-1, client.getBucket(getDestinationChunkKey(queue, batched.getJMSMessageID(), 10)).remainTimeToLive());
+                read = new byte[data.length];
+                assertEquals(data.length, batched.readBytes(read));
+                assertArrayEquals(data, read);
+            }
+        }
+    }
+
+    @Test
+    public void testEnvelopeMessage() throws Exception {
+
+        try (JmsContextImpl envelopeContext = createContext("EnvelopeClient", config -> {
+            config.setEnvelopeSize(3);
+            config.setBackDuration(Duration.ofSeconds(1));
+            config.setConsumingTimeout(Duration.ofMillis(500));
+        })) {
+            Queue queue = envelopeContext.createQueue("envelope-queue");
+            String backupKey = getDestinationBackupKey(queue, "EnvelopeClient");
+
+            List<Message> batch = new ArrayList<>();
+            for (int i = 0; i < 5; i++) {
+                batch.add(envelopeContext.createTextMessage("text " + i));
+            }
+            assertTrue(((JmsProducerImpl) envelopeContext.createProducer()).sendBatch(queue, batch).isEmpty());
+
+            //5 条消息打包为 2 个信封，仅写入消息列表
+            assertEquals(1, client.getKeys().count());
+            assertEquals(2, client.getList(getDestinationKey(queue)).size());
+
+            try (QueueBrowser browser = envelopeContext.createBrowser(queue)) {
+                assertEquals(5, Collections.list(browser.getEnumeration()).size());
+            }
+
+            try (JMSConsumer consumer = envelopeContext.createConsumer(queue)) {
+                Message first = consumer.receiveNoWait();
+                assertEquals("text 0", first.getBody(String.class));
+                assertEquals("text 1", consumer.receiveNoWait().getBody(String.class));
+                assertEquals("text 2", consumer.receiveNoWait().getBody(String.class));
+                first.acknowledge();
+
+                //信封中仍有未确认的消息，保留在备份队列中
+                assertEquals(1, client.getList(backupKey).size());
+                assertTrue(client.getSet(getEnvelopeAckedKey(queue, first.getJMSMessageID(), null), StringCodec.INSTANCE).contains(first.getJMSMessageID()));
+
+                Message fourth = consumer.receiveNoWait();
+                assertEquals("text 3", fourth.getBody(String.class));
+                fourth.acknowledge();
+                consumer.receiveNoWait().acknowledge();
+                assertEquals(1, client.getList(backupKey).size());
+
+                //消费超时后重新投递信封，跳过已确认的消息
+                Message second = consumer.receive(THREAD_WAIT);
+                assertNotNull(second);
+                assertEquals("text 1", second.getBody(String.class));
+                Message third = consumer.receiveNoWait();
+                assertEquals("text 2", third.getBody(String.class));
+
+                second.acknowledge();
+                third.acknowledge();
+                assertEquals(0, client.getList(backupKey).size());
+                assertEquals(0, client.getKeys().countExists(getEnvelopeAckedKey(queue, first.getJMSMessageID(), null)));
+            }
+        }
+    }
+
+    @Test
+    public void testPriorityQueue() throws Exception {
+
+        try (JmsContextImpl priorityContext = createContext("PriorityClient", config -> config.setQueuePriority(true))) {
+            Queue queue = priorityContext.createQueue("priority-queue");
+
+            priorityContext.createProducer().setPriority(1).send(queue, "low");
+            priorityContext.createProducer().send(queue, "normal");
+            priorityContext.createProducer().setPriority(9).send(queue, "urgent");
+
+            try (QueueBrowser browser = priorityContext.createBrowser(queue)) {
+                List<?> messages = Collections.list(browser.getEnumeration());
+                assertEquals("urgent", ((Message) messages.get(0)).getBody(String.class));
+            }
+
+            try (JMSConsumer consumer = priorityContext.createConsumer(queue)) {
+                assertEquals("urgent", consumer.receiveNoWait().getBody(String.class));
+                assertEquals("normal", consumer.receiveNoWait().getBody(String.class));
+                assertEquals("low", consumer.receiveNoWait().getBody(String.class));
+                assertNull(consumer.receiveNoWait());
+
+                //新消息通知唤醒等待中的消费者
+                Future<Message> future = priorityContext.cachedPool().submit(() -> consumer.receive(THREAD_WAIT));
+                Thread.sleep(100);
+                priorityContext.createProducer().setPriority(7).send(queue, "wake up");
+
+                Message message = future.get(500, TimeUnit.MILLISECONDS);
+                assertEquals("wake up", message.getBody(String.class));
+            }
+        }
+    }
+
+    @Test
+    public void testPriorityRedelivery() throws Exception {
+
+        try (JmsContextImpl priorityContext = createContext("RedeliveryClient", config -> {
+            config.setQueuePriority(true);
+            config.setDelayInterval(Duration.ofMillis(100));
+        })) {
+            Queue queue = priorityContext.createQueue("priority-redelivery-queue");
+
+            priorityContext.createProducer().setPriority(9).setDeliveryDelay(300).send(queue, "delayed");
+            priorityContext.createProducer().setPriority(9).send(queue, "urgent");
+
+            try (JMSConsumer consumer = priorityContext.createConsumer(queue)) {
+                assertEquals("urgent", consumer.receiveNoWait().getBody(String.class));
+            }
+
+            priorityContext.createProducer().send(queue, "normal");
+
+            //未确认及到期的消息写回原优先级的消息列表
+            try (JMSConsumer consumer = priorityContext.createConsumer(queue)) {
+                assertEquals("urgent", consumer.receiveNoWait().getBody(String.class));
+
+                Thread.sleep(500);
+                assertEquals("delayed", consumer.receiveNoWait().getBody(String.class));
+                assertEquals("normal", consumer.receiveNoWait().getBody(String.class));
+            }
+        }
+    }
+
+    @Test
+    public void testBrowseSerializer() throws Exception {
+
+        try (JmsContextImpl serializerContext = createContext("SerializerClient",
+                config -> config.setSerializer(new CompactSerializer().register(1, StringType.class)))) {
+            Queue queue = serializerContext.createQueue("serializer-queue");
+
+            StringType type = new StringType();
+            type.setString("foo");
+            serializerContext.createProducer().send(queue, type);
+
+            //浏览的消息同样使用配置的序列化工具
+            try (QueueBrowser browser = serializerContext.createBrowser(queue)) {
+                ObjectMessage message = (ObjectMessage) browser.getEnumeration().nextElement();
+                assertEquals("foo", ((StringType) message.getObject()).getString());
+            }
+        }
+    }
+
+    @Test
+    public void testPriorityAging() throws Exception {
+
+        try (JmsContextImpl priorityContext = createContext("AgingClient", config -> {
+            config.setQueuePriority(true);
+            config.setPriorityAging(Duration.ofMillis(200));
+        })) {
+            Queue queue = priorityContext.createQueue("aging-queue");
+
+            priorityContext.createProducer().setPriority(0).send(queue, "low");
+            priorityContext.createProducer().setPriority(9).send(queue, "first");
+            priorityContext.createProducer().setPriority(9).send(queue, "second");
+
+            try (JMSConsumer consumer = priorityContext.createConsumer(queue)) {
+                assertEquals("first", consumer.receiveNoWait().getBody(String.class));
+
+                //低优先级的消息等待超过老化时间后优先出列
+                Thread.sleep(300);
+                assertEquals("low", consumer.receiveNoWait().getBody(String.class));
+                assertEquals("second", consumer.receiveNoWait().getBody(String.class));
+            }
+        }
+    }
+
+    @Test
+    public void testDeliveryDelay() throws Exception {
+
+        try (JmsContextImpl delayContext = createContext("DelayClient", config -> config.setDelayInterval(Duration.ofMillis(100)))) {
+            Queue queue = delayContext.createQueue("delay-queue");
+            Topic topic = delayContext.createTopic("delay-topic");
+
+            try (JMSConsumer queueConsumer = delayContext.createConsumer(queue);
+                 JMSConsumer topicConsumer = delayContext.createConsumer(topic)) {
+                Thread.sleep(200);
+
+                delayContext.createProducer().setDeliveryDelay(500).send(queue, "queue");
+                delayContext.createProducer().setDeliveryDelay(500).send(topic, "topic");
+
+                assertNull(queueConsumer.receiveNoWait());
+                assertNull(topicConsumer.receiveNoWait());
+                assertEquals(1, client.getScoredSortedSet(getDestinationDelayedKey(queue)).size());
+
+                Message message = queueConsumer.receive(THREAD_WAIT);
+                assertEquals("queue", message.getBody(String.class));
+                assertTrue(System.currentTimeMillis() >= message.getJMSDeliveryTime());
+                message.acknowledge();
+
+                assertEquals("topic", topicConsumer.receive(THREAD_WAIT).getBody(String.class));
+                assertEquals(0, client.getScoredSortedSet(getDestinationDelayedKey(queue)).size());
+                assertEquals(0, client.getScoredSortedSet(getDestinationDelayedKey(topic)).size());
+            }
+        }
+    }
+
+    @Test
+    public void testSkipExpired() throws Exception {
+        Queue queue = context.createQueue("skip-expired");
+
+        JMSProducer producer = context.createProducer().setTimeToLive(100);
+        for (int i = 0; i < 3; i++) {
+            producer.send(queue, "expired");
+        }
+        context.createProducer().send(queue, "alive");
+
+        Thread.sleep(200);
+
+        try (JMSConsumer consumer = context.createConsumer(queue)) {
+            Message message = consumer.receive(THREAD_WAIT);
+            assertEquals("alive", message.getBody(String.class));
+            message.acknowledge();
+
+            assertEquals(0, client.getList(getDestinationKey(queue)).size());
+        }
+    }
+
+    @Test
+    public void testSweepExpired() throws Exception {
+
+        try (JmsContextImpl sweepContext = createContext("SweepClient", config -> {
+            config.setExpireInterval(Duration.ofMillis(100));
+            config.setInlineThreshold(1024);
+        })) {
+            Queue queue = sweepContext.createQueue("sweep-queue");
+            Topic topic = sweepContext.createTopic("sweep-topic");
+
+            try (JMSConsumer ignoredQueue = sweepContext.createConsumer(queue);
+                 JMSConsumer ignoredTopic = sweepContext.createConsumer(topic)) {
+                Thread.sleep(200);
+
+                sweepContext.createProducer().send(queue, "live");
+                sweepContext.createProducer().send(topic, "live");
+
+                JMSProducer producer = sweepContext.createProducer().setTimeToLive(100);
+                producer.send(queue, "expired");
+                producer.send(topic, "expired");
+                producer.setDeliveryDelay(60000).send(queue, "delayed");
+
+                //设置了存活时间的消息不内联，仅延迟消息写入过期索引
+                assertEquals(2, client.getList(getDestinationKey(queue)).size());
+                assertEquals(2, client.getList(getTopicConsumerListKey(topic, "SweepClient")).size());
+                assertEquals(1, client.getScoredSortedSet(getDestinationExpiryKey(queue)).size());
+
+                Thread.sleep(500);
+
+                //位于未过期消息之后的过期消息 ID 同样被删除
+                assertEquals(1, client.getList(getDestinationKey(queue)).size());
+                assertEquals(1, client.getList(getTopicConsumerListKey(topic, "SweepClient")).size());
+                assertEquals(0, client.getScoredSortedSet(getDestinationExpiryKey(queue)).size());
+                assertEquals(0, client.getScoredSortedSet(getDestinationDelayedKey(queue)).size());
+            }
+        }
+    }
+
+    private JmsContextImpl createContext(String clientId, Consumer<JmsConfig> customizer) {
+        JmsConfig jmsConfig = new JmsConfig();
+        customizer.accept(jmsConfig);
+
+        return new JmsContextImpl(clientId, client, jmsConfig, new ThreadPool(jmsConfig), JMSContext.CLIENT_ACKNOWLEDGE);
+    }
+
+    private JmsContextImpl createEngineContext(String clientId, EngineType engine) {
+        return createContext(clientId, config -> {
+            config.setQueueEngine(engine);
+            config.setTopicEngine(engine);
+            config.setBackDuration(Duration.ofSeconds(1));
+        });
+    }
+
+    @Test
+    public void testTopicLog() throws Exception {
+
+        try (JmsContextImpl first = createEngineContext("LogClientA", EngineType.TOPIC_LOG);
+             JmsContextImpl second = createEngineContext("LogClientB", EngineType.TOPIC_LOG)) {
+            Topic topic = first.createTopic("topic-log");
+
+            try (JMSConsumer firstConsumer = first.createConsumer(topic);
+                 JMSConsumer secondConsumer = second.createConsumer(topic)) {
+
+                first.createProducer().send(topic, "log info");
+
+                //消息只保存一份
+                assertEquals(1, client.getScoredSortedSet(getTopicLogKey(topic), StringCodec.INSTANCE).size());
+
+                Message firstMessage = firstConsumer.receive(THREAD_WAIT);
+                Message secondMessage = secondConsumer.receive(THREAD_WAIT);
+                assertEquals("log info", firstMessage.getBody(String.class));
+                assertEquals("log info", secondMessage.getBody(String.class));
+                assertNull(firstConsumer.receiveNoWait());
+
+                String propsKey = getDestinationPropsKey(topic, firstMessage.getJMSMessageID());
+
+                firstMessage.acknowledge();
+                Thread.sleep(1500);
+                assertTrue(client.getKeys().countExists(propsKey) > 0);
+
+                //所有订阅者确认后回收消息
+                secondMessage.acknowledge();
+                Thread.sleep(1500);
+                assertEquals(0, client.getKeys().countExists(propsKey));
+                assertEquals(0, client.getScoredSortedSet(getTopicLogKey(topic), StringCodec.INSTANCE).size());
+            }
+        }
+    }
+
+    @Test
+    public void testTopicLogLapsedSubscriber() throws Exception {
+
+        try (JmsContextImpl first = createEngineContext("LogLapsedA", EngineType.TOPIC_LOG);
+             JmsContextImpl second = createEngineContext("LogLapsedB", EngineType.TOPIC_LOG)) {
+            Topic topic = first.createTopic("topic-log-lapsed");
+
+            try (JMSConsumer firstConsumer = first.createConsumer(topic)) {
+                JMSConsumer secondConsumer = second.createConsumer(topic);
+
+                first.createProducer().send(topic, "log info");
+
+                //订阅者心跳中断后，游标仍阻止消息回收
+                secondConsumer.close();
+                firstConsumer.receive(THREAD_WAIT).acknowledge();
+                Thread.sleep(1500);
+                assertEquals(1, client.getScoredSortedSet(getTopicLogKey(topic), StringCodec.INSTANCE).size());
+
+                //订阅者恢复后继续消费未确认的消息
+                JmsConsumerImpl recovered = (JmsConsumerImpl) second.createConsumer(topic);
+                assertEquals("log info", recovered.receive(THREAD_WAIT).getBody(String.class));
+
+                //取消订阅后回收消息
+                recovered.unsubscribe();
+                Thread.sleep(1500);
+                assertEquals(0, client.getScoredSortedSet(getTopicLogKey(topic), StringCodec.INSTANCE).size());
+            }
+        }
+    }
+
+    @Test
+    public void testTopicLogLapsedOnlySubscriber() throws Exception {
+
+        try (JmsContextImpl logContext = createEngineContext("LogLapsedOnly", EngineType.TOPIC_LOG)) {
+            Topic topic = logContext.createTopic("topic-log-lapsed-only");
+
+            logContext.createConsumer(topic).close();
+
+            //唯一的订阅者心跳中断期间写入的消息仍保留
+            logContext.createProducer().send(topic, "log info");
+            assertEquals(1, client.getScoredSortedSet(getTopicLogKey(topic), StringCodec.INSTANCE).size());
+
+            //订阅者恢复后收到中断期间写入的消息
+            try (JMSConsumer recovered = logContext.createConsumer(topic)) {
+                assertEquals("log info", recovered.receive(THREAD_WAIT).getBody(String.class));
+            }
+        }
+    }
+
+    @Test
+    public void testTopicLogRedelivery() throws Exception {
+
+        try (JmsContextImpl logContext = createEngineContext("LogClient", EngineType.TOPIC_LOG)) {
+            Topic topic = logContext.createTopic("topic-log-redelivery");
+
+            JMSConsumer consumer = logContext.createConsumer(topic);
+
+            logContext.createProducer().send(topic, "log info");
+
+            Message message = consumer.receive(THREAD_WAIT);
+            assertNotNull(message);
+            consumer.close();
+
+            //未确认的消息将重新投递
+            try (JMSConsumer recovered = logContext.createConsumer(topic)) {
+                Message redelivered = recovered.receive(THREAD_WAIT);
+                assertNotNull(redelivered);
+                assertEquals(message.getJMSMessageID(), redelivered.getJMSMessageID());
+            }
+        }
+    }
+
+    @Test
+    public void testStreamQueue() throws Exception {
+
+        try (JmsContextImpl streamContext = createEngineContext("StreamClient", EngineType.STREAM)) {
+            Queue queue = streamContext.createQueue("stream-queue");
+            String streamKey = getDestinationStreamKey(queue);
+
+            //Queue 在消费者注册前写入的消息同样可被消费
+            streamContext.createProducer().send(queue, "stream info");
+            assertEquals(1, client.getStream(streamKey).size());
+
+            try (JMSConsumer consumer = streamContext.createConsumer(queue)) {
+                Message message = consumer.receive(THREAD_WAIT);
+                assertEquals("stream info", message.getBody(String.class));
+                assertNull(consumer.receiveNoWait());
+
+                message.acknowledge();
+                assertEquals(0, client.getStream(streamKey).size());
+            }
+        }
+    }
+
+    @Test
+    public void testStreamBrowse() throws Exception {
+
+        try (JmsContextImpl streamContext = createEngineContext("StreamBrowseClient", EngineType.STREAM)) {
+            Queue queue = streamContext.createQueue("stream-browse");
+            String streamKey = getDestinationStreamKey(queue);
+
+            streamContext.createProducer().send(queue, "first");
+            streamContext.createProducer().send(queue, "second");
+            streamContext.createProducer().setTimeToLive(300).send(queue, "expired");
+
+            try (JMSConsumer consumer = streamContext.createConsumer(queue)) {
+                assertEquals("first", consumer.receive(THREAD_WAIT).getBody(String.class));
+
+                //已投递待确认的消息不在浏览结果中
+                try (QueueBrowser browser = streamContext.createBrowser(queue)) {
+                    List<String> bodies = new ArrayList<>();
+                    for (Object message : Collections.list(browser.getEnumeration())) {
+                        bodies.add(((Message) message).getBody(String.class));
+                    }
+                    assertEquals(Arrays.asList("second", "expired"), bodies);
+                }
+            }
+
+            Thread.sleep(400);
+
+            //恢复时删除尚未投递的过期消息，待确认的消息保留
+            try (JMSConsumer ignored = streamContext.createConsumer(queue)) {
+                assertEquals(2, client.getStream(streamKey).size());
+            }
+        }
+    }
+
+    @Test
+    public void testStreamTopic() throws Exception {
+
+        try (JmsContextImpl first = createEngineContext("StreamClientA", EngineType.STREAM);
+             JmsContextImpl second = createEngineContext("StreamClientB", EngineType.STREAM)) {
+            Topic topic = first.createTopic("stream-topic");
+            String streamKey = getDestinationStreamKey(topic);
+
+            try (JMSConsumer firstConsumer = first.createConsumer(topic);
+                 JMSConsumer secondConsumer = second.createConsumer(topic)) {
+
+                first.createProducer().send(topic, "stream info");
+                assertEquals(1, client.getStream(streamKey).size());
+
+                Message firstMessage = firstConsumer.receive(THREAD_WAIT);
+                Message secondMessage = secondConsumer.receive(THREAD_WAIT);
+                assertEquals("stream info", firstMessage.getBody(String.class));
+                assertEquals("stream info", secondMessage.getBody(String.class));
+
+                firstMessage.acknowledge();
+                Thread.sleep(1500);
+                assertEquals(1, client.getStream(streamKey).size());
+
+                //所有订阅者确认后删除消息
+                secondMessage.acknowledge();
+                Thread.sleep(1500);
+                assertEquals(0, client.getStream(streamKey).size());
+            }
+        }
+    }
+
+    @Test
+    public void testStreamRedelivery() throws Exception {
+
+        try (JmsContextImpl streamContext = createEngineContext("StreamClient", EngineType.STREAM)) {
+            streamContext.config().setConsumingTimeout(Duration.ofMillis(500));
+
+            Queue queue = streamContext.createQueue("stream-redelivery");
+
+            streamContext.createProducer().send(queue, "stream info");
+
+            try (JMSConsumer consumer = streamContext.createConsumer(queue)) {
+                Message message = consumer.receive(THREAD_WAIT);
+                assertNotNull(message);
+                assertFalse(message.getJMSRedelivered());
+
+                //消费超时后重新投递
+                Message redelivered = consumer.receive(THREAD_WAIT);
+                assertNotNull(redelivered);
+                assertTrue(redelivered.getJMSRedelivered());
+                assertEquals(message.getJMSMessageID(), redelivered.getJMSMessageID());
+            }
         }
     }
 
@@ -255,6 +899,9 @@ public class JmsConsumerImplTest {
             }
         });
 
+        //无法解码的消息被跳过，不影响后续消息
+        client.getTopic(getDestinationKey(topic), ByteArrayCodec.INSTANCE).publish(new byte[]{9, 9, 9});
+
         while (i < 10) {
             int index = i;
             Thread thread = new Thread(() -> context.createProducer()
@@ -1,5 +1,6 @@
 package com.ltsoft.jms;
 
+import com.ltsoft.jms.engine.EngineType;
 import com.ltsoft.jms.message.JmsMessage;
 import com.ltsoft.jms.type.IntegerType;
 import com.ltsoft.jms.util.ThreadPool;
@@ -9,19 +10,27 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.redisson.Redisson;
 import org.redisson.api.RMap;
+import org.redisson.api.RScoredSortedSet;
 import org.redisson.api.RedissonClient;
 import org.redisson.client.codec.ByteArrayCodec;
 import org.redisson.client.codec.StringCodec;
 
 import javax.jms.*;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
-import static com.ltsoft.jms.message.JmsMessageHelper.fromMap;
-import static com.ltsoft.jms.message.JmsMessageHelper.toStringKey;
-import static com.ltsoft.jms.util.KeyHelper.getDestinationKey;
-import static com.ltsoft.jms.util.KeyHelper.getDestinationPropsKey;
+import static com.ltsoft.jms.message.JmsMessageHelper.*;
+import static com.ltsoft.jms.util.KeyHelper.*;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -102,7 +111,8 @@ public class JmsProducerImplTest {
 
         RMap<byte[], byte[]> map = client.getMap(getDestinationPropsKey(queue, messageId), ByteArrayCodec.INSTANCE);
         JmsMessage message = fromMap(toStringKey(map.readAllMap()));
-        assertTrue(message instanceof StreamMessage);
+        assertTrue(message instanceof BytesMessage);
+        assertArrayEquals("foo".getBytes(), message.getBody(byte[].class));
     }
 
     @Test
@@ -129,6 +139,159 @@ public class JmsProducerImplTest {
         //TODO 校验写入，丰富场景
     }
 
+    @Test
+    public void sendAfterScriptFlush() throws Exception {
+        JmsProducerImpl producer = (JmsProducerImpl) context.createProducer();
+        producer.send(queue, "before");
+
+        client.getScript().scriptFlush();
+
+        producer.send(queue, "after");
+        Map<Message, JMSException> failures = producer.sendBatch(queue, Collections.singletonList(context.createTextMessage("batch")));
+
+        //批处理每次随指令加载脚本
+        client.getScript().scriptFlush();
+        Map<Message, JMSException> flushed = producer.sendBatch(queue, Collections.singletonList(context.createTextMessage("flushed")));
+
+        assertAll(
+                () -> assertTrue(failures.isEmpty()),
+                () -> assertTrue(flushed.isEmpty()),
+                () -> assertEquals(4, client.getList(getDestinationKey(queue)).size())
+        );
+    }
+
+    @Test
+    public void sendBatch() throws Exception {
+        List<Message> messages = Arrays.asList(
+                context.createTextMessage("first"),
+                context.createTextMessage("second"),
+                context.createTextMessage("third")
+        );
+
+        Map<Message, JMSException> failures = ((JmsProducerImpl) context.createProducer()).sendBatch(queue, messages);
+
+        List<String> messageIds = client.<String>getList(getDestinationKey(queue), StringCodec.INSTANCE).readAll();
+        assertAll(
+                () -> assertTrue(failures.isEmpty()),
+                () -> assertEquals(3, messageIds.size()),
+                () -> assertEquals(messages.get(0).getJMSMessageID(), messageIds.get(2)),
+                () -> assertEquals(messages.get(2).getJMSMessageID(), messageIds.get(0))
+        );
+    }
+
+    @Test
+    public void sendBatchAsync() throws Exception {
+        List<Message> messages = Arrays.asList(
+                context.createTextMessage("first"),
+                context.createTextMessage("second")
+        );
+        List<Message> completed = Collections.synchronizedList(new ArrayList<>());
+
+        JmsProducerImpl producer = (JmsProducerImpl) context.createProducer()
+                .setAsync(new CompletionListener() {
+                    @Override
+                    public void onCompletion(Message message) {
+                        completed.add(message);
+                    }
+
+                    @Override
+                    public void onException(Message message, Exception exception) {
+                        fail(exception.getMessage());
+                    }
+                });
+
+        Map<Message, JMSException> failures = producer.sendBatchAsync(queue, messages).toCompletableFuture().get();
+
+        assertAll(
+                () -> assertTrue(failures.isEmpty()),
+                () -> assertIterableEquals(messages, completed),
+                () -> assertEquals(2, client.getList(getDestinationKey(queue)).size())
+        );
+    }
+
+    @Test
+    public void sendCompressed() throws Exception {
+        try (JmsContextImpl compressContext = createContext("CompressClient", config -> config.setCompressThreshold(1024))) {
+            char[] chars = new char[8192];
+            Arrays.fill(chars, 'a');
+            String text = new String(chars);
+
+            compressContext.createProducer().send(queue, text);
+            compressContext.createProducer().send(queue, "small");
+
+            List<String> messageIds = client.<String>getList(getDestinationKey(queue), StringCodec.INSTANCE).readAll();
+
+            //达到阈值的消息内容压缩后写入
+            Map<String, byte[]> props = toStringKey(client.<byte[], byte[]>getMap(getDestinationPropsKey(queue, messageIds.get(1)), ByteArrayCodec.INSTANCE).readAllMap());
+            assertEquals("deflate", new String(props.get(JMSX_COMPRESSION)));
+            assertTrue(props.get(JMSX_BODY).length < text.length());
+            assertEquals(text, ((TextMessage) fromMap(props)).getText());
+
+            Map<String, byte[]> smallProps = toStringKey(client.<byte[], byte[]>getMap(getDestinationPropsKey(queue, messageIds.get(0)), ByteArrayCodec.INSTANCE).readAllMap());
+            assertFalse(smallProps.containsKey(JMSX_COMPRESSION));
+            assertEquals("small", ((TextMessage) fromMap(smallProps)).getText());
+        }
+    }
+
+    @Test
+    public void sendWithLinger() throws Exception {
+        try (JmsContextImpl lingerContext = createContext("LingerClient", config -> {
+            config.setBatchLinger(Duration.ofMinutes(1));
+            config.setBatchSize(3);
+            config.setEnvelopeSize(3);
+        })) {
+            CountDownLatch latch = new CountDownLatch(2);
+            JMSProducer asyncProducer = lingerContext.createProducer()
+                    .setAsync(new CompletionListener() {
+                        @Override
+                        public void onCompletion(Message message) {
+                            latch.countDown();
+                        }
+
+                        @Override
+                        public void onException(Message message, Exception exception) {
+                            fail(exception.getMessage());
+                        }
+                    });
+
+            asyncProducer.send(queue, "first");
+            asyncProducer.send(queue, "second");
+
+            //未达到批次上限，消息仍在累积中
+            assertEquals(0, client.getList(getDestinationKey(queue)).size());
+
+            //达到批次上限后由发送线程直接提交，合并发送的消息逐条写入，不打包为信封
+            lingerContext.createProducer().send(queue, "third");
+
+            assertAll(
+                    () -> assertTrue(latch.await(5, TimeUnit.SECONDS)),
+                    () -> assertEquals(3, client.getList(getDestinationKey(queue)).size())
+            );
+        }
+    }
+
+    @Test
+    public void sendToTopicSubscribers() throws Exception {
+        Topic topic = context.createTopic("topic");
+        long now = Instant.now().getEpochSecond();
+
+        RScoredSortedSet<String> subscribers = client.getScoredSortedSet(getTopicConsumersKey(topic), StringCodec.INSTANCE);
+        subscribers.add(now, "alive-1");
+        subscribers.add(now, "alive-2");
+        subscribers.add(now - Duration.ofDays(1).getSeconds(), "expired");
+
+        TextMessage message = context.createTextMessage("to Topic");
+        context.createProducer().send(topic, message);
+
+        String messageId = message.getJMSMessageID();
+        assertAll(
+                () -> assertEquals(messageId, client.getList(getTopicConsumerListKey(topic, "alive-1"), StringCodec.INSTANCE).get(0)),
+                () -> assertEquals(messageId, client.getList(getTopicConsumerListKey(topic, "alive-2"), StringCodec.INSTANCE).get(0)),
+                () -> assertEquals(0, client.getList(getTopicConsumerListKey(topic, "expired")).size()),
+                () -> assertEquals(2, client.getSet(getTopicItemConsumersKey(topic, messageId)).size())
+        );
+    }
+
     @Test
     public void setDisableMessageID() throws Exception {
         assertThrows(UnsupportedOperationException.class, () -> context.createProducer().setDisableMessageID(true));
@@ -158,7 +321,13 @@ public class JmsProducerImplTest {
 
     @Test
     public void priority() throws Exception {
+        JMSProducer producer = context.createProducer();
 
+        assertAll(
+                () -> assertEquals(Message.DEFAULT_PRIORITY, producer.getPriority()),
+                () -> assertEquals(9, producer.setPriority(9).getPriority()),
+                () -> assertThrows(JMSRuntimeException.class, () -> producer.setPriority(10))
+        );
     }
 
     @Test
@@ -173,7 +342,24 @@ public class JmsProducerImplTest {
 
     @Test
     public void deliveryDelay() throws Exception {
-        context.createProducer().setDeliveryDelay(100);
+        context.createProducer()
+                .setDeliveryDelay(60000)
+                .send(queue, "text");
+
+        assertEquals(0, client.getList(getDestinationKey(queue)).size());
+        assertEquals(1, client.getScoredSortedSet(getDestinationDelayedKey(queue)).size());
+    }
+
+    @Test
+    public void deliveryDelayNotSupported() throws Exception {
+        for (EngineType engine : Arrays.asList(EngineType.TOPIC_LOG, EngineType.STREAM)) {
+            try (JmsContextImpl engineContext = createContext("DelayClient", config -> config.setTopicEngine(engine))) {
+                Topic topic = engineContext.createTopic("delay-topic");
+
+                //不支持延迟投递的存储引擎拒绝消息，避免提前投递
+                assertThrows(JMSRuntimeException.class, () -> engineContext.createProducer().setDeliveryDelay(60000).send(topic, "text"));
+            }
+        }
     }
 
     @Test
@@ -203,6 +389,90 @@ public class JmsProducerImplTest {
         assertTrue(flag.get());
     }
 
+    @Test
+    public void asyncWindowFull() throws Exception {
+        try (JmsContextImpl windowContext = createContext("WindowClient", config -> {
+            config.setMaxInFlight(1);
+            config.setBlockWhenFull(false);
+            config.setBatchLinger(Duration.ofMinutes(1));
+        })) {
+            JmsProducerImpl producer = ((JmsProducerImpl) windowContext.createProducer()).setFireAndForget(true);
+
+            //首条消息在累加器中等待提交，占用发送窗口
+            producer.send(queue, "first");
+            assertThrows(ResourceAllocationRuntimeException.class, () -> producer.send(queue, "second"));
+
+            windowContext.close();
+            Thread.sleep(500);
+
+            assertEquals(1, client.getList(getDestinationKey(queue)).size());
+        }
+    }
+
+    @Test
+    public void asyncBatchWindow() throws Exception {
+        try (JmsContextImpl windowContext = createContext("BatchWindowClient", config -> {
+            config.setMaxInFlight(2);
+            config.setBlockWhenFull(false);
+        })) {
+            List<String> threads = Collections.synchronizedList(new ArrayList<>());
+            CountDownLatch latch = new CountDownLatch(2);
+
+            JmsProducerImpl producer = (JmsProducerImpl) windowContext.createProducer()
+                    .setAsync(new CompletionListener() {
+                        @Override
+                        public void onCompletion(Message message) {
+                            threads.add(Thread.currentThread().getName());
+                            latch.countDown();
+                        }
+
+                        @Override
+                        public void onException(Message message, Exception exception) {
+                            fail(exception.getMessage());
+                        }
+                    });
+
+            //超过发送窗口的批量消息直接拒绝
+            assertThrows(ResourceAllocationRuntimeException.class, () -> producer.sendBatchAsync(queue, Arrays.asList(
+                    windowContext.createTextMessage("first"),
+                    windowContext.createTextMessage("second"),
+                    windowContext.createTextMessage("third")
+            )));
+            assertEquals(2, windowContext.inFlight().availablePermits());
+
+            Map<Message, JMSException> failures = producer.sendBatchAsync(queue, Arrays.asList(
+                    windowContext.createTextMessage("first"),
+                    windowContext.createTextMessage("second")
+            )).toCompletableFuture().get();
+
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+            //批处理完成后释放发送窗口
+            for (int i = 0; i < 50 && windowContext.inFlight().availablePermits() < 2; i++) {
+                Thread.sleep(10);
+            }
+
+            assertAll(
+                    () -> assertTrue(failures.isEmpty()),
+                    () -> assertEquals(2, windowContext.inFlight().availablePermits()),
+                    () -> assertTrue(threads.stream().noneMatch(name -> name.startsWith("redisson-netty"))),
+                    () -> assertEquals(2, client.getList(getDestinationKey(queue)).size())
+            );
+        }
+    }
+
+    @Test
+    public void fireAndForget() throws Exception {
+        client.getBucket(getDestinationKey(queue), StringCodec.INSTANCE).set("not a list");
+
+        CountDownLatch latch = new CountDownLatch(1);
+        JMSContext failContext = context.createContext(JMSContext.CLIENT_ACKNOWLEDGE);
+        failContext.setExceptionListener(exception -> latch.countDown());
+
+        ((JmsProducerImpl) failContext.createProducer()).setFireAndForget(true).send(queue, "info");
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
     @Test
     public void setProperty() throws Exception {
 
@@ -298,4 +568,11 @@ public class JmsProducerImplTest {
         assertEquals(reply, message.getJMSReplyTo());
     }
 
+    private JmsContextImpl createContext(String clientId, Consumer<JmsConfig> customizer) {
+        JmsConfig jmsConfig = new JmsConfig();
+        customizer.accept(jmsConfig);
+
+        return new JmsContextImpl(clientId, client, jmsConfig, new ThreadPool(jmsConfig), JMSContext.CLIENT_ACKNOWLEDGE);
+    }
+
 }
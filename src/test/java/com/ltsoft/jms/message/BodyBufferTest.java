@@ -0,0 +1,59 @@
+package com.ltsoft.jms.message;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class BodyBufferTest {
+
+    @Test
+    public void wrapWithoutCopy() throws Exception {
+        byte[] bytes = "foo".getBytes();
+        JmsBytesMessage message = new JmsBytesMessage();
+        message.setBody(bytes);
+
+        assertSame(bytes, message.getBody());
+        assertSame(bytes, message.getBody());
+    }
+
+    @Test
+    public void writeAfterExposed() throws Exception {
+        JmsBytesMessage message = new JmsBytesMessage();
+        message.writeInt(1);
+
+        byte[] first = message.getBody();
+        assertSame(first, message.getBody());
+
+        message.writeInt(2);
+        byte[] second = message.getBody();
+
+        assertAll(
+                () -> assertEquals(4, first.length),
+                () -> assertEquals(8, second.length),
+                () -> assertEquals(8, message.getBodyLength())
+        );
+    }
+
+    @Test
+    public void readAfterReset() throws Exception {
+        JmsStreamMessage message = new JmsStreamMessage();
+        message.writeString("foo");
+        message.writeLong(42L);
+        message.reset();
+
+        assertEquals("foo", message.readString());
+        assertEquals(42L, message.readLong());
+    }
+
+    @Test
+    public void reuseAfterClear() throws Exception {
+        BodyBuffer buffer = new BodyBuffer(new BodyBuffer.SizeHint());
+        buffer.write(new byte[]{1, 2, 3}, 0, 3);
+        int capacity = buffer.capacity();
+        buffer.clear();
+        buffer.write(4);
+
+        assertEquals(capacity, buffer.capacity());
+        assertArrayEquals(new byte[]{4}, buffer.toByteArray());
+    }
+}
@@ -2,11 +2,14 @@ package com.ltsoft.jms.message;
 
 import com.ltsoft.jms.type.StringType;
 import com.ltsoft.jms.util.MessageType;
+import com.ltsoft.jms.util.TypeSerializeSupport;
 import org.junit.jupiter.api.Test;
 
 import javax.jms.MapMessage;
+import javax.jms.MessageFormatException;
 import javax.jms.MessageFormatRuntimeException;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.Map;
 
 import static com.ltsoft.jms.message.JmsMessageHelper.getMessageId;
@@ -190,6 +193,69 @@ public class JmsMapMessageTest {
         );
     }
 
+    @Test
+    public void testCompactBody() throws Exception {
+        JmsMapMessage message = new JmsMapMessage();
+        message.setBoolean("bool", true);
+        message.setByte("byte", (byte) -3);
+        message.setShort("short", (short) 300);
+        message.setChar("char", '中');
+        message.setInt("int", -70000);
+        message.setLong("long", Long.MAX_VALUE);
+        message.setFloat("float", 1.5f);
+        message.setDouble("double", -2.25);
+        message.setString("str", "消息");
+        message.setBytes("bytes", new byte[]{1, 2, 3});
+        message.setObject("null", null);
+
+        byte[] bytes = message.getBody();
+
+        JmsMapMessage result = new JmsMapMessage();
+        result.setBody(bytes);
+
+        assertAll(
+                () -> assertEquals(CompactMapBody.MARKER, bytes[0]),
+                () -> assertEquals(message.getBody(Map.class).keySet(), result.getBody(Map.class).keySet()),
+                () -> assertTrue(result.getBoolean("bool")),
+                () -> assertEquals((byte) -3, result.getObject("byte")),
+                () -> assertEquals((short) 300, result.getObject("short")),
+                () -> assertEquals('中', result.getObject("char")),
+                () -> assertEquals(-70000, result.getObject("int")),
+                () -> assertEquals(Long.MAX_VALUE, result.getObject("long")),
+                () -> assertEquals(1.5f, result.getObject("float")),
+                () -> assertEquals(-2.25, result.getObject("double")),
+                () -> assertEquals("消息", result.getObject("str")),
+                () -> assertArrayEquals(new byte[]{1, 2, 3}, result.getBytes("bytes")),
+                () -> assertTrue(result.itemExists("null")),
+                () -> assertNull(result.getObject("null"))
+        );
+    }
+
+    @Test
+    public void testLegacyBody() throws Exception {
+        HashMap<String, Object> map = new HashMap<>();
+        map.put("int", 5);
+        map.put("str", "foo");
+
+        JmsMapMessage result = new JmsMapMessage();
+        result.setBody(TypeSerializeSupport.serialize(map));
+
+        assertAll(
+                () -> assertEquals(5, result.getInt("int")),
+                () -> assertEquals("foo", result.getString("str"))
+        );
+    }
+
+    @Test
+    public void testTruncatedBody() throws Exception {
+        JmsMapMessage message = new JmsMapMessage();
+        message.setString("str", "foo");
+
+        byte[] bytes = message.getBody();
+
+        assertThrows(MessageFormatException.class, () -> new JmsMapMessage().setBody(Arrays.copyOf(bytes, bytes.length - 1)));
+    }
+
     @Test
     public void getBody() throws Exception {
         MapMessage message = new JmsMapMessage();
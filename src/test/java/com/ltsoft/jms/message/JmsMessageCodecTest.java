@@ -0,0 +1,53 @@
+package com.ltsoft.jms.message;
+
+import com.ltsoft.jms.destination.JmsTopic;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JmsMessageCodecTest {
+
+    @Test
+    public void message() throws Exception {
+        JmsTextMessage message = new JmsTextMessage();
+        message.setJMSMessageID(JmsMessageHelper.getMessageId());
+        message.setJMSDestination(new JmsTopic("codec"));
+        message.setText(String.join("", Collections.nCopies(100, "text")));
+        message.setLongProperty("long", 42L);
+        message.setStringProperty("名称", "值");
+
+        JmsMessageCodec codec = new JmsMessageCodec("deflate", 16);
+        ByteBuf buf = codec.getValueEncoder().encode(message);
+        try {
+            //按预先计算的字节数分配缓冲区
+            assertEquals(buf.capacity(), buf.readableBytes());
+            assertArrayEquals(JmsMessageHelper.toBytes(message, "deflate", 16), Unpooled.copiedBuffer(buf).array());
+
+            //值按字节数组读取，由调用方解码
+            JmsTextMessage result = JmsMessageHelper.fromBytes((byte[]) codec.getValueDecoder().decode(buf, null));
+
+            assertAll(
+                    () -> assertEquals(message.getJMSMessageID(), result.getJMSMessageID()),
+                    () -> assertEquals("TOPIC:codec", result.getJMSDestination().toString()),
+                    () -> assertEquals(message.getText(), result.getText()),
+                    () -> assertEquals(42L, result.getLongProperty("long")),
+                    () -> assertEquals("值", result.getStringProperty("名称"))
+            );
+        } finally {
+            buf.release();
+        }
+    }
+
+    @Test
+    public void mapKey() throws Exception {
+        JmsMessageCodec codec = new JmsMessageCodec();
+        ByteBuf buf = codec.getMapKeyEncoder().encode(JmsMessageHelper.JMSX_BODY);
+
+        assertEquals(JmsMessageHelper.JMSX_BODY, codec.getMapKeyDecoder().decode(buf, null));
+        assertEquals(0, buf.readableBytes());
+    }
+}
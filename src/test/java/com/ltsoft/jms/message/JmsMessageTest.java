@@ -1,8 +1,19 @@
 package com.ltsoft.jms.message;
 
 import com.ltsoft.jms.destination.JmsQueue;
+import com.ltsoft.jms.destination.JmsTopic;
 import org.junit.jupiter.api.Test;
 
+import javax.jms.DeliveryMode;
+import javax.jms.MessageEOFException;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.BufferUnderflowException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -44,4 +55,147 @@ public class JmsMessageTest {
                 () -> assertTrue(result.getObjectProperty("obj") instanceof String)
         );
     }
+
+    @Test
+    public void compactHeader() throws Exception {
+        JmsTextMessage message = new JmsTextMessage();
+        message.setText("text");
+        message.setJMSDestination(new JmsTopic("topic"));
+        message.setJMSReplyTo(new JmsQueue("reply"));
+        message.setJMSCorrelationID("correlation");
+        message.setJMSDeliveryMode(DeliveryMode.NON_PERSISTENT);
+        message.setJMSPriority(7);
+        message.setJMSRedelivered(true);
+        message.setJMSTimestamp(1500000000000L);
+        message.setJMSExpiration(1500000060000L);
+        message.setJMSDeliveryTime(1500000010000L);
+
+        Map<String, byte[]> props = JmsMessageHelper.toMap(message);
+
+        //消息头编码为一个字段
+        assertEquals(1, props.size());
+        assertTrue(props.containsKey(JmsMessageHelper.JMSX_HEADER));
+
+        JmsMessage result = JmsMessageHelper.fromMap(props);
+
+        assertAll(
+                () -> assertTrue(result instanceof JmsTextMessage),
+                () -> assertEquals("TOPIC:topic", result.getJMSDestination().toString()),
+                () -> assertEquals("QUEUE:reply", result.getJMSReplyTo().toString()),
+                () -> assertEquals("correlation", result.getJMSCorrelationID()),
+                () -> assertEquals(DeliveryMode.NON_PERSISTENT, result.getJMSDeliveryMode()),
+                () -> assertEquals(7, result.getJMSPriority()),
+                () -> assertTrue(result.getJMSRedelivered()),
+                () -> assertEquals(1500000000000L, result.getJMSTimestamp()),
+                () -> assertEquals(1500000060000L, result.getJMSExpiration()),
+                () -> assertEquals(1500000010000L, result.getJMSDeliveryTime())
+        );
+    }
+
+    @Test
+    public void legacyHeader() throws Exception {
+        Map<String, byte[]> props = new HashMap<>();
+        props.put(JmsMessageHelper.JMS_TYPE, "Text".getBytes());
+        props.put(JmsMessageHelper.JMS_DESTINATION, "QUEUE:legacy".getBytes());
+        props.put(JmsMessageHelper.JMS_DELIVERY_MODE, String.valueOf(DeliveryMode.PERSISTENT).getBytes());
+        props.put(JmsMessageHelper.JMS_PRIORITY, "3".getBytes());
+        props.put(JmsMessageHelper.JMS_REDELIVERED, "false".getBytes());
+        props.put(JmsMessageHelper.JMS_TIMESTAMP, "1500000000000".getBytes());
+        props.put(JmsMessageHelper.JMSX_BODY, "text".getBytes());
+
+        JmsMessage result = JmsMessageHelper.fromMap(props);
+
+        assertAll(
+                () -> assertEquals("text", ((JmsTextMessage) result).getText()),
+                () -> assertEquals("QUEUE:legacy", result.getJMSDestination().toString()),
+                () -> assertEquals(3, result.getJMSPriority()),
+                () -> assertEquals(1500000000000L, result.getJMSTimestamp())
+        );
+    }
+
+    @Test
+    public void bytesInSlice() throws Exception {
+        JmsTextMessage message = new JmsTextMessage();
+        message.setJMSMessageID(JmsMessageHelper.getMessageId());
+        message.setJMSDestination(new JmsQueue("bytes"));
+        message.setJMSTimestamp(System.currentTimeMillis());
+        message.setText(String.join("", Collections.nCopies(100, "text")));
+        message.setIntProperty("int", 7);
+        message.setStringProperty("string", "value");
+
+        byte[] bytes = JmsMessageHelper.toBytes(message, "deflate", 16);
+        byte[] element = new byte[bytes.length + 3];
+        System.arraycopy(bytes, 0, element, 2, bytes.length);
+
+        JmsTextMessage result = JmsMessageHelper.fromBytes(element, 2, bytes.length);
+
+        assertAll(
+                () -> assertEquals(message.getJMSMessageID(), result.getJMSMessageID()),
+                () -> assertEquals(message.getJMSTimestamp(), result.getJMSTimestamp()),
+                () -> assertEquals(message.getText(), result.getText()),
+                () -> assertEquals(7, result.getIntProperty("int")),
+                () -> assertEquals("value", result.getStringProperty("string")),
+                () -> assertFalse(result.propertyExists(JmsMessageHelper.JMSX_COMPRESSION))
+        );
+    }
+
+    @Test
+    public void bytesInAnyOrder() throws Exception {
+        JmsTextMessage message = new JmsTextMessage();
+        message.setJMSMessageID(JmsMessageHelper.getMessageId());
+        message.setText("text");
+
+        //旧版本按 HashMap 顺序写入字段，消息头不一定位于首位
+        Map<String, byte[]> fields = new LinkedHashMap<>();
+        fields.put(JmsMessageHelper.JMSX_BODY, message.getBody());
+        fields.put(JmsMessageHelper.JMS_MESSAGE_ID, message.getJMSMessageID().getBytes());
+        fields.put(JmsMessageHelper.JMSX_HEADER, CompactHeader.encode(message));
+
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        DataOutputStream writer = new DataOutputStream(os);
+        for (Map.Entry<String, byte[]> entry : fields.entrySet()) {
+            writer.writeInt(entry.getKey().length());
+            writer.write(entry.getKey().getBytes());
+            writer.writeInt(entry.getValue().length);
+            writer.write(entry.getValue());
+        }
+
+        JmsTextMessage result = JmsMessageHelper.fromBytes(os.toByteArray());
+
+        assertAll(
+                () -> assertEquals(message.getJMSMessageID(), result.getJMSMessageID()),
+                () -> assertEquals("text", result.getText())
+        );
+    }
+
+    @Test
+    public void truncatedBytes() throws Exception {
+        JmsTextMessage message = new JmsTextMessage();
+        message.setJMSMessageID(JmsMessageHelper.getMessageId());
+        message.setText("text");
+
+        byte[] bytes = JmsMessageHelper.toBytes(message);
+
+        assertThrows(MessageEOFException.class, () -> JmsMessageHelper.fromBytes(bytes, 0, bytes.length - 2));
+    }
+
+    @Test
+    public void lazyProperties() throws Exception {
+        JmsMessage message = new JmsMessage();
+        message.setStringProperty("route", "a");
+        message.setIntProperty("broken", 1);
+
+        Map<String, byte[]> props = JmsMessageHelper.toMap(message);
+        //损坏的属性值仅在读取时报错
+        props.put("broken", new byte[]{JmsMessageHelper.TYPE_TO_CODE.get(Integer.class), 1});
+
+        JmsMessage result = JmsMessageHelper.fromMap(props);
+
+        assertAll(
+                () -> assertEquals("a", result.getStringProperty("route")),
+                () -> assertTrue(result.propertyExists("broken")),
+                () -> assertEquals(new HashSet<>(Arrays.asList("route", "broken")), new HashSet<>(Collections.list(result.getPropertyNames()))),
+                () -> assertThrows(BufferUnderflowException.class, () -> result.getIntProperty("broken"))
+        );
+    }
 }
@@ -2,6 +2,7 @@ package com.ltsoft.jms.message;
 
 import com.ltsoft.jms.type.IntegerType;
 import com.ltsoft.jms.type.StringType;
+import com.ltsoft.jms.util.CompactSerializer;
 import com.ltsoft.jms.util.MessageType;
 import org.junit.jupiter.api.Test;
 
@@ -47,6 +48,29 @@ public class JmsObjectMessageTest {
         assertEquals("foo", result.getBody(StringType.class).getString());
     }
 
+    @Test
+    public void testSerializer() throws Exception {
+        StringType type = new StringType();
+        type.setString("foo");
+
+        CompactSerializer serializer = new CompactSerializer().register(1, StringType.class);
+
+        JmsObjectMessage message = new JmsObjectMessage();
+        message.setJMSMessageID(getMessageId());
+        message.setSerializer(serializer);
+        message.setObject(type);
+
+        byte[] bytes = JmsMessageHelper.toBytes(message);
+
+        JmsObjectMessage result = JmsMessageHelper.fromBytes(bytes);
+        JmsMessageHelper.useSerializer(result, serializer);
+
+        assertAll(
+                () -> assertTrue(CompactSerializer.isCompact(message.getBody())),
+                () -> assertEquals("foo", result.getBody(StringType.class).getString())
+        );
+    }
+
     @Test
     public void getJMSType() throws Exception {
         assertEquals(MessageType.Object.name(), new JmsObjectMessage().getJMSType());
@@ -0,0 +1,119 @@
+package com.ltsoft.jms.util;
+
+import com.ltsoft.jms.type.StringType;
+import org.junit.jupiter.api.Test;
+
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 紧凑序列化测试
+ */
+public class CompactSerializerTest {
+
+    @Test
+    public void testSerializable() throws Exception {
+        StringType type = new StringType();
+        type.setString("中文内容");
+
+        List<Object> list = new ArrayList<>(Arrays.asList(type, "foo", 10, new int[]{1, 2}));
+
+        byte[] bytes = CompactSerializer.INSTANCE.serialize(list);
+        List<Object> result = CompactSerializer.INSTANCE.deserialize(bytes);
+
+        assertAll(
+                () -> assertTrue(CompactSerializer.isCompact(bytes)),
+                () -> assertTrue(bytes.length < new DefaultSerializer().serialize(list).length),
+                () -> assertEquals("中文内容", ((StringType) result.get(0)).getString()),
+                () -> assertEquals("foo", result.get(1)),
+                () -> assertEquals(10, result.get(2)),
+                () -> assertArrayEquals(new int[]{1, 2}, (int[]) result.get(3))
+        );
+    }
+
+    @Test
+    public void testRegister() throws Exception {
+        StringType type = new StringType();
+        type.setString("foo");
+
+        CompactSerializer serializer = new CompactSerializer().register(1, StringType.class);
+
+        byte[] bytes = serializer.serialize(type);
+        StringType result = serializer.deserialize(bytes);
+
+        assertAll(
+                () -> assertTrue(bytes.length < CompactSerializer.INSTANCE.serialize(type).length),
+                () -> assertEquals("foo", result.getString()),
+                () -> assertThrows(RuntimeException.class, () -> CompactSerializer.INSTANCE.deserialize(bytes)),
+                () -> assertThrows(IllegalArgumentException.class, () -> serializer.register(1, String.class)),
+                () -> assertThrows(UnsupportedOperationException.class, () -> CompactSerializer.INSTANCE.register(1, String.class))
+        );
+    }
+
+    @Test
+    public void testExternalizable() throws Exception {
+        StringType inner = new StringType();
+        inner.setString("bar");
+
+        ExternalType type = new ExternalType();
+        type.name = "foo";
+        type.inner = inner;
+
+        CompactSerializer serializer = new CompactSerializer();
+        ExternalType result = serializer.deserialize(serializer.serialize(type));
+
+        assertAll(
+                () -> assertEquals("foo", result.name),
+                () -> assertEquals("bar", result.inner.getString())
+        );
+    }
+
+    @Test
+    public void testJavaSerialized() throws Exception {
+        StringType type = new StringType();
+        type.setString("foo");
+
+        StringType result = CompactSerializer.INSTANCE.deserialize(new DefaultSerializer().serialize(type));
+
+        assertEquals("foo", result.getString());
+    }
+
+    @Test
+    public void testReuseBuffer() throws Exception {
+        byte[] large = new byte[128 * 1024];
+        Arrays.fill(large, (byte) 1);
+
+        byte[] first = CompactSerializer.INSTANCE.serialize(large);
+        byte[] second = CompactSerializer.INSTANCE.serialize("foo");
+
+        assertAll(
+                () -> assertArrayEquals(large, CompactSerializer.INSTANCE.deserialize(first)),
+                () -> assertEquals("foo", CompactSerializer.INSTANCE.deserialize(second))
+        );
+    }
+
+    public static class ExternalType implements Externalizable {
+
+        private String name;
+        private StringType inner;
+
+        @Override
+        public void writeExternal(ObjectOutput out) throws IOException {
+            out.writeUTF(name);
+            out.writeObject(inner);
+        }
+
+        @Override
+        public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+            name = in.readUTF();
+            inner = (StringType) in.readObject();
+        }
+    }
+}
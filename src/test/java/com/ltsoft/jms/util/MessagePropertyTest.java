@@ -0,0 +1,90 @@
+package com.ltsoft.jms.util;
+
+import org.junit.jupiter.api.Test;
+
+import javax.jms.MessageFormatRuntimeException;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 消息属性测试
+ */
+public class MessagePropertyTest {
+
+    @Test
+    public void testTypedValue() throws Exception {
+        MessageProperty property = new MessageProperty();
+        property.setBooleanProperty("boolean", true);
+        property.setShortProperty("short", (short) -10);
+        property.setIntProperty("int", 20);
+        property.setFloatProperty("float", 2.5F);
+        property.setDoubleProperty("double", -3.3D);
+        property.setProperty("long", 30L);
+        property.setProperty("string", "40");
+        property.setProperty("null", null);
+
+        assertAll(
+                () -> assertTrue(property.getBooleanProperty("boolean")),
+                () -> assertEquals(-10, property.getIntProperty("short")),
+                () -> assertEquals(20L, property.getLongProperty("int")),
+                () -> assertEquals(2.5D, property.getDoubleProperty("float")),
+                () -> assertEquals(-3.3D, property.getDoubleProperty("double")),
+                () -> assertEquals(30L, property.getObjectProperty("long")),
+                () -> assertEquals(40, property.getIntProperty("string")),
+                () -> assertEquals("20", property.getStringProperty("int")),
+                () -> assertTrue(property.propertyExists("null")),
+                () -> assertFalse(property.getBooleanProperty("null")),
+                () -> assertThrows(NumberFormatException.class, () -> property.getIntProperty("null")),
+                () -> assertThrows(MessageFormatRuntimeException.class, () -> property.getIntProperty("long")),
+                () -> assertEquals(new HashSet<>(Arrays.asList("boolean", "short", "int", "float", "double", "long", "string", "null")), property.getPropertyNames())
+        );
+    }
+
+    @Test
+    public void testOverwrite() throws Exception {
+        MessageProperty property = new MessageProperty();
+        property.setIntProperty("key", 1);
+        property.setProperty("key", "value");
+
+        assertEquals("value", property.getStringProperty("key"));
+        assertEquals(1, property.getPropertyNames().size());
+    }
+
+    @Test
+    public void testCopyOnWrite() throws Exception {
+        MessageProperty producer = new MessageProperty();
+        producer.setIntProperty("shared", 1);
+
+        MessageProperty first = new MessageProperty();
+        first.mergeProperty(producer);
+        MessageProperty second = new MessageProperty();
+        second.mergeProperty(producer);
+
+        first.setIntProperty("shared", 2);
+        producer.setIntProperty("added", 3);
+
+        assertAll(
+                () -> assertEquals(2, first.getIntProperty("shared")),
+                () -> assertEquals(1, second.getIntProperty("shared")),
+                () -> assertEquals(1, producer.getIntProperty("shared")),
+                () -> assertFalse(first.propertyExists("added")),
+                () -> assertFalse(second.propertyExists("added"))
+        );
+    }
+
+    @Test
+    public void testMergeOverride() throws Exception {
+        MessageProperty producer = new MessageProperty();
+        producer.setIntProperty("key", 1);
+
+        MessageProperty message = new MessageProperty();
+        message.setProperty("key", "value");
+        message.setProperty("own", "value");
+        message.mergeProperty(producer);
+
+        assertEquals(1, message.getIntProperty("key"));
+        assertEquals("value", message.getStringProperty("own"));
+    }
+}
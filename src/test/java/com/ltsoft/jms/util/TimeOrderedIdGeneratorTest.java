@@ -0,0 +1,118 @@
+package com.ltsoft.jms.util;
+
+
+import com.ltsoft.jms.message.JmsMessageHelper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按时间排序的消息 ID 测试
+ */
+public class TimeOrderedIdGeneratorTest {
+
+    @Test
+    public void testOrdered() throws Exception {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(1);
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            ids.add(generator.nextId());
+        }
+
+        List<String> sorted = new ArrayList<>(ids);
+        Collections.sort(sorted);
+
+        assertIterableEquals(ids, sorted);
+    }
+
+    @Test
+    public void testUnique() throws Exception {
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(1);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            Thread thread = new Thread(() -> {
+                for (int j = 0; j < 10000; j++) {
+                    ids.add(generator.nextId());
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(80000, ids.size());
+    }
+
+    @Test
+    public void testThreadSlotWrap() throws Exception {
+        //仅 2 个线程编号，后续线程必然复用编号
+        TimeOrderedIdGenerator generator = new TimeOrderedIdGenerator(1, 2);
+        Set<String> ids = ConcurrentHashMap.newKeySet();
+
+        Runnable task = () -> {
+            for (int j = 0; j < 1000; j++) {
+                ids.add(generator.nextId());
+            }
+        };
+
+        //已结束线程的编号由后续线程接续使用
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(task);
+            thread.start();
+            thread.join();
+        }
+
+        //同时存活的线程超过编号数
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Thread thread = new Thread(task);
+            threads.add(thread);
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8000, ids.size());
+    }
+
+    @Test
+    public void testDecode() throws Exception {
+        long before = System.currentTimeMillis();
+        String messageId = new TimeOrderedIdGenerator(1).nextId();
+        long after = System.currentTimeMillis();
+
+        long timestamp = TimeOrderedIdGenerator.timestampOf(messageId);
+        UUID uuid = JmsMessageHelper.decodeMessageId(messageId);
+
+        assertAll(
+                () -> assertEquals(26, messageId.length()),
+                () -> assertTrue(timestamp >= before && timestamp <= after),
+                () -> assertEquals(1, uuid.getLeastSignificantBits() >>> 32),
+                () -> assertEquals(timestamp, uuid.getMostSignificantBits() >>> 16)
+        );
+    }
+
+    @Test
+    public void testDecodeUuid() throws Exception {
+        String messageId = new UuidIdGenerator().nextId();
+
+        assertAll(
+                () -> assertEquals(25, messageId.length()),
+                () -> assertFalse(TimeOrderedIdGenerator.isTimeOrdered(messageId)),
+                () -> assertNotNull(JmsMessageHelper.decodeMessageId(messageId))
+        );
+    }
+}
@@ -4,10 +4,10 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.util.function.Function;
 import java.util.stream.Stream;
 
-import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * 类型转换测试
@@ -35,6 +35,34 @@ public class TypeConversionSupportTest {
         assertDoesNotThrow(() -> TypeConversionSupport.convert(param, String.class));
     }
 
+    @ParameterizedTest
+    @MethodSource("valueProvider")
+    public void testPrimitive(Object param) throws Exception {
+        assertAll(
+                () -> assertSame(Boolean.class, param, TypeConversionSupport::toBoolean),
+                () -> assertSame(Byte.class, param, TypeConversionSupport::toByte),
+                () -> assertSame(Short.class, param, TypeConversionSupport::toShort),
+                () -> assertSame(Integer.class, param, TypeConversionSupport::toInt),
+                () -> assertSame(Long.class, param, TypeConversionSupport::toLong),
+                () -> assertSame(Float.class, param, TypeConversionSupport::toFloat),
+                () -> assertSame(Double.class, param, TypeConversionSupport::toDouble)
+        );
+    }
+
+    /**
+     * 基本类型的快速转换与转换表的结果一致
+     */
+    private static void assertSame(Class<?> type, Object value, Function<Object, Object> primitive) {
+        Object expected;
+        try {
+            expected = TypeConversionSupport.convert(value, type);
+        } catch (IllegalArgumentException e) {
+            assertThrows(e.getClass(), () -> primitive.apply(value));
+            return;
+        }
+        assertEquals(expected, primitive.apply(value));
+    }
+
     static Stream valueProvider() {
         return Stream.of(true, (byte) 'a', (short) 10, 20, 30L, 2.2F, 3.3D, "foo");
     }
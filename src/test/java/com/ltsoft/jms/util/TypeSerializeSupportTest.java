@@ -3,8 +3,10 @@ package com.ltsoft.jms.util;
 
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertAll;
-import static org.junit.jupiter.api.Assertions.assertEquals;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 /**
  * 类型序列化测试
@@ -32,4 +34,27 @@ public class TypeSerializeSupportTest {
         );
     }
 
+    @Test
+    public void testByteBufferCompatible() throws Exception {
+        assertAll(
+                () -> assertArrayEquals(ByteBuffer.allocate(4).putShort((short) -10).array(), TypeSerializeSupport.serialize((short) -10)),
+                () -> assertArrayEquals(ByteBuffer.allocate(4).putChar('中').array(), TypeSerializeSupport.serialize('中')),
+                () -> assertArrayEquals(ByteBuffer.allocate(4).putInt(-20).array(), TypeSerializeSupport.serialize(-20)),
+                () -> assertArrayEquals(ByteBuffer.allocate(8).putLong(Long.MIN_VALUE + 30).array(), TypeSerializeSupport.serialize(Long.MIN_VALUE + 30)),
+                () -> assertArrayEquals(ByteBuffer.allocate(4).putFloat(-2.2F).array(), TypeSerializeSupport.serialize(-2.2F)),
+                () -> assertArrayEquals(ByteBuffer.allocate(8).putDouble(-3.3D).array(), TypeSerializeSupport.serialize(-3.3D))
+        );
+    }
+
+    @Test
+    public void testFromRange() throws Exception {
+        byte[] bytes = new byte[10];
+        System.arraycopy(TypeSerializeSupport.serialize(-20), 0, bytes, 3, 4);
+
+        assertAll(
+                () -> assertEquals(-20, TypeSerializeSupport.deserialize(bytes, 3, 4, Integer.class).intValue()),
+                () -> assertArrayEquals(TypeSerializeSupport.serialize(-20), TypeSerializeSupport.deserialize(bytes, 3, 4, byte[].class)),
+                () -> assertThrows(BufferUnderflowException.class, () -> TypeSerializeSupport.deserialize(bytes, 3, 2, Integer.class))
+        );
+    }
 }